@@ -1,5 +1,6 @@
 package selogger.logging;
 
+import selogger.logging.util.ThreadContext;
 
 /**
  * This interface defines a set of methods for recording runtime events. 
@@ -83,4 +84,112 @@ public interface IEventLogger {
 	 */
 	public void recordEvent(int dataId, float value);
 
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, Object value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, int value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, long value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, byte value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, short value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, char value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, boolean value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, double value) {
+		recordEvent(dataId, value);
+	}
+
+	/**
+	 * Record an event occurrence and a value using the context of the current thread.
+	 * Woven code calls this method with a context obtained at the method entry.
+	 * The default implementation ignores the context.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event and its bytecode location.
+	 * @param value contains a value to be recorded.
+	 */
+	public default void recordEvent(ThreadContext context, int dataId, float value) {
+		recordEvent(dataId, value);
+	}
+
 }
@@ -2,6 +2,8 @@ package selogger.logging;
 
 import java.util.LinkedList;
 
+import selogger.logging.util.ThreadContext;
+
 
 
 
@@ -125,6 +127,115 @@ public class Logging {
 		INSTANCE.recordEvent(dataId, 0);
 	}
 	
+	/**
+	 * A method to obtain the context of the current thread.
+	 * The weaver calls this method at the entry of a method
+	 * and passes the context to the following recordEvent calls.
+	 * @return the context of the current thread.
+	 */
+	public static ThreadContext getThreadContext() {
+		return ThreadContext.get();
+	}
+
+	/**
+	 * A method to record an event associated to an object.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(Object value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a boolean value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(boolean value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a byte value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(byte value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a char value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(char value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a short integer value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(short value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to an integer value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(int value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a long integer value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(long value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a floating point number.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(float value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event associated to a double value.
+	 * @param value
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(double value, ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, value);
+	}
+
+	/**
+	 * A method to record an event without a data value.
+	 * @param context is the context of the current thread.
+	 * @param dataId
+	 */
+	public static void recordEvent(ThreadContext context, int dataId) {
+		INSTANCE.recordEvent(context, dataId, 0);
+	}
+	
 	/**
 	 * A method to record an ArrayLoad event.
 	 * @param array specifies an array object.
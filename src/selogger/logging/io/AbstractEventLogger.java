@@ -105,7 +105,23 @@ public abstract class AbstractEventLogger implements IDataInfoListener {
 			buf.writeEndObject();
 			w.write(buf.toString());
 		}
-		w.write("\n]}");
+		w.write("\n]");
+		JsonBuffer footer = new JsonBuffer();
+		writeFooter(footer);
+		String fields = footer.toString();
+		if (!fields.isEmpty()) {
+			w.write(", ");
+			w.write(fields);
+		}
+		w.write("}");
+	}
+	
+	/**
+	 * A subclass may override this method to write fields following the events.
+	 * The fields are added to the top-level JSON object.
+	 * @param json buffer to record the output
+	 */
+	protected void writeFooter(JsonBuffer json) {
 	}
 	
 	/**
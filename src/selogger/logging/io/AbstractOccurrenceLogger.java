@@ -0,0 +1,253 @@
+package selogger.logging.io;
+
+import java.util.List;
+
+import selogger.logging.IEventLogger;
+import selogger.logging.util.InlineCounters;
+import selogger.logging.util.ThreadContext;
+import selogger.weaver.DataInfo;
+
+/**
+ * A common superclass of loggers that record only the occurrences of events.
+ * The recordEvent methods discard values and pass data IDs to recordOccurrence.
+ * Woven code may increment InlineCounters instead of calling the methods.
+ */
+public abstract class AbstractOccurrenceLogger extends AbstractEventLogger implements IEventLogger {
+
+	/**
+	 * If true, woven code increments InlineCounters instead of
+	 * calling the recordEvent methods (except for MULTI_NEW_ARRAY events).
+	 */
+	private boolean inlineCounters;
+
+	/**
+	 * The object does not record after closing.
+	 * The field is volatile since recording threads read it without a lock.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * @param formatName specifies a format name written to a JSON file.
+	 * @param inlineCounters specifies whether the weaver generates
+	 * instructions to increment InlineCounters.
+	 */
+	public AbstractOccurrenceLogger(String formatName, boolean inlineCounters) {
+		super(formatName);
+		this.inlineCounters = inlineCounters;
+		this.closed = false;
+	}
+
+	/**
+	 * Record an event occurrence.
+	 * @param c is the context of the current thread.
+	 * @param dataId specifies an event.
+	 */
+	protected abstract void recordOccurrence(ThreadContext c, int dataId);
+
+	/**
+	 * @return true if woven code increments InlineCounters.
+	 */
+	protected boolean isInlineCounters() {
+		return inlineCounters;
+	}
+
+	/**
+	 * Stop recording events.  A subclass calls this method when closed.
+	 */
+	protected void stopRecording() {
+		closed = true;
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, boolean value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, boolean value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, byte value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, byte value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, char value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, char value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, double value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, double value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, float value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, float value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, int value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, int value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, long value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, long value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, Object value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, Object value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Record the event occurrence.
+	 * @param dataId specifies an event.
+	 * @param value is required for interface, but the value is discarded by this logger.
+	 */
+	@Override
+	public void recordEvent(int dataId, short value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event occurrence using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, short value) {
+		if (!closed) {
+			recordOccurrence(c, dataId);
+		}
+	}
+
+	/**
+	 * Prepare inline counters for new data IDs
+	 * before the woven class is executed.
+	 */
+	@Override
+	public void onCreated(List<DataInfo> events) {
+		super.onCreated(events);
+		if (inlineCounters && !events.isEmpty()) {
+			InlineCounters.prepare(events.get(0).getDataId(), events.get(events.size() - 1).getDataId());
+		}
+	}
+
+}
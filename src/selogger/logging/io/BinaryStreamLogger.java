@@ -12,7 +12,7 @@ import selogger.logging.util.FileNameGenerator;
 import selogger.logging.util.ObjectIdFile;
 import selogger.logging.util.TypeIdMap;
 import selogger.logging.util.ObjectIdFile.ExceptionRecording;
-import selogger.logging.util.ThreadId;
+import selogger.logging.util.ThreadContext;
 
 /**
  * This class is an implementation of IEventLogger that records
@@ -105,21 +105,25 @@ public class BinaryStreamLogger implements IEventLogger {
 	 * @param dataId specifies an event and its bytecode location.
 	 * @param value specifies a data value observed in the event.
 	 */
-	private synchronized void write(int dataId, long value) {
-		if (out != null) {
-			try {
-				if (count >= MAX_EVENTS_PER_FILE) {
-					out.close();
-					out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files.getNextFile())));
-					count = 0;
+	private void write(int dataId, long value) {
+		ThreadContext c = ThreadContext.get();
+		if (!c.isEnabled()) return;
+		synchronized (this) {
+			if (out != null) {
+				try {
+					if (count >= MAX_EVENTS_PER_FILE) {
+						out.close();
+						out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files.getNextFile())));
+						count = 0;
+					}
+					out.writeInt(dataId);
+					out.writeInt(c.getThreadId());
+					out.writeLong(value);
+					count++;
+				} catch (IOException e) {
+					out = null;
+					err.log(e);
 				}
-				out.writeInt(dataId);
-				out.writeInt(ThreadId.get());
-				out.writeLong(value);
-				count++;
-			} catch (IOException e) {
-				out = null;
-				err.log(e);
 			}
 		}
 	}
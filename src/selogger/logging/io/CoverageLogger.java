@@ -0,0 +1,327 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import selogger.EventType;
+import selogger.logging.IErrorLogger;
+import selogger.logging.util.InlineCounters;
+import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ThreadBitTable;
+import selogger.logging.util.ThreadContext;
+import selogger.weaver.DataInfo;
+import selogger.weaver.method.MethodTransformer;
+
+/**
+ * This class is an implementation of IEventLogger that records
+ * whether each event (dataId) has occurred or not.
+ * Each thread sets a bit for each event without a lock.
+ * The resultant file lists the code locations with a "covered" field,
+ * followed by a summary of line and branch coverage.
+ */
+public class CoverageLogger extends AbstractOccurrenceLogger {
+
+	/**
+	 * The JSON field name for the coverage summary
+	 */
+	public static final String FIELD_COVERAGE = "coverage";
+
+	/**
+	 * Bits for data IDs
+	 */
+	private ThreadBitTable bits;
+
+	/**
+	 * The coverage taken at the beginning of save or close.
+	 * The output is written from this snapshot without accessing the bits.
+	 */
+	private BitSet covered;
+
+	/**
+	 * The summary of the snapshot
+	 */
+	private Summary summary;
+
+	/**
+	 * A file where a resultant file is stored
+	 */
+	private File traceFile;
+
+	/**
+	 * The format of the resultant file
+	 */
+	private boolean outputJson;
+
+	/**
+	 * A field to record intermediate file name
+	 */
+	private int saveCount;
+
+	/**
+	 * This object is to record error messages
+	 */
+	private IErrorLogger logger;
+
+	/**
+	 * Create the logger object.
+	 * @param traceFile specifies a file where the result is stored
+	 * @param outputJson specifies whether the logger uses a json format or not.
+	 * @param inlineCounters specifies whether the weaver generates
+	 * instructions to increment InlineCounters.
+	 * @param logger records error messages
+	 */
+	public CoverageLogger(File traceFile, boolean outputJson, boolean inlineCounters, IErrorLogger logger) {
+		super("coverage", inlineCounters);
+		this.traceFile = traceFile;
+		this.outputJson = outputJson;
+		this.logger = logger;
+		this.bits = new ThreadBitTable();
+		this.covered = new BitSet();
+		this.saveCount = 0;
+	}
+
+	/**
+	 * Set the bit of the event.
+	 */
+	@Override
+	protected void recordOccurrence(ThreadContext c, int dataId) {
+		bits.set(c, dataId);
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return true if the event has occurred.
+	 */
+	public boolean isCovered(int dataId) {
+		return bits.get(dataId) || (isInlineCounters() && InlineCounters.get(dataId) > 0);
+	}
+
+	/**
+	 * @return the data IDs of the events that have occurred,
+	 * including the events counted by inline counters.
+	 */
+	private BitSet getCoverage() {
+		BitSet b = bits.getBits();
+		if (isInlineCounters()) {
+			int length = InlineCounters.length();
+			for (int i=0; i<length; i++) {
+				if (InlineCounters.get(i) > 0) b.set(i);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Save the current coverage to a file.
+	 * Since the coverage is cumulative, resetTrace is ignored.
+	 */
+	@Override
+	public synchronized void save(boolean resetTrace) {
+		saveCount++;
+		String filename = traceFile.getAbsolutePath() + "." + Integer.toString(saveCount) + (outputJson ? ".json" : ".txt");
+		saveCoverage(new File(filename));
+	}
+
+	/**
+	 * Write the coverage into a file when terminated
+	 */
+	@Override
+	public synchronized void close() {
+		stopRecording();
+		saveCoverage(traceFile);
+	}
+
+	/**
+	 * Write the coverage to a file.
+	 * The summary is also recorded by the error logger for the CSV format.
+	 */
+	private void saveCoverage(File file) {
+		covered = getCoverage();
+		summary = computeSummary(covered);
+		try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
+			if (outputJson) {
+				super.saveJson(w);
+			} else {
+				super.saveText(w);
+			}
+		} catch (IOException e) {
+			if (logger != null) logger.log(e);
+		}
+		if (logger != null) {
+			logger.log(summary.toString());
+		}
+	}
+
+	/**
+	 * @param d specifies an event.
+	 * @return true if the event is recorded by logging code.
+	 * RESERVED, JUMP, and DIVIDE are placeholders that are never recorded.
+	 */
+	private static boolean isProbe(DataInfo d) {
+		EventType t = d.getEventType();
+		return t != EventType.RESERVED && t != EventType.JUMP && t != EventType.DIVIDE;
+	}
+
+	/**
+	 * Compute line and branch coverage of the current execution.
+	 * @return the coverage summary.
+	 */
+	public Summary getSummary() {
+		return computeSummary(getCoverage());
+	}
+
+	/**
+	 * Compute line and branch coverage.
+	 * A line is covered if an event on the line occurred.
+	 * Each conditional jump instruction has two branches.
+	 * The jump is regarded as taken if the LABEL event of the jump target occurred,
+	 * and as not taken if the first event after the jump instruction occurred.
+	 * Since a code location may be reached through other paths,
+	 * the branch coverage is an approximation.
+	 * Branches are available only if LABEL events are woven.
+	 * @param covered specifies the data IDs of the events that have occurred.
+	 * @return the coverage summary.
+	 */
+	private Summary computeSummary(BitSet covered) {
+		Summary s = new Summary();
+		HashSet<String> coveredLines = new HashSet<>();
+		HashMap<Integer, Integer> labels = new HashMap<>();
+		ArrayList<DataInfo> dataids = getDataIDs();
+		int start = 0;
+		while (start < dataids.size()) {
+			// Process the events of a method
+			int methodId = dataids.get(start).getMethodId();
+			int end = start + 1;
+			while (end < dataids.size() && dataids.get(end).getMethodId() == methodId) {
+				end++;
+			}
+			// Map instruction indices to LABEL events to find jump targets
+			labels.clear();
+			for (int i=start; i<end; i++) {
+				DataInfo d = dataids.get(i);
+				if (d.getEventType() == EventType.LABEL) {
+					labels.putIfAbsent(d.getInstructionIndex(), d.getDataId());
+				}
+			}
+			for (int i=start; i<end; i++) {
+				DataInfo d = dataids.get(i);
+				if (isProbe(d) && d.getLine() > 0) {
+					String line = d.getMethodInfo().getClassName() + ":" + d.getLine();
+					s.lines.add(line);
+					if (covered.get(d.getDataId())) {
+						coveredLines.add(line);
+					}
+				} else if (d.getEventType() == EventType.JUMP &&
+						d.getAttribute(MethodTransformer.ATTRIBUTE_OPCODE, "").startsWith("IF")) {
+					int target = Integer.parseInt(d.getAttribute(MethodTransformer.ATTRIBUTE_JUMP, "-1"));
+					s.branches += 2;
+					Integer label = labels.get(target);
+					if (label != null && covered.get(label)) s.coveredBranches++;
+					for (int j=i+1; j<end; j++) {
+						DataInfo next = dataids.get(j);
+						if (isProbe(next) && next.getInstructionIndex() > d.getInstructionIndex()) {
+							if (covered.get(next.getDataId())) s.coveredBranches++;
+							break;
+						}
+					}
+				}
+			}
+			start = end;
+		}
+		s.coveredLines = coveredLines.size();
+		return s;
+	}
+
+	/**
+	 * The numbers of lines and branches
+	 */
+	public static class Summary {
+
+		private HashSet<String> lines = new HashSet<>();
+		private int coveredLines;
+		private int branches;
+		private int coveredBranches;
+
+		public int getLines() {
+			return lines.size();
+		}
+
+		public int getCoveredLines() {
+			return coveredLines;
+		}
+
+		public int getBranches() {
+			return branches;
+		}
+
+		public int getCoveredBranches() {
+			return coveredBranches;
+		}
+
+		/**
+		 * Write the summary as fields of a JSON object
+		 */
+		public void write(JsonBuffer json) {
+			json.writeNumberField("lines", getLines());
+			json.writeNumberField("coveredLines", coveredLines);
+			json.writeNumberField("branches", branches);
+			json.writeNumberField("coveredBranches", coveredBranches);
+		}
+
+		@Override
+		public String toString() {
+			return "Coverage: lines=" + coveredLines + "/" + getLines() + " branches=" + coveredBranches + "/" + branches;
+		}
+	}
+
+	/**
+	 * @param dataid specifies an event.
+	 * @return true for all events recorded by logging code,
+	 * so that uncovered locations are also included in the output.
+	 */
+	@Override
+	protected boolean isRecorded(int dataid) {
+		return isProbe(getDataIDs().get(dataid));
+	}
+
+	/**
+	 * Write the coverage summary following the events
+	 */
+	@Override
+	protected void writeFooter(JsonBuffer json) {
+		json.writeObjectFieldStart(FIELD_COVERAGE);
+		summary.write(json);
+		json.writeEndObject();
+	}
+
+	/**
+	 * Write "covered" field as an additional field of a JSON object
+	 */
+	@Override
+	protected void writeAttributes(JsonBuffer json, DataInfo d) {
+		json.writeBooleanField("covered", covered.get(d.getDataId()));
+	}
+
+	/**
+	 * Write a column name of a CSV file
+	 */
+	@Override
+	protected String getColumnNames() {
+		return "covered";
+	}
+
+	/**
+	 * Write a "covered" field value of a CSV file
+	 */
+	@Override
+	protected void writeAttributes(StringBuilder builder, DataInfo d) {
+		builder.append(covered.get(d.getDataId()));
+	}
+
+}
@@ -4,12 +4,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
 
 import selogger.logging.IErrorLogger;
-import selogger.logging.IEventLogger;
+import selogger.logging.util.InlineCounters;
 import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ThreadContext;
+import selogger.logging.util.ThreadCounterTable;
 import selogger.weaver.DataInfo;
 
 /**
@@ -18,13 +19,26 @@ import selogger.weaver.DataInfo;
  * The generated "eventfreq.txt" file is a CSV file.
  * Each line shows a pair of dataId and the number of occurrences of the event. 
  */
-public class EventFrequencyLogger extends AbstractEventLogger implements IEventLogger {
+public class EventFrequencyLogger extends AbstractOccurrenceLogger {
 
 	/**
-	 * Array of counter objects.  dataId is used as an index for this array.
+	 * Counters for data IDs.  
+	 * Each thread increments its own counters without a lock.
 	 */
-	private ArrayList<AtomicLong> counters;
-	
+	private ThreadCounterTable counters;
+
+	/**
+	 * The counts written by save(true).
+	 * They are subtracted from the counters.
+	 */
+	private long[] resetCounts;
+
+	/**
+	 * The total counts taken at the beginning of save or close.
+	 * The output is written from this snapshot without accessing the counters.
+	 */
+	private long[] totalCounts;
+
 	/**
 	 * A directory where a resultant file is stored
 	 */
@@ -35,11 +49,6 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 */
 	private int saveCount;
 	
-	/**
-	 * The object does not record after closing
-	 */
-	private boolean closed;
-	
 	/**
 	 * This object is to record error messages
 	 */
@@ -50,155 +59,92 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 * @param outputDir specifies a directory where a resultant file is stored
 	 */
 	public EventFrequencyLogger(File traceFile, IErrorLogger logger) {
-		super("freq");
-		this.traceFile = traceFile;
-		counters = new ArrayList<>();
-		saveCount = 0;
-		closed = false;
-	}
-	
-	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
-	 */
-	@Override
-	public void recordEvent(int dataId, boolean value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
+		this(traceFile, false, logger);
 	}
-	
-	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
-	 */
-	@Override
-	public void recordEvent(int dataId, byte value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
-	}
-	
-	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
-	 */
-	@Override
-	public void recordEvent(int dataId, char value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
-	}
-	
-	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
-	 */
-	@Override
-	public void recordEvent(int dataId, double value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
-	}
-	
-	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
-	 */
-	@Override
-	public void recordEvent(int dataId, float value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
-	}
-	
+
 	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
+	 * Create the logger object.
+	 * @param outputDir specifies a directory where a resultant file is stored
+	 * @param inlineCounters specifies whether the weaver generates 
+	 * instructions to increment InlineCounters.
 	 */
-	@Override
-	public void recordEvent(int dataId, int value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
+	public EventFrequencyLogger(File traceFile, boolean inlineCounters, IErrorLogger logger) {
+		super("freq", inlineCounters);
+		this.traceFile = traceFile;
+		this.logger = logger;
+		counters = new ThreadCounterTable();
+		resetCounts = new long[0];
+		totalCounts = new long[0];
+		saveCount = 0;
 	}
 	
 	/**
 	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
 	 */
 	@Override
-	public void recordEvent(int dataId, long value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
+	protected void recordOccurrence(ThreadContext c, int dataId) {
+		counters.increment(c, dataId);
 	}
 	
 	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
+	 * Take a snapshot of the counts of all threads and inline counters.
 	 */
-	@Override
-	public void recordEvent(int dataId, Object value) {
-		if (!closed) {
-			countOccurrence(dataId);
+	private void takeTotalCounts() {
+		long[] counts = counters.getCounts();
+		if (isInlineCounters()) {
+			int length = InlineCounters.length();
+			if (counts.length < length) {
+				counts = Arrays.copyOf(counts, length);
+			}
+			for (int i=0; i<length; i++) {
+				counts[i] += InlineCounters.get(i);
+			}
 		}
+		totalCounts = counts;
 	}
-	
+
 	/**
-	 * Count the event occurrence.
-	 * @param dataId specifies an event to be counted.
-	 * @param value is required for interface, but the value is discarded by this logger. 
+	 * @param dataId specifies an event.
+	 * @return the number of occurrences counted by this logger and inline counters
+	 * in the last snapshot.
 	 */
-	@Override
-	public void recordEvent(int dataId, short value) {
-		if (!closed) {
-			countOccurrence(dataId);
-		}
+	private long getTotalCount(int dataId) {
+		return dataId < totalCounts.length ? totalCounts[dataId] : 0;
 	}
-	
+
 	/**
-	 * Increment an event count.
 	 * @param dataId specifies an event.
-	 */
-	private void countOccurrence(int dataId) {
-		// Prepare a counter (if not exist)
-		if (counters.size() <= dataId) {
-			synchronized(counters) { 
-				while (counters.size() <= dataId) {
-					counters.add(new AtomicLong());
-				}
-			}
+	 * @return the number of occurrences since the last reset.
+	 * The value may not include the events being counted 
+	 * by other threads after the snapshot.
+	 */
+	private long getCount(int dataId) {
+		long count = getTotalCount(dataId);
+		if (dataId < resetCounts.length) {
+			count -= resetCounts[dataId];
 		}
-		// Increment the counter specified by dataId
-		AtomicLong c = counters.get(dataId);
-		c.incrementAndGet();
+		return count;
 	}
-	
+
 	/**
-	 * TODO Due to the unsafe handling of counters, 
-	 * this method may include the count in different threads 
-	 * during the execution of save()
+	 * Write the counters to a file.
+	 * Since threads own their counters, a reset does not modify the counters
+	 * but records the current values to be subtracted later. 
 	 */
 	private void saveCurrentCounters(File file, boolean resetTrace) {
 		try (PrintWriter w = new PrintWriter(new FileWriter(file))) {
-			int countersLength;
-			synchronized (counters) {
-				countersLength = counters.size();
+			takeTotalCounts();
+			int countersLength = totalCounts.length;
+			if (resetTrace && resetCounts.length < countersLength) {
+				resetCounts = Arrays.copyOf(resetCounts, countersLength);
 			}
 			for (int i=0; i<countersLength; i++) {
-				long count;
-				AtomicLong c = counters.get(i);
-				if (resetTrace) count = c.getAndSet(0);
-				else count = c.get();
+				long total = getTotalCount(i);
+				long count = total;
+				if (i < resetCounts.length) {
+					count -= resetCounts[i];
+					if (resetTrace) resetCounts[i] = total;
+				}
 				if (count > 0) {
 					w.println(i + "," + count);
 				}
@@ -223,7 +169,8 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public synchronized void close() {
-		closed = true;
+		stopRecording();
+		takeTotalCounts();
 		try (PrintWriter w = new PrintWriter(new FileWriter(traceFile))) {
 			super.saveJson(w);
 		} catch (Throwable e) {
@@ -237,13 +184,7 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected boolean isRecorded(int dataid) {
-		if (dataid < counters.size()) {
-			AtomicLong c = counters.get(dataid);
-			long count = c.get();
-			return count > 0;
-		} else {
-			return false;
-		}
+		return getCount(dataid) > 0;
 	}
 
 	/**
@@ -251,8 +192,7 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected void writeAttributes(JsonBuffer json, DataInfo d) {
-		AtomicLong c = counters.get(d.getDataId());
-		json.writeNumberField("freq", c.get());
+		json.writeNumberField("freq", getCount(d.getDataId()));
 	}
 	
 	/**
@@ -268,8 +208,7 @@ public class EventFrequencyLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected void writeAttributes(StringBuilder builder, DataInfo d) {
-		AtomicLong c = counters.get(d.getDataId());
-		builder.append(c.get());
+		builder.append(getCount(d.getDataId()));
 	}
 	
 }
@@ -12,6 +12,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import selogger.logging.IErrorLogger;
 import selogger.logging.IEventLogger;
 import selogger.logging.ILoggingTarget;
+import selogger.logging.util.ThreadContext;
 
 /**
  * Count the number of events for each thread.
@@ -94,9 +95,15 @@ public class ExecuteBeforeLogger implements IEventLogger {
 	}
 	
 	/**
-	 * A class to manage EventCounter for each thread
+	 * A class to manage EventCounter for each thread.
+	 * The counters are stored in ThreadContext objects.
 	 */
-	private static class EventCounters extends ThreadLocal<EventCounter> {
+	private static class EventCounters {
+		
+		/**
+		 * The index of EventCounter in ThreadContext
+		 */
+		private static final int INDEX = ThreadContext.newLocalIndex();
 		
 		/**
 		 * This keeps objects in a list so that close() can 
@@ -104,8 +111,20 @@ public class ExecuteBeforeLogger implements IEventLogger {
 		 */
 		private ArrayList<EventCounter> counters = new ArrayList<>();
 		
-		@Override
-		protected synchronized EventCounter initialValue() {
+		/**
+		 * @param context is the context of the current thread.
+		 * @return the counter of the thread.
+		 */
+		public EventCounter get(ThreadContext context) {
+			EventCounter c = (EventCounter)context.getLocal(INDEX);
+			if (c == null) {
+				c = create();
+				context.setLocal(INDEX, c);
+			}
+			return c;
+		}
+		
+		private synchronized EventCounter create() {
 			EventCounter c = new EventCounter(Thread.currentThread().getId());
 			counters.add(c);
 			return c;
@@ -153,7 +172,9 @@ public class ExecuteBeforeLogger implements IEventLogger {
 	private void recordIfFirstOccurrence(int dataId) {  
 		if (generator == null) return;
 		
-		EventCounter executedDataId = executed.get();
+		ThreadContext context = ThreadContext.get();
+		if (!context.isEnabled()) return;
+		EventCounter executedDataId = executed.get(context);
 		if ((target == null || target.isTarget(dataId)) && executedDataId.isFirst(dataId)) {
 			try {
 				synchronized (generator) {
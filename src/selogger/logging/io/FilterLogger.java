@@ -6,6 +6,7 @@ import java.util.function.IntUnaryOperator;
 import selogger.logging.IErrorLogger;
 import selogger.logging.IEventLogger;
 import selogger.logging.ILoggingTarget;
+import selogger.logging.util.ThreadContext;
 
 public class FilterLogger implements IEventLogger {
 
@@ -118,6 +119,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, boolean value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -128,6 +139,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, byte value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -138,6 +159,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, char value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -148,6 +179,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, double value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -158,6 +199,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, float value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -168,6 +219,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, int value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -178,6 +239,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, long value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -188,6 +259,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, Object value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * Record an event if the logging is enabled
@@ -198,6 +279,16 @@ public class FilterLogger implements IEventLogger {
 		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(dataId, value);
 		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
 	}
+
+	/**
+	 * Record an event if the logging is enabled
+	 */
+	@Override
+	public void recordEvent(ThreadContext context, int dataId, short value) {
+		boolean disabledOnThisEvent = updateStatus(dataId);
+		if (isEnabled() || disabledOnThisEvent) mainLogger.recordEvent(context, dataId, value);
+		if (disabledOnThisEvent && partialSave != PartialSaveStrategy.No) mainLogger.save(partialSave == PartialSaveStrategy.WriteAndReset);
+	}
 	
 	/**
 	 * This method closes the main logger object.
@@ -0,0 +1,75 @@
+package selogger.logging.io;
+
+import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ObjectId;
+
+/**
+ * An interface of a storage that records the latest k events for all data IDs.
+ * LatestEventLogger uses an implementation of this interface instead of
+ * LatestEventBuffer objects.
+ * The add methods are called by recording threads without a lock.
+ */
+public interface IEventArena {
+
+	/**
+	 * Declare that a data ID has no values.
+	 * The events of the data ID are recorded without values.
+	 * @param dataId specifies an event.
+	 */
+	public void setVoidEvent(int dataId);
+
+	/**
+	 * Create an empty storage having the same configuration.
+	 * This method is used to start a new interval of a trace.
+	 * @return the new storage.
+	 */
+	public IEventArena createEmpty();
+
+	public void addVoid(int dataId, long seqnum, int threadId);
+
+	public void addBoolean(int dataId, boolean value, long seqnum, int threadId);
+
+	public void addByte(int dataId, byte value, long seqnum, int threadId);
+
+	public void addChar(int dataId, char value, long seqnum, int threadId);
+
+	public void addShort(int dataId, short value, long seqnum, int threadId);
+
+	public void addInt(int dataId, int value, long seqnum, int threadId);
+
+	public void addLong(int dataId, long value, long seqnum, int threadId);
+
+	public void addFloat(int dataId, float value, long seqnum, int threadId);
+
+	public void addDouble(int dataId, double value, long seqnum, int threadId);
+
+	public void addObjectId(int dataId, ObjectId value, long seqnum, int threadId);
+
+	public void addObject(int dataId, Object value, long seqnum, int threadId);
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return true if the event has been recorded.
+	 */
+	public boolean isRecorded(int dataId);
+
+	/**
+	 * Write the events of a data ID to a JsonBuffer in the same format as LatestEventBuffer.
+	 * @param buf is the output.
+	 * @param dataId specifies an event.
+	 * @param skipValues specifies whether values are written or not.
+	 */
+	public void writeJson(JsonBuffer buf, int dataId, boolean skipValues);
+
+	/**
+	 * Generate a line of CSV in the same format as LatestEventBuffer.
+	 * @param dataId specifies an event.
+	 * @return a string including the events of the data ID.
+	 */
+	public String toString(int dataId);
+
+	/**
+	 * Release resources after the contents are written to a trace file.
+	 */
+	public void close();
+}
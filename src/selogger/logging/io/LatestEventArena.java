@@ -0,0 +1,732 @@
+package selogger.logging.io;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import selogger.logging.IErrorLogger;
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ObjectHash;
+import selogger.logging.util.ObjectId;
+import selogger.logging.util.WeakObjectRef;
+
+/**
+ * Storage of the latest k events for all data IDs, used in place of
+ * LatestEventBuffer objects.
+ * Events are stored in large arrays (chunks) shared by many data IDs.
+ * Each data ID is assigned a fixed range of k slots in a chunk for its value type,
+ * so that the number of objects does not depend on the number of data IDs.
+ * A sequence number and a thread ID of an event are packed into a long value.
+ * The packed value also works as a lock of the slot; a thread writes an event
+ * after replacing the value with BUSY.
+ * Since all the slots for a data ID are allocated at once,
+ * this class is suitable for a small buffer size.
+ */
+public class LatestEventArena implements IEventArena {
+
+	/**
+	 * The number of bits for a thread ID in a packed value.
+	 * Thread IDs are recorded modulo 2^THREAD_BITS.
+	 */
+	private static final int THREAD_BITS = 20;
+
+	private static final long THREAD_MASK = (1L << THREAD_BITS) - 1;
+
+	/**
+	 * The packed value of an empty slot
+	 */
+	static final long EMPTY = 0;
+
+	/**
+	 * The packed value of a slot being written or read
+	 */
+	private static final long BUSY = -1;
+
+	/**
+	 * The number of events in a chunk, if the buffer size is smaller than this value
+	 */
+	private static final int CHUNK_EVENTS = 1 << 16;
+
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * Value types.  The order is the same as TYPES.
+	 */
+	static final int VOID = 0;
+	static final int BOOLEAN = 1;
+	static final int BYTE = 2;
+	static final int CHAR = 3;
+	static final int SHORT = 4;
+	static final int INT = 5;
+	static final int LONG = 6;
+	static final int FLOAT = 7;
+	static final int DOUBLE = 8;
+	static final int OBJECT_ID = 9;
+	static final int OBJECT = 10;
+
+	static final Class<?>[] TYPES = {
+		void.class, boolean.class, byte.class, char.class, short.class, int.class,
+		long.class, float.class, double.class, ObjectId.class, Object.class
+	};
+
+	/**
+	 * The number of bits for a type in a location handle
+	 */
+	static final int TYPE_BITS = 4;
+	static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+	/**
+	 * Slots for a number of data IDs of the same type.
+	 */
+	private static class Chunk {
+
+		/**
+		 * Values of events, or null for VOID
+		 */
+		private final Object values;
+
+		/**
+		 * Sequence numbers and thread IDs of events
+		 */
+		private final AtomicLongArray meta;
+
+		/**
+		 * The number of event occurrences for each data ID
+		 */
+		private final AtomicLongArray counts;
+
+		public Chunk(Object values, int events, int locations) {
+			this.values = values;
+			this.meta = new AtomicLongArray(events);
+			this.counts = new AtomicLongArray(locations);
+		}
+	}
+
+	/**
+	 * @param type specifies a value type.
+	 * @return the component type of value arrays.
+	 * Objects are stored as long values if keepObject is Hash.
+	 */
+	private Class<?> getValueType(int type) {
+		return type == OBJECT && keepObject == ObjectRecordingStrategy.Hash ? long.class : TYPES[type];
+	}
+
+	/**
+	 * Chunks for a value type.
+	 */
+	private class Region {
+
+		private final int type;
+
+		/**
+		 * A buffer used to write values of this type in the same format as LatestEventBuffer
+		 */
+		private final LatestEventBuffer format;
+
+		/**
+		 * Chunks of this region.  The array is replaced when a chunk is added.
+		 */
+		private volatile Chunk[] chunks = new Chunk[0];
+
+		/**
+		 * The number of data IDs assigned to this region
+		 */
+		private int locations;
+
+		public Region(int type) {
+			this.type = type;
+			this.format = LatestEventBuffer.create(TYPES[type], 1, keepObject);
+		}
+
+		/**
+		 * Assign slots to a new data ID.  This method is called with the arena lock.
+		 * @return the location index in this region.
+		 */
+		private int allocate() {
+			int loc = locations++;
+			int c = loc >>> chunkBits;
+			Chunk[] current = chunks;
+			if (c >= current.length) {
+				int events = locationsPerChunk * bufferSize;
+				Object values = type == VOID ? null : Array.newInstance(getValueType(type), events);
+				Chunk[] newChunks = Arrays.copyOf(current, c + 1);
+				newChunks[c] = new Chunk(values, events, locationsPerChunk);
+				chunks = newChunks;
+			}
+			return loc;
+		}
+	}
+
+	private final int bufferSize;
+
+	/**
+	 * The number of data IDs sharing a chunk.  This is a power of two.
+	 */
+	private final int locationsPerChunk;
+
+	/**
+	 * log2(locationsPerChunk)
+	 */
+	private final int chunkBits;
+
+	private final ObjectRecordingStrategy keepObject;
+
+	private final Region[] regions = new Region[TYPES.length];
+
+	/**
+	 * Data IDs of events without values
+	 */
+	private final BitSet voidEvents;
+
+	/**
+	 * Pages of location handles.
+	 * An element is (location &lt;&lt; TYPE_BITS | type) + 1, or 0 if no slots are assigned.
+	 */
+	private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[0];
+
+	/**
+	 * Object to record error messages
+	 */
+	private final IErrorLogger logger;
+
+	/**
+	 * If true, OutOfMemoryError occurred and no more data IDs are recorded.
+	 */
+	private boolean discarded;
+
+	/**
+	 * Create an empty arena.
+	 * @param bufferSize specifies the number of events recorded for each data ID.
+	 * @param keepObject specifies how to keep objects.
+	 * @param logger records an error message.  This may be null.
+	 */
+	public LatestEventArena(int bufferSize, ObjectRecordingStrategy keepObject, IErrorLogger logger) {
+		this(bufferSize, keepObject, logger, new BitSet());
+	}
+
+	private LatestEventArena(int bufferSize, ObjectRecordingStrategy keepObject, IErrorLogger logger, BitSet voidEvents) {
+		this.bufferSize = bufferSize;
+		this.locationsPerChunk = Integer.highestOneBit(Math.max(1, CHUNK_EVENTS / bufferSize));
+		this.chunkBits = Integer.numberOfTrailingZeros(locationsPerChunk);
+		this.keepObject = keepObject;
+		this.logger = logger;
+		this.voidEvents = voidEvents;
+	}
+
+	/**
+	 * Create an empty arena having the same configuration.
+	 * If this arena has been discarded, the new arena is also discarded.
+	 * @return the new arena.
+	 */
+	@Override
+	public synchronized LatestEventArena createEmpty() {
+		LatestEventArena a = new LatestEventArena(bufferSize, keepObject, logger, (BitSet)voidEvents.clone());
+		a.discarded = discarded;
+		return a;
+	}
+
+	/**
+	 * Declare that a data ID has no values.
+	 * The events of the data ID are recorded without values.
+	 * @param dataId specifies an event.
+	 */
+	@Override
+	public synchronized void setVoidEvent(int dataId) {
+		voidEvents.set(dataId);
+	}
+
+	/**
+	 * @return a location handle of a data ID, or -1 if no slots are assigned.
+	 */
+	private int getHandle(int dataId) {
+		AtomicIntegerArray[] dir = pages;
+		int p = dataId >>> PAGE_BITS;
+		if (p < dir.length && dir[p] != null) {
+			return dir[p].get(dataId & PAGE_MASK) - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a location handle of a data ID.  Slots are assigned if necessary.
+	 * -1 is returned if the arena has been discarded.
+	 */
+	private int prepare(int dataId, int type) {
+		int h = getHandle(dataId);
+		if (h >= 0) return h;
+		return assign(dataId, type);
+	}
+
+	/**
+	 * Assign slots to a data ID.
+	 * If OutOfMemoryError occurred, all the recorded events are discarded
+	 * and the arena no longer assigns slots.
+	 * Threads already having a location handle may continue writing to the chunks.
+	 * @param type specifies a value type recorded by the first event.
+	 * @return a location handle, or -1 if the arena has been discarded.
+	 */
+	private synchronized int assign(int dataId, int type) {
+		if (discarded) return -1;
+		int h = getHandle(dataId);
+		if (h >= 0) return h;
+		if (voidEvents.get(dataId)) type = VOID;
+		try {
+			Region r = regions[type];
+			if (r == null) {
+				r = new Region(type);
+				regions[type] = r;
+			}
+			AtomicIntegerArray[] dir = pages;
+			int p = dataId >>> PAGE_BITS;
+			if (p >= dir.length || dir[p] == null) {
+				dir = Arrays.copyOf(dir, Math.max(dir.length, p + 1));
+				dir[p] = new AtomicIntegerArray(PAGE_SIZE);
+			}
+			h = (r.allocate() << TYPE_BITS) | type;
+			dir[p].set(dataId & PAGE_MASK, h + 1);
+			pages = dir;
+			return h;
+		} catch (OutOfMemoryError e) {
+			discarded = true;
+			pages = new AtomicIntegerArray[0];
+			if (logger != null) logger.log("OutOfMemoryError: Logger discarded internal buffers to continue the current execution.");
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the chunk including the slots of a location.
+	 */
+	private Chunk getChunk(int handle) {
+		return regions[handle & TYPE_MASK].chunks[handle >>> (TYPE_BITS + chunkBits)];
+	}
+
+	/**
+	 * @return the index of a location in its chunk.
+	 */
+	private int getLocation(int handle) {
+		return (handle >>> TYPE_BITS) & (locationsPerChunk - 1);
+	}
+
+	/**
+	 * Reserve the next slot of a location and wait until this thread owns the slot.
+	 * The caller must write a value and then call publish.
+	 * @return the index of the slot in the chunk.
+	 */
+	private int acquire(Chunk c, int loc) {
+		long ticket = c.counts.getAndIncrement(loc);
+		int pos = loc * bufferSize + (int)(ticket % bufferSize);
+		while (true) {
+			long m = c.meta.get(pos);
+			if (m != BUSY && c.meta.compareAndSet(pos, m, BUSY)) {
+				return pos;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Make an event in a slot visible.
+	 */
+	private static void publish(Chunk c, int pos, long seqnum, int threadId) {
+		c.meta.lazySet(pos, pack(seqnum, threadId));
+	}
+
+	/**
+	 * @return a packed value representing a sequence number and a thread ID.
+	 * The value is positive and ordered by sequence numbers.
+	 */
+	static long pack(long seqnum, int threadId) {
+		return ((seqnum + 1) << THREAD_BITS) | (threadId & THREAD_MASK);
+	}
+
+	/**
+	 * @return the sequence number in a packed value.
+	 */
+	static long getSeqNum(long packed) {
+		return (packed >>> THREAD_BITS) - 1;
+	}
+
+	/**
+	 * @return the thread ID in a packed value.
+	 */
+	static int getThreadId(long packed) {
+		return (int)(packed & THREAD_MASK);
+	}
+
+	/**
+	 * Look up the slots of a data ID for a value type.
+	 * @return a location handle, or -1 if the data ID records no values.
+	 * @throws UnsupportedOperationException if the data ID records another type.
+	 */
+	private int prepareTyped(int dataId, int type, long seqnum, int threadId) {
+		int h = prepare(dataId, type);
+		if (h < 0) return -1;
+		int t = h & TYPE_MASK;
+		if (t == type) return h;
+		if (t == VOID) {
+			Chunk c = getChunk(h);
+			publish(c, acquire(c, getLocation(h)), seqnum, threadId);
+			return -1;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Record an event without a value.
+	 */
+	@Override
+	public void addVoid(int dataId, long seqnum, int threadId) {
+		int h = prepare(dataId, VOID);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		publish(c, acquire(c, getLocation(h)), seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addBoolean(int dataId, boolean value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, BOOLEAN, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((boolean[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addByte(int dataId, byte value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, BYTE, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((byte[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addChar(int dataId, char value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, CHAR, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((char[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addShort(int dataId, short value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, SHORT, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((short[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addInt(int dataId, int value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, INT, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((int[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addLong(int dataId, long value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, LONG, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((long[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addFloat(int dataId, float value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, FLOAT, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((float[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and its value.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addDouble(int dataId, double value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, DOUBLE, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((double[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and an object ID.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addObjectId(int dataId, ObjectId value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, OBJECT_ID, seqnum, threadId);
+		if (h < 0) return;
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((ObjectId[])c.values)[pos] = value;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * Record an event and an object.
+	 * If keepObject is Weak, the object is stored using a weak reference.
+	 * If keepObject is Hash, only the class and identity hash code are stored.
+	 * If the slots are already full, the oldest event is overwritten.
+	 */
+	@Override
+	public void addObject(int dataId, Object value, long seqnum, int threadId) {
+		int h = prepareTyped(dataId, OBJECT, seqnum, threadId);
+		if (h < 0) return;
+		if (keepObject == ObjectRecordingStrategy.Hash) {
+			long hash = ObjectHash.of(value);
+			Chunk c = getChunk(h);
+			int pos = acquire(c, getLocation(h));
+			((long[])c.values)[pos] = hash;
+			publish(c, pos, seqnum, threadId);
+			return;
+		}
+		Object o = value;
+		if (keepObject == ObjectRecordingStrategy.Weak && value != null) {
+			o = WeakObjectRef.of(value);
+		}
+		Chunk c = getChunk(h);
+		int pos = acquire(c, getLocation(h));
+		((Object[])c.values)[pos] = o;
+		publish(c, pos, seqnum, threadId);
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return true if the event has been recorded.
+	 */
+	@Override
+	public boolean isRecorded(int dataId) {
+		return getHandle(dataId) >= 0;
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return the number of event occurrences.
+	 */
+	public long count(int dataId) {
+		int h = getHandle(dataId);
+		if (h < 0) return 0;
+		return getChunk(h).counts.get(getLocation(h));
+	}
+
+	/**
+	 * The events of a data ID owned by a reader.
+	 */
+	private class Events {
+
+		private final Chunk chunk;
+		private final Region region;
+		private final long count;
+
+		/**
+		 * Indices of slots in the chunk in the order of event occurrence
+		 */
+		private final int[] order;
+
+		/**
+		 * Packed values of the slots owned by this object
+		 */
+		private final long[] meta;
+
+		/**
+		 * Take the ownership of the recorded slots of a location.
+		 * Recording threads wait for the slots until release is called.
+		 */
+		public Events(int handle) {
+			this.chunk = getChunk(handle);
+			this.region = regions[handle & TYPE_MASK];
+			int loc = getLocation(handle);
+			this.count = chunk.counts.get(loc);
+			long[] meta = new long[bufferSize];
+			int len = 0;
+			for (int i=0; i<bufferSize; i++) {
+				int pos = loc * bufferSize + i;
+				long m;
+				while (true) {
+					m = chunk.meta.get(pos);
+					if (m != BUSY && chunk.meta.compareAndSet(pos, m, BUSY)) break;
+					Thread.yield();
+				}
+				meta[i] = m;
+				if (m == EMPTY) {
+					chunk.meta.set(pos, EMPTY);
+				} else {
+					len++;
+				}
+			}
+			Integer[] order = new Integer[len];
+			int n = 0;
+			for (int i=0; i<bufferSize; i++) {
+				if (meta[i] != EMPTY) order[n++] = loc * bufferSize + i;
+			}
+			int base = loc * bufferSize;
+			Arrays.sort(order, (a, b) -> Long.compare(meta[a - base], meta[b - base]));
+			this.order = new int[len];
+			this.meta = new long[len];
+			for (int i=0; i<len; i++) {
+				this.order[i] = order[i];
+				this.meta[i] = meta[order[i] - base];
+			}
+		}
+
+		/**
+		 * Return the slots to recording threads.
+		 */
+		public void release() {
+			for (int i=0; i<order.length; i++) {
+				chunk.meta.set(order[i], meta[i]);
+			}
+		}
+
+		public long getSeqNum(int i) {
+			return LatestEventArena.getSeqNum(meta[i]);
+		}
+
+		public int getThreadId(int i) {
+			return LatestEventArena.getThreadId(meta[i]);
+		}
+	}
+
+	/**
+	 * Write the events of a data ID to a JsonBuffer in the same format as LatestEventBuffer.
+	 * @param buf is the output.
+	 * @param dataId specifies an event.
+	 * @param skipValues specifies whether values are written or not.
+	 */
+	@Override
+	public void writeJson(JsonBuffer buf, int dataId, boolean skipValues) {
+		int h = getHandle(dataId);
+		if (h < 0) return;
+		Events e = new Events(h);
+		try {
+			int len = e.order.length;
+			buf.writeNumberField("freq", e.count);
+			buf.writeNumberField("record", len);
+			if (!skipValues) {
+				buf.writeArrayFieldStart("value");
+				for (int i=0; i<len; i++) {
+					e.region.format.writeValue(buf, e.chunk.values, e.order[i]);
+				}
+				buf.writeEndArray();
+			}
+			buf.writeArrayFieldStart("seqnum");
+			for (int i=0; i<len; i++) {
+				buf.writeNumber(e.getSeqNum(i));
+			}
+			buf.writeEndArray();
+			buf.writeArrayFieldStart("thread");
+			for (int i=0; i<len; i++) {
+				buf.writeNumber(e.getThreadId(i));
+			}
+			buf.writeEndArray();
+		} finally {
+			e.release();
+		}
+	}
+
+	/**
+	 * Generate a line of CSV in the same format as LatestEventBuffer.
+	 * @param dataId specifies an event.
+	 * @return a string including the events of the data ID.
+	 */
+	@Override
+	public String toString(int dataId) {
+		int h = getHandle(dataId);
+		if (h < 0) return LatestEventBuffer.getEmptyColumns(bufferSize);
+		Events e = new Events(h);
+		try {
+			StringBuilder buf = new StringBuilder();
+			int len = e.order.length;
+			buf.append(e.count);
+			buf.append(",");
+			buf.append(len);
+			for (int i=0; i<bufferSize; i++) {
+				buf.append(",");
+				if (i>=len) {
+					buf.append(",");
+					buf.append(",");
+					continue;
+				}
+				e.region.format.appendValue(buf, e.chunk.values, e.order[i]);
+				buf.append(",");
+				buf.append(e.getSeqNum(i));
+				buf.append(",");
+				buf.append(e.getThreadId(i));
+			}
+			return buf.toString();
+		} finally {
+			e.release();
+		}
+	}
+
+	/**
+	 * @return the number of objects allocated for chunks.
+	 * This is used to compare the memory layout with LatestEventBuffer.
+	 */
+	public synchronized int getChunkCount() {
+		int n = 0;
+		for (Region r: regions) {
+			if (r != null) n += r.chunks.length;
+		}
+		return n;
+	}
+
+	/**
+	 * The arena has no resources to be released.
+	 */
+	@Override
+	public void close() {
+	}
+}
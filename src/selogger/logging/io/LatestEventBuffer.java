@@ -1,211 +1,545 @@
 package selogger.logging.io;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import com.fasterxml.jackson.core.io.JsonStringEncoder;
 
 import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
 import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ObjectHash;
 import selogger.logging.util.ObjectId;
+import selogger.logging.util.WeakObjectRef;
 
 /**
  * A ring buffer to record the latest k events for a data ID.
+ * Recording threads do not take a lock.
+ * A thread reserves a slot by incrementing the event count,
+ * and then owns the slot using a stamp associated with the slot.
+ * A stamp is 0 for an empty slot, (ticket + 1) for a published event, 
+ * and a negative value while a thread is writing or reading the slot. 
+ * A thread writing the n-th event waits for the (n - k)-th event 
+ * to be published in the same slot, so that a slot never mixes two events.
+ * The arrays are extended by a synchronized method 
+ * until they reach the buffer size.
+ * Each subclass stores values of a particular type, 
+ * so that recording and writing a value do not check the array type.
+ * Use the create method to instantiate a buffer for a value type.
+ * If many threads record events to a buffer at the same time,
+ * the buffer can be split into stripes, i.e. buffers for each group of threads.
+ * The stripes are merged by sequence numbers when the buffer is written.
  */
-public class LatestEventBuffer {
+public abstract class LatestEventBuffer {
 
 	private static final int DEFAULT_CAPACITY = 32; 
 
-	private int bufferSize;
-	private int nextPos = 0;
-	private long count = 0;
-	private Object array;
-	private long[] seqnums;
-	private int[] threads;
-	private ObjectRecordingStrategy keepObject;
+	/**
+	 * The stamp of an empty slot
+	 */
+	private static final long EMPTY = 0;
+
+	/**
+	 * The stamp of a slot moved to extended arrays
+	 */
+	private static final long MOVED = Long.MIN_VALUE;
+
+	/**
+	 * The number of failed attempts to reserve a slot
+	 * before a buffer is regarded as contended
+	 */
+	static final int CONTENTION_THRESHOLD = 256;
+
+	private static final AtomicLongFieldUpdater<LatestEventBuffer> COUNT = AtomicLongFieldUpdater.newUpdater(LatestEventBuffer.class, "count");
+
+	/**
+	 * Arrays to store events.  
+	 * Extending the buffer replaces the whole object.
+	 */
+	private static class Storage {
+
+		private final Object array;
+		private final long[] seqnums;
+		private final int[] threads;
+		private final AtomicLongArray stamps;
+		private final int capacity;
+
+		public Storage(Object array, long[] seqnums, int[] threads, long[] stamps) {
+			this.array = array;
+			this.seqnums = seqnums;
+			this.threads = threads;
+			this.stamps = new AtomicLongArray(stamps);
+			this.capacity = seqnums.length;
+		}
+	}
+
+	/**
+	 * A copy of events taken from a buffer.
+	 * The events are sorted in the order of their occurrences.
+	 */
+	private static class Snapshot {
+
+		private final Object array;
+		private final long[] seqnums;
+		private final int[] threads;
+
+		/**
+		 * Array indices of the events from the oldest one
+		 */
+		private final int[] order;
 
-	private int capacity;
+		public Snapshot(Object array, long[] seqnums, int[] threads, int[] order) {
+			this.array = array;
+			this.seqnums = seqnums;
+			this.threads = threads;
+			this.order = order;
+		}
+	}
+
+	private final int bufferSize;
+
+	/**
+	 * The number of reserved slots, i.e. the number of event occurrences 
+	 */
+	private volatile long count = 0;
+	private volatile Storage storage;
+
+	/**
+	 * The number of failed attempts to reserve a slot.
+	 * This is updated without synchronization since it is only a hint.
+	 */
+	private int contention;
+
+	/**
+	 * Buffers for groups of threads, or null if this buffer is not striped.
+	 * The length is a power of two.
+	 */
+	private volatile LatestEventBuffer[] stripes;
+
+	/**
+	 * The type of values stored in this buffer.  
+	 * void.class indicates that this buffer records no values.
+	 */
+	private final Class<?> valueType;
+
+	/**
+	 * Create a buffer for a value type.
+	 * @param type specifies a value type stored to the buffer.
+	 * void.class creates a buffer that records only sequence numbers and threads.
+	 * @param bufferSize specifies the size of this buffer.
+	 * @param keepObject specifies how the buffer keeps objects if type is Object.class.
+	 * @return a buffer for the type.
+	 */
+	public static LatestEventBuffer create(Class<?> type, int bufferSize, ObjectRecordingStrategy keepObject) {
+		if (type == void.class) {
+			return new VoidBuffer(bufferSize);
+		} else if (type == boolean.class) {
+			return new BooleanBuffer(bufferSize);
+		} else if (type == byte.class) {
+			return new ByteBuffer(bufferSize);
+		} else if (type == char.class) {
+			return new CharBuffer(bufferSize);
+		} else if (type == short.class) {
+			return new ShortBuffer(bufferSize);
+		} else if (type == int.class) {
+			return new IntBuffer(bufferSize);
+		} else if (type == long.class) {
+			return new LongBuffer(bufferSize);
+		} else if (type == float.class) {
+			return new FloatBuffer(bufferSize);
+		} else if (type == double.class) {
+			return new DoubleBuffer(bufferSize);
+		} else if (type == ObjectId.class) {
+			return new ObjectIdBuffer(bufferSize);
+		} else if (keepObject == ObjectRecordingStrategy.Hash) {
+			return new ObjectHashBuffer(bufferSize);
+		} else {
+			return new ObjectBuffer(bufferSize, keepObject);
+		}
+	}
 
 	/**
 	 * Create a buffer.
 	 * @param type specifies a value type stored to the buffer.
 	 * @param bufferSize specifies the size of this buffer.
 	 */
-	public LatestEventBuffer(Class<?> type, int bufferSize, ObjectRecordingStrategy keepOject) {
-		this.capacity = Math.min(DEFAULT_CAPACITY, bufferSize);
+	private LatestEventBuffer(Class<?> type, int bufferSize) {
+		int capacity = Math.min(DEFAULT_CAPACITY, bufferSize);
 		this.bufferSize = bufferSize;
-		this.array = Array.newInstance(type, capacity);
-		this.seqnums = new long[capacity];
-		this.threads = new int[capacity];
-		this.keepObject = keepOject;
-	}
-
-	/**
-	 * @return index to which the next value is written.   
-	 */
-	private int getNextIndex() {
-		count++;
-		int next = nextPos++;
-		if (nextPos >= capacity) {
-			if (capacity < bufferSize) {
-				// extend the buffer
-				capacity = Math.min(capacity * 2, bufferSize);
-				this.seqnums = Arrays.copyOf(this.seqnums, capacity);
-				this.threads = Arrays.copyOf(this.threads, capacity);
-				if (array instanceof int[]) {
-					this.array = Arrays.copyOf((int[])array, capacity);
-				} else if (array instanceof long[]) {
-					this.array = Arrays.copyOf((long[])array, capacity);
-				} else if (array instanceof float[]) {
-					this.array = Arrays.copyOf((float[])array, capacity);
-				} else if (array instanceof double[]) {
-					this.array = Arrays.copyOf((double[])array, capacity);
-				} else if (array instanceof char[]) {
-					this.array = Arrays.copyOf((char[])array, capacity);
-				} else if (array instanceof short[]) {
-					this.array = Arrays.copyOf((short[])array, capacity);
-				} else if (array instanceof byte[]) {
-					this.array = Arrays.copyOf((byte[])array, capacity);
-				} else if (array instanceof boolean[]) {
-					this.array = Arrays.copyOf((boolean[])array, capacity);
-				} else if (array instanceof String[]) {
-					this.array = Arrays.copyOf((String[])array, capacity);
-				} else {
-					this.array = Arrays.copyOf((Object[])array, capacity);
-				} 
+		this.valueType = type;
+		this.storage = new Storage(newArray(capacity), new long[capacity], new int[capacity], new long[capacity]);
+	}
+
+	/**
+	 * @param length specifies the length of an array.
+	 * @return an array to store values, or null if this buffer records no values.
+	 */
+	private Object newArray(int length) {
+		return valueType == void.class ? null : Array.newInstance(valueType, length);
+	}
+
+	/**
+	 * Copy values from an array to another array.
+	 */
+	private static void copyValues(Object src, Object dest, int length) {
+		if (src != null) {
+			System.arraycopy(src, 0, dest, 0, length);
+		}
+	}
+
+	/**
+	 * Write a value as an element of a JSON array.
+	 * @param buf is the output.
+	 * @param array is a value array taken from this buffer.
+	 * @param idx specifies a value in the array.
+	 */
+	protected abstract void writeValue(JsonBuffer buf, Object array, int idx);
+
+	/**
+	 * Write a value as a column of CSV.
+	 * @param buf is the output.
+	 * @param array is a value array taken from this buffer.
+	 * @param idx specifies a value in the array.
+	 */
+	protected abstract void appendValue(StringBuilder buf, Object array, int idx);
+
+	/**
+	 * Reserve a slot for the next event and wait until this thread owns the slot.
+	 * The caller must write the event to the returned storage and then call publish.
+	 * @param ticket is the sequential number of the event in this buffer.
+	 * @param index is the slot for the event.
+	 * @return the storage including the slot.
+	 */
+	final Storage acquire(long ticket, int index) {
+		long previous = Math.max(EMPTY, ticket + 1 - bufferSize);
+		Storage s = storage;
+		while (true) {
+			if (index >= s.capacity) {
+				s = extend(index);
+			}
+			long stamp = s.stamps.get(index);
+			if (stamp == previous) {
+				if (s.stamps.compareAndSet(index, previous, -(ticket + 1))) {
+					return s;
+				}
+			} else if (stamp == MOVED) {
+				s = storage;
 			} else {
-				// If the buffer is already maximum, works as a ring buffer 
-				nextPos = 0;
+				// Another thread is writing or reading the slot
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Make the event in a slot visible to other threads.
+	 */
+	static void publish(Storage s, long ticket, int index) {
+		s.stamps.lazySet(index, ticket + 1);
+	}
+
+	/**
+	 * Extend the arrays so that the given index is available.
+	 * Each slot in the old arrays is marked as moved after 
+	 * its writer (if any) published the event. 
+	 * @param index specifies a slot to be written.
+	 * @return the current storage.
+	 */
+	private synchronized Storage extend(int index) {
+		Storage s = storage;
+		if (index < s.capacity) return s;
+		int newCapacity = s.capacity;
+		while (newCapacity <= index) {
+			newCapacity = Math.min(newCapacity * 2, bufferSize);
+		}
+		long[] stamps = new long[newCapacity];
+		for (int i=0; i<s.capacity; i++) {
+			stamps[i] = claim(s, i, MOVED);
+		}
+		Object newArray = newArray(newCapacity);
+		copyValues(s.array, newArray, s.capacity);
+		Storage n = new Storage(newArray, Arrays.copyOf(s.seqnums, newCapacity), Arrays.copyOf(s.threads, newCapacity), stamps);
+		storage = n;
+		return n;
+	}
+
+	/**
+	 * Wait until no thread is writing a slot, and then replace its stamp.
+	 * @param s is a storage.
+	 * @param index specifies a slot.
+	 * @param marker is a stamp to be stored.
+	 * @return the original stamp of the slot.
+	 */
+	private static long claim(Storage s, int index, long marker) {
+		while (true) {
+			long stamp = s.stamps.get(index);
+			if (stamp >= EMPTY && s.stamps.compareAndSet(index, stamp, marker)) {
+				return stamp;
 			}
+			Thread.yield();
 		}
-		return next;
+	}
+
+	/**
+	 * Copy the published events including the events in stripes.
+	 * @return the copied events.
+	 */
+	private Snapshot snapshot() {
+		Snapshot own = copyEvents();
+		LatestEventBuffer[] s = stripes;
+		if (s == null) return own;
+		Snapshot[] parts = new Snapshot[s.length + 1];
+		parts[0] = own;
+		for (int i=0; i<s.length; i++) {
+			parts[i+1] = s[i].copyEvents();
+		}
+		return merge(parts);
+	}
+
+	/**
+	 * Merge the events of stripes by sequence numbers.
+	 * @param parts are copies of the events taken from stripes.
+	 * @return the latest events in the parts.
+	 */
+	private Snapshot merge(Snapshot[] parts) {
+		int total = 0;
+		for (Snapshot p: parts) {
+			total += p.order.length;
+		}
+		int[] part = new int[total];
+		int[] index = new int[total];
+		int n = 0;
+		for (int p=0; p<parts.length; p++) {
+			for (int i: parts[p].order) {
+				part[n] = p;
+				index[n] = i;
+				n++;
+			}
+		}
+		Integer[] order = new Integer[total];
+		for (int i=0; i<total; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(parts[part[a]].seqnums[index[a]], parts[part[b]].seqnums[index[b]]));
+		int len = Math.min(total, bufferSize);
+		Object array = newArray(len);
+		long[] seqnums = new long[len];
+		int[] threads = new int[len];
+		int[] indices = new int[len];
+		for (int i=0; i<len; i++) {
+			int e = order[total - len + i];
+			Snapshot p = parts[part[e]];
+			if (array != null) {
+				System.arraycopy(p.array, index[e], array, i, 1);
+			}
+			seqnums[i] = p.seqnums[index[e]];
+			threads[i] = p.threads[index[e]];
+			indices[i] = i;
+		}
+		return new Snapshot(array, seqnums, threads, indices);
+	}
+
+	/**
+	 * Copy the published events of this buffer.  
+	 * The slots are temporarily owned by this method, so that 
+	 * recording threads do not overwrite them during the copy.
+	 * @return the copied events.
+	 */
+	private synchronized Snapshot copyEvents() {
+		// extend() is also synchronized, so that the storage is not replaced during the copy
+		Storage s = storage;
+		long[] stamps = new long[s.capacity];
+		for (int i=0; i<s.capacity; i++) {
+			long stamp = claim(s, i, -1);
+			stamps[i] = stamp;
+			if (stamp == EMPTY) {
+				// Nothing to copy; recording threads may use the slot
+				s.stamps.set(i, EMPTY);
+			}
+		}
+		Object array = newArray(s.capacity);
+		copyValues(s.array, array, s.capacity);
+		long[] seqnums = s.seqnums.clone();
+		int[] threads = s.threads.clone();
+		int len = 0;
+		for (int i=0; i<s.capacity; i++) {
+			if (stamps[i] != EMPTY) {
+				s.stamps.set(i, stamps[i]);
+				len++;
+			}
+		}
+		// Sort the slots by their stamps 
+		Integer[] order = new Integer[len];
+		int n = 0;
+		for (int i=0; i<s.capacity; i++) {
+			if (stamps[i] != EMPTY) order[n++] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(stamps[a], stamps[b]));
+		int[] indices = new int[len];
+		for (int i=0; i<len; i++) {
+			indices[i] = order[i];
+		}
+		return new Snapshot(array, seqnums, threads, indices);
+	}
+
+	/**
+	 * Reserve a slot for the next event.
+	 * @return the ticket of the event.
+	 */
+	final long reserve() {
+		long c = count;
+		if (COUNT.compareAndSet(this, c, c + 1)) return c;
+		// Another thread reserved a slot at the same time
+		contention++;
+		return COUNT.getAndIncrement(this);
+	}
+
+	/**
+	 * Select a buffer to record an event of a thread.
+	 * If this buffer has been contended, it is split into stripes.
+	 * @param threadId specifies the thread recording an event.
+	 * @param stripeCount specifies the number of stripes.  This must be a power of two.
+	 * @return this buffer or a stripe.
+	 */
+	public final LatestEventBuffer getStripe(int threadId, int stripeCount) {
+		LatestEventBuffer[] s = stripes;
+		if (s != null) return s[threadId & (s.length - 1)];
+		if (contention < CONTENTION_THRESHOLD) return this;
+		return createStripes(stripeCount)[threadId & (stripeCount - 1)];
+	}
+
+	/**
+	 * Split this buffer into stripes.
+	 * This buffer keeps the events recorded before the split.
+	 * @param stripeCount specifies the number of stripes.
+	 * @return the stripes.
+	 */
+	final synchronized LatestEventBuffer[] createStripes(int stripeCount) {
+		LatestEventBuffer[] s = stripes;
+		if (s == null) {
+			s = new LatestEventBuffer[stripeCount];
+			for (int i=0; i<stripeCount; i++) {
+				s[i] = newStripe();
+			}
+			stripes = s;
+		}
+		return s;
+	}
+
+	/**
+	 * @return true if this buffer has been split into stripes.
+	 */
+	public boolean isStriped() {
+		return stripes != null;
+	}
+
+	/**
+	 * @return an empty buffer having the same configuration.
+	 */
+	protected LatestEventBuffer newStripe() {
+		return create(valueType, bufferSize, null);
+	}
+
+	/**
+	 * @return the slot for an event.
+	 */
+	final int getIndex(long ticket) {
+		return (int)(ticket % bufferSize);
 	}
 	
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addBoolean(boolean value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((boolean[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addBoolean(boolean value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addByte(byte value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((byte[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addByte(byte value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addChar(char value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((char[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addChar(char value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addInt(int value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((int[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addInt(int value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addDouble(double value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((double[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addDouble(double value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addFloat(float value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((float[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addFloat(float value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
-	
+
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addLong(long value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((long[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addLong(long value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
-	
+
 	/**
 	 * Write a value to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
+	 * @throws UnsupportedOperationException if this buffer is not for the type.
 	 */
-	public synchronized void addShort(short value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((short[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addShort(short value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write an object reference to the next position.
 	 * If the buffer is already full, it overwrites the oldest one.
-	 * If keepObject is true, this buffer directly stores the object reference.
-	 * Otherwise, the buffer uses a weak reference to store the reference.
-	 */
-	public synchronized void addObject(Object value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		assert (keepObject == ObjectRecordingStrategy.Strong) || (keepObject == ObjectRecordingStrategy.Weak);
-		if (keepObject == ObjectRecordingStrategy.Strong) {
-			((Object[])array)[index] = value;
-		} else {
-			if (value != null) {
-				WeakReference<?> ref = new WeakReference<>(value);
-				((Object[])array)[index] = ref;
-			} else {
-				((Object[])array)[index] = null;
-			}
-		}
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	 * @throws UnsupportedOperationException if this buffer is not for objects.
+	 */
+	public void addObject(Object value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * Write an object ID to the next position.
 	 * Differently from addObject method, this method records 
 	 * only an ID without a reference.
+	 * @throws UnsupportedOperationException if this buffer is not for object IDs.
 	 */
-	public synchronized void addObjectId(ObjectId value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((ObjectId[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public void addObjectId(ObjectId value, long seqnum, int threadId) {
+		throw new UnsupportedOperationException();
 	}
-	
+
 	/**
 	 * Generate a string representation that is written to a trace file.
 	 * @return A line of CSV string.  The first column is the number of events recorded in the buffer.
@@ -216,12 +550,14 @@ public class LatestEventBuffer {
 	 * In case of a string object, the content is written with the object ID.  
 	 */
 	@Override
-	public synchronized String toString() {
+	public String toString() {
+		Snapshot snapshot = snapshot();
+		Object array = snapshot.array;
 		StringBuilder buf = new StringBuilder();
-		int len = (int)Math.min(count, bufferSize);
+		int len = snapshot.order.length;
 		buf.append(count());
 		buf.append(",");
-		buf.append(size());
+		buf.append(len);
 		for (int i=0; i<bufferSize; i++) {
 			buf.append(",");
 			if (i>=len) {
@@ -230,56 +566,12 @@ public class LatestEventBuffer {
 				buf.append(",");
 				continue;
 			}
-			int idx = (count >= bufferSize) ? (nextPos + i) % bufferSize : i;
-
-			// Write a value depending on a type
-			if (array instanceof int[]) {
-				buf.append(((int[])array)[idx]);
-			} else if (array instanceof long[]) {
-				buf.append(((long[])array)[idx]);
-			} else if (array instanceof float[]) {
-				buf.append(((float[])array)[idx]);
-			} else if (array instanceof double[]) {
-				buf.append(((double[])array)[idx]);
-			} else if (array instanceof char[]) {
-				buf.append((int)((char[])array)[idx]);
-			} else if (array instanceof short[]) {
-				buf.append(((short[])array)[idx]);
-			} else if (array instanceof byte[]) {
-				buf.append(((byte[])array)[idx]);
-			} else if (array instanceof boolean[]) {
-				buf.append(((boolean[])array)[idx]);
-			} else if (array instanceof String[]) {
-				buf.append(((String[])array)[idx]);
-			} else {
-				String msg = "null";
-				Object o = ((Object[])array)[idx];
-				if (keepObject == ObjectRecordingStrategy.Weak) {
-					WeakReference<?> ref = (WeakReference<?>)o;
-					o = ref.get();
-					if (o == null) {
-						msg = "<GC>";
-					}
-				}
-				if (o == null) {
-					buf.append(msg);
-				} else {
-					String id = o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o));
-					if (o instanceof String) {
-						buf.append("\"");
-						buf.append(id);
-						buf.append(":");
-						JsonStringEncoder.getInstance().quoteAsString((String)o, buf);
-						buf.append("\"");
-					} else {
-						buf.append(id);
-					}
-				}
-			}
+			int idx = snapshot.order[i];
+			appendValue(buf, array, idx);
 			buf.append(",");
-			buf.append(seqnums[idx]);
+			buf.append(snapshot.seqnums[idx]);
 			buf.append(",");
-			buf.append(threads[idx]);
+			buf.append(snapshot.threads[idx]);
 		}
 		return buf.toString();
 	}
@@ -321,27 +613,38 @@ public class LatestEventBuffer {
 	}
 	
 	/**
-	 * @return the number of event occurrences
+	 * @return the number of event occurrences including stripes
 	 */
-	public synchronized long count() {
-		return count;
+	public long count() {
+		long c = count;
+		LatestEventBuffer[] s = stripes;
+		if (s != null) {
+			for (LatestEventBuffer b: s) {
+				c += b.count;
+			}
+		}
+		return c;
 	}
 
 	/**
 	 * @return the number of event data recorded in this buffer.
 	 * The maximum value is the buffer size.
+	 * This method and the getter methods below ignore stripes.
 	 */
-	public synchronized int size() {
+	public int size() {
 		return (int)Math.min(count, bufferSize); 
 	}
 	
 	/**
 	 * Calculate the i-th event data location in the buffer. 
+	 * The getter methods using this method assume that 
+	 * no thread is recording an event to this buffer.
 	 * @param i specifies an event.  0 indicates the oldest event in the buffer.
 	 * @return index for an array
 	 */
 	private int getPos(int i) {
-		return (count >= bufferSize) ? (nextPos + i) % bufferSize : i;
+		long c = count;
+		return (int)((Math.max(0, c - bufferSize) + i) % bufferSize);
 	}
 
 	/**
@@ -350,7 +653,7 @@ public class LatestEventBuffer {
 	 * @return an integer recorded for the event
 	 */
 	public int getInt(int i) {
-		return ((int[])array)[getPos(i)];
+		return ((int[])storage.array)[getPos(i)];
 	}
 
 	/**
@@ -359,11 +662,11 @@ public class LatestEventBuffer {
 	 * @return a long integer recorded for the event
 	 */
 	public long getLong(int i) {
-		return ((long[])array)[getPos(i)];
+		return ((long[])storage.array)[getPos(i)];
 	}
 	
 	public ObjectId getObjectId(int i) {
-		return ((ObjectId[])array)[getPos(i)];
+		return ((ObjectId[])storage.array)[getPos(i)];
 	}
 	
 	/**
@@ -372,7 +675,7 @@ public class LatestEventBuffer {
 	 * @return a sequential number assigned to the event
 	 */
 	public long getSeqNum(int i) {
-		return seqnums[getPos(i)];
+		return storage.seqnums[getPos(i)];
 	}
 	
 	/**
@@ -381,87 +684,536 @@ public class LatestEventBuffer {
 	 * @return a thread ID of the event
 	 */
 	public int getThreadId(int i) {
-		return threads[getPos(i)];
+		return storage.threads[getPos(i)];
 	}
 		
 	/**
 	 * Write the content of this buffer to a JsonBuffer. 
+	 * Events being recorded by other threads are not included.
 	 * @param buf
 	 * @param skipValues
 	 * @throws IOException
 	 */
-	public synchronized void writeJson(JsonBuffer buf, boolean skipValues) { 
-		int len = (int)Math.min(count, bufferSize);
+	public void writeJson(JsonBuffer buf, boolean skipValues) { 
+		Snapshot snapshot = snapshot();
+		Object array = snapshot.array;
+		int len = snapshot.order.length;
 		buf.writeNumberField("freq", count());
-		buf.writeNumberField("record", size());
+		buf.writeNumberField("record", len);
 
 		if (!skipValues) {
 			buf.writeArrayFieldStart("value");
 			for (int i=0; i<len; i++) {
-				int idx = getPos(i);
-				// Write a value depending on a type
-				if (array instanceof int[]) {
-					buf.writeNumber(((int[])array)[idx]);
-				} else if (array instanceof long[]) {
-					buf.writeNumber(((long[])array)[idx]);
-				} else if (array instanceof float[]) {
-					buf.writeNumber(((float[])array)[idx]);
-				} else if (array instanceof double[]) {
-					buf.writeNumber(((double[])array)[idx]);
-				} else if (array instanceof char[]) {
-					buf.writeNumber((int)((char[])array)[idx]);
-				} else if (array instanceof short[]) {
-					buf.writeNumber(((short[])array)[idx]);
-				} else if (array instanceof byte[]) {
-					buf.writeNumber(((byte[])array)[idx]);
-				} else if (array instanceof boolean[]) {
-					buf.writeBoolean(((boolean[])array)[idx]);
-				} else if (array instanceof ObjectId[]) {
-					ObjectId id = ((ObjectId[])array)[idx];
-					buf.writeStartObject();
-					buf.writeStringField("id", Long.toString(id.getId()));
-					buf.writeStringField("type", id.getClassName());
-					if (id.getContent() != null) buf.writeStringField("str", id.getContent());
-					buf.writeEndObject();
-				} else {
-					String id = null;
-					Object o = ((Object[])array)[idx];
-					if (o == null) {
-						buf.writeNull();
-					} else {
-						if (keepObject == ObjectRecordingStrategy.Weak) {
-							WeakReference<?> ref = (WeakReference<?>)o;
-							o = ref.get();
-						} 
-						if (o != null) {
-							id = Integer.toHexString(System.identityHashCode(o));
-						} else {
-							id = "<GC>";
-						}
-						buf.writeStartObject();
-						buf.writeStringField("id", id);
-						if (o != null) {
-							buf.writeStringField("type", o.getClass().getName());
-							if (o instanceof String) {
-								buf.writeEscapedStringField("str", (String)o);
-							}
-						}
-						buf.writeEndObject();
-					}
-				}
+				writeValue(buf, array, snapshot.order[i]);
 			}
 			buf.writeEndArray();
 		}
 		buf.writeArrayFieldStart("seqnum");
 		for (int i=0; i<len; i++) {
-			buf.writeNumber(seqnums[getPos(i)]);
+			buf.writeNumber(snapshot.seqnums[snapshot.order[i]]);
 		}
 		buf.writeEndArray();
 		buf.writeArrayFieldStart("thread");
 		for (int i=0; i<len; i++) {
-			buf.writeNumber(threads[getPos(i)]);
+			buf.writeNumber(snapshot.threads[snapshot.order[i]]);
 		}
 		buf.writeEndArray();
 	}
 
+	/**
+	 * A buffer for events without values, e.g. Descriptor.Void events.
+	 * The buffer records only sequence numbers and threads.
+	 * Any add method is accepted and its value is discarded.
+	 */
+	static final class VoidBuffer extends LatestEventBuffer {
+
+		VoidBuffer(int bufferSize) {
+			super(void.class, bufferSize);
+		}
+
+		private void add(long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		public void addBoolean(boolean value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addByte(byte value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addChar(char value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addShort(short value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addInt(int value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addLong(long value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addFloat(float value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addDouble(double value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addObject(Object value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		public void addObjectId(ObjectId value, long seqnum, int threadId) {
+			add(seqnum, threadId);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNull();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			// No value is recorded
+		}
+	}
+
+	static final class BooleanBuffer extends LatestEventBuffer {
+
+		BooleanBuffer(int bufferSize) {
+			super(boolean.class, bufferSize);
+		}
+
+		@Override
+		public void addBoolean(boolean value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((boolean[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeBoolean(((boolean[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((boolean[])array)[idx]);
+		}
+	}
+
+	static final class ByteBuffer extends LatestEventBuffer {
+
+		ByteBuffer(int bufferSize) {
+			super(byte.class, bufferSize);
+		}
+
+		@Override
+		public void addByte(byte value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((byte[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((byte[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((byte[])array)[idx]);
+		}
+	}
+
+	static final class CharBuffer extends LatestEventBuffer {
+
+		CharBuffer(int bufferSize) {
+			super(char.class, bufferSize);
+		}
+
+		@Override
+		public void addChar(char value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((char[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber((int)((char[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append((int)((char[])array)[idx]);
+		}
+	}
+
+	static final class ShortBuffer extends LatestEventBuffer {
+
+		ShortBuffer(int bufferSize) {
+			super(short.class, bufferSize);
+		}
+
+		@Override
+		public void addShort(short value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((short[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((short[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((short[])array)[idx]);
+		}
+	}
+
+	static final class IntBuffer extends LatestEventBuffer {
+
+		IntBuffer(int bufferSize) {
+			super(int.class, bufferSize);
+		}
+
+		@Override
+		public void addInt(int value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((int[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((int[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((int[])array)[idx]);
+		}
+	}
+
+	static final class LongBuffer extends LatestEventBuffer {
+
+		LongBuffer(int bufferSize) {
+			super(long.class, bufferSize);
+		}
+
+		@Override
+		public void addLong(long value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((long[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((long[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((long[])array)[idx]);
+		}
+	}
+
+	static final class FloatBuffer extends LatestEventBuffer {
+
+		FloatBuffer(int bufferSize) {
+			super(float.class, bufferSize);
+		}
+
+		@Override
+		public void addFloat(float value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((float[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((float[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((float[])array)[idx]);
+		}
+	}
+
+	static final class DoubleBuffer extends LatestEventBuffer {
+
+		DoubleBuffer(int bufferSize) {
+			super(double.class, bufferSize);
+		}
+
+		@Override
+		public void addDouble(double value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((double[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			buf.writeNumber(((double[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			buf.append(((double[])array)[idx]);
+		}
+	}
+
+	/**
+	 * A buffer for object IDs.
+	 */
+	static final class ObjectIdBuffer extends LatestEventBuffer {
+
+		ObjectIdBuffer(int bufferSize) {
+			super(ObjectId.class, bufferSize);
+		}
+
+		@Override
+		public void addObjectId(ObjectId value, long seqnum, int threadId) {
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((ObjectId[])s.array)[index] = value;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			ObjectId id = ((ObjectId[])array)[idx];
+			buf.writeStartObject();
+			buf.writeStringField("id", Long.toString(id.getId()));
+			buf.writeStringField("type", id.getClassName());
+			if (id.getContent() != null) buf.writeStringField("str", id.getContent());
+			buf.writeEndObject();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			ObjectId o = ((ObjectId[])array)[idx];
+			if (o == null) {
+				buf.append("null");
+			} else {
+				buf.append(o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o)));
+			}
+		}
+	}
+
+	/**
+	 * A buffer for objects represented by ObjectHash values.
+	 * This buffer keeps no references to objects.
+	 */
+	static final class ObjectHashBuffer extends LatestEventBuffer {
+
+		ObjectHashBuffer(int bufferSize) {
+			super(long.class, bufferSize);
+		}
+
+		@Override
+		protected LatestEventBuffer newStripe() {
+			return new ObjectHashBuffer(super.bufferSize);
+		}
+
+		@Override
+		public void addObject(Object value, long seqnum, int threadId) {
+			long hash = ObjectHash.of(value);
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((long[])s.array)[index] = hash;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			long hash = ((long[])array)[idx];
+			if (hash == ObjectHash.NULL) {
+				buf.writeNull();
+				return;
+			}
+			buf.writeStartObject();
+			buf.writeStringField("id", ObjectHash.getId(hash));
+			buf.writeStringField("type", ObjectHash.getClassName(hash));
+			buf.writeEndObject();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			long hash = ((long[])array)[idx];
+			if (hash == ObjectHash.NULL) {
+				buf.append("null");
+			} else {
+				buf.append(ObjectHash.getClassName(hash));
+				buf.append("@");
+				buf.append(ObjectHash.getId(hash));
+			}
+		}
+	}
+
+	/**
+	 * A buffer for object references.
+	 * If keepObject is Strong, this buffer directly stores the object reference.
+	 * Otherwise, the buffer uses a weak reference shared by events of the same object.
+	 * If the object is garbage-collected, the class name and the identity hash code
+	 * kept in the reference are written instead of the object.
+	 */
+	static final class ObjectBuffer extends LatestEventBuffer {
+
+		private final ObjectRecordingStrategy keepObject;
+
+		ObjectBuffer(int bufferSize, ObjectRecordingStrategy keepObject) {
+			super(Object.class, bufferSize);
+			this.keepObject = keepObject;
+		}
+
+		@Override
+		protected LatestEventBuffer newStripe() {
+			return new ObjectBuffer(super.bufferSize, keepObject);
+		}
+
+		@Override
+		public void addObject(Object value, long seqnum, int threadId) {
+			assert (keepObject == ObjectRecordingStrategy.Strong) || (keepObject == ObjectRecordingStrategy.Weak);
+			Object o = value;
+			if (keepObject != ObjectRecordingStrategy.Strong && value != null) {
+				o = WeakObjectRef.of(value);
+			}
+			long ticket = reserve();
+			int index = getIndex(ticket);
+			Storage s = acquire(ticket, index);
+			((Object[])s.array)[index] = o;
+			s.seqnums[index] = seqnum;
+			s.threads[index] = threadId;
+			publish(s, ticket, index);
+		}
+
+		/**
+		 * @return the object referenced by the array element. 
+		 */
+		private Object getObject(Object array, int idx) {
+			Object o = ((Object[])array)[idx];
+			if (keepObject == ObjectRecordingStrategy.Weak && o != null) {
+				o = ((WeakObjectRef)o).get();
+			}
+			return o;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, Object array, int idx) {
+			if (((Object[])array)[idx] == null) {
+				buf.writeNull();
+				return;
+			}
+			Object o = getObject(array, idx);
+			buf.writeStartObject();
+			if (o != null) {
+				buf.writeStringField("id", Integer.toHexString(System.identityHashCode(o)));
+				buf.writeStringField("type", o.getClass().getName());
+				if (o instanceof String) {
+					buf.writeEscapedStringField("str", (String)o);
+				}
+			} else {
+				WeakObjectRef ref = (WeakObjectRef)((Object[])array)[idx];
+				buf.writeStringField("id", "<GC>");
+				buf.writeStringField("hash", ref.getId());
+				buf.writeStringField("type", ref.getClassName());
+			}
+			buf.writeEndObject();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, Object array, int idx) {
+			Object o = getObject(array, idx);
+			if (((Object[])array)[idx] == null) {
+				buf.append("null");
+			} else if (o == null) {
+				WeakObjectRef ref = (WeakObjectRef)((Object[])array)[idx];
+				buf.append("<GC>:");
+				buf.append(ref.getClassName());
+				buf.append("@");
+				buf.append(ref.getId());
+			} else {
+				String id = o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o));
+				if (o instanceof String) {
+					buf.append("\"");
+					buf.append(id);
+					buf.append(":");
+					JsonStringEncoder.getInstance().quoteAsString((String)o, buf);
+					buf.append("\"");
+				} else {
+					buf.append(id);
+				}
+			}
+		}
+	}
+
 }
@@ -2,18 +2,23 @@ package selogger.logging.io;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import selogger.logging.IErrorLogger;
 import selogger.logging.IEventLogger;
+import selogger.logging.util.DataIdTable;
 import selogger.logging.util.JsonBuffer;
 import selogger.logging.util.ObjectId;
 import selogger.logging.util.ObjectIdMap;
+import selogger.logging.util.SeqnumGenerator;
+import selogger.logging.util.SeqnumGenerator.Ordering;
 import selogger.weaver.DataInfo;
 import selogger.weaver.method.Descriptor;
-import selogger.logging.util.ThreadId;
+import selogger.logging.util.ThreadContext;
 
 /**
  * This class is an implementation of IEventLogger that 
@@ -37,14 +42,38 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 		/**
 		 * The buffers keep objects using WeakReference. 
 		 * Objects in the buffer may be garbage-collected; 
-		 * such garbage-collected objects are not recorded in an execution trace. 
+		 * such garbage-collected objects are recorded only with their class names and hash codes. 
 		 */
 		Weak,
 		/**
 		 * The buffers keep objects using Object ID.
 		 * String and exception messages are recorded with the ID.
 		 */
-		Id
+		Id,
+		/**
+		 * The buffers keep only class names and identity hash codes of objects.
+		 * This option keeps no references to objects.
+		 */
+		Hash
+	}
+
+	/**
+	 * Enum object to specify where events are stored
+	 */
+	public enum EventStorage {
+		/**
+		 * Each data ID has a LatestEventBuffer object.
+		 */
+		Buffer,
+		/**
+		 * Events are stored in a LatestEventArena.
+		 */
+		Arena,
+		/**
+		 * Events are stored in a MappedEventArena,
+		 * so that the events can be recovered after the JVM is killed.
+		 */
+		MappedArena
 	}
 
 	
@@ -54,9 +83,42 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	private int bufferSize;
 	
 	/**
-	 * Buffers to record events 
+	 * Buffers to record events.
+	 * Recording threads access the buffers using data IDs without a lock.
+	 * Buffers are added only by the createBuffer method.
+	 */
+	private volatile DataIdTable<LatestEventBuffer> buffers;
+
+	/**
+	 * A lock to serialize writing trace files.
+	 * It is separated from the lock of the logger,
+	 * so that recording threads can create buffers while a trace is written.
+	 */
+	private final Object saveLock = new Object();
+
+	/**
+	 * Buffers being written to a trace file.
+	 * If null, saveJson and saveText write the current buffers.
+	 * Only a thread holding saveLock accesses this field.
+	 */
+	private DataIdTable<LatestEventBuffer> outputBuffers;
+
+	/**
+	 * The number of stripes for a contended buffer, or 0 if stripes are disabled
 	 */
-	private ArrayList<LatestEventBuffer> buffers;
+	private int stripeCount;
+
+	/**
+	 * Storage of events used instead of the buffers, if an arena is enabled.
+	 * Recording threads access the arena without a lock.
+	 */
+	private volatile IEventArena arena;
+
+	/**
+	 * The arena being written to a trace file.
+	 * Only a thread holding saveLock accesses this field.
+	 */
+	private IEventArena outputArena;
 	
 	/**
 	 * The directory to store execution traces
@@ -73,6 +135,12 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	private boolean outputJson;
 	
+	/**
+	 * Data IDs of events without values.
+	 * Such events use buffers that do not store values.
+	 */
+	private BitSet voidEvents = new BitSet();
+
 	/**
 	 * Object to record error messages 
 	 */
@@ -80,7 +148,7 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	
 	/**
 	 */
-	private boolean closed;
+	private volatile boolean closed;
 	
 	/**
 	 * For id-based object recoding. 
@@ -103,6 +171,11 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 		return seqnum.get();
 	}
 
+	/**
+	 * This object assigns sequence numbers to events using the seqnum counter.
+	 */
+	private SeqnumGenerator seqnums = new SeqnumGenerator(seqnum, Ordering.Global);
+
 	/**
 	 * Create an instance of this logger.
 	 * @param outputDir specifies a directory for output files.
@@ -111,91 +184,230 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 * @param outputJson specifies whether the logger uses a json format or not.
 	 */
 	public LatestEventLogger(File traceFile, int bufferSize, ObjectRecordingStrategy keepObject, boolean outputJson, IErrorLogger errorLogger) {
+		this(traceFile, bufferSize, keepObject, outputJson, EventStorage.Buffer, 0, errorLogger);
+	}
+
+	/**
+	 * Create an instance of this logger.
+	 * @param outputDir specifies a directory for output files.
+	 * @param bufferSize specifies the size of buffer ("k" in Near-Omniscient Debugging)
+	 * @param keepObject specifies how the buffers keep Java objects.  
+	 * @param outputJson specifies whether the logger uses a json format or not.
+	 * @param storage specifies where events are stored.
+	 * MappedArena stores events in a file named traceFile + ".mmap".
+	 * @param stripeCount specifies the number of stripes for a contended buffer.
+	 * The value is rounded up to a power of two.  0 or 1 disables stripes.
+	 * This is effective only if storage is Buffer.
+	 */
+	public LatestEventLogger(File traceFile, int bufferSize, ObjectRecordingStrategy keepObject, boolean outputJson, EventStorage storage, int stripeCount, IErrorLogger errorLogger) {
 		super("nearomni");
+		this.stripeCount = stripeCount > 1 ? Integer.highestOneBit(stripeCount - 1) << 1 : 0;
 		this.traceFile = traceFile;
 		this.bufferSize = bufferSize;
-		this.buffers = new ArrayList<>();
+		this.buffers = new DataIdTable<>();
 		this.keepObject = keepObject;
 		this.outputJson = outputJson;
 		this.logger = errorLogger;
 		if (this.keepObject == ObjectRecordingStrategy.Id) {
 			objectIDs = new ObjectIdMap(65536);
 		}
+		if (storage == EventStorage.MappedArena) {
+			try {
+				this.arena = new MappedEventArena(new File(traceFile.getAbsolutePath() + ".mmap"), bufferSize, keepObject, errorLogger);
+			} catch (IOException e) {
+				if (errorLogger != null) errorLogger.log(e);
+				storage = EventStorage.Arena;
+			}
+		}
+		if (storage == EventStorage.Arena) {
+			this.arena = new LatestEventArena(bufferSize, keepObject, errorLogger);
+		}
 	}
 	
 	/**
-	 * Save the recorded trace
+	 * Change how sequence numbers are assigned to events.
+	 * This method should be called before events are recorded.
+	 * Arenas require sequence numbers to select the latest events,
+	 * so that None is replaced with Block if an arena is used.
+	 * None also disables stripes, since stripes are merged by sequence numbers.
+	 * @param ordering specifies the ordering of sequence numbers.
 	 */
-	@Override
-	public synchronized void save(boolean resetTrace) {
-		saveCount++;
-		long t = System.currentTimeMillis();
-		File f = new File(traceFile.getAbsolutePath() + "." + Integer.toString(saveCount) + (outputJson? ".json": ".txt"));
-		try (PrintWriter w = new PrintWriter(new FileWriter(f))){
-			if (outputJson) {
-				saveJson(w);
+	public synchronized void setSeqnumOrdering(Ordering ordering) {
+		if (ordering == Ordering.None) {
+			if (arena != null) {
+				ordering = Ordering.Block;
+				if (logger != null) logger.log("seqnum=none is not available for an arena; seqnum=block is used instead.");
 			} else {
-				saveText(w);
+				stripeCount = 0;
 			}
-		} catch (Throwable e) {
-			if (logger != null) logger.log(e);
 		}
-		if (logger != null) {
-			logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
-		}
-		buffers = null;
-		buffers = new ArrayList<>();
+		seqnums = new SeqnumGenerator(seqnum, ordering);
 	}
 
+	/**
+	 * @return the ordering of sequence numbers.
+	 */
+	public Ordering getSeqnumOrdering() {
+		return seqnums.getOrdering();
+	}
 
+	/**
+	 * Record the events without values in addition to the DataInfo objects.
+	 * This method waits for a trace being written, since the writer reads the DataInfo objects.
+	 */
+	@Override
+	public void onCreated(List<DataInfo> events) {
+		synchronized (saveLock) {
+			synchronized (this) {
+				super.onCreated(events);
+				for (DataInfo d: events) {
+					if (d.getValueDesc() == Descriptor.Void) {
+						voidEvents.set(d.getDataId());
+						if (arena != null) arena.setVoidEvent(d.getDataId());
+					}
+				}
+			}
+		}
+	}
 
 	/**
-	 * Close the logger and save the contents into a file naemd "recentdata.txt".
+	 * Save the recorded trace.
+	 * The buffers are detached from the logger before writing,
+	 * so that recording threads continue with new buffers.
+	 * The trace is written without the lock of the logger,
+	 * so that recording threads can create buffers during the save.
 	 */
 	@Override
-	public synchronized void close() {
-		closed = true; 
-		if (objectIDs != null) {
-			objectIDs.close();
+	public void save(boolean resetTrace) {
+		synchronized (saveLock) {
+			DataIdTable<LatestEventBuffer> table;
+			IEventArena a;
+			synchronized (this) {
+				table = buffers;
+				buffers = new DataIdTable<>();
+				a = arena;
+				if (a != null) arena = a.createEmpty();
+			}
+			saveCount++;
+			long t = System.currentTimeMillis();
+			File f = new File(traceFile.getAbsolutePath() + "." + Integer.toString(saveCount) + (outputJson? ".json": ".txt"));
+			try (PrintWriter w = new PrintWriter(new FileWriter(f))){
+				writeTrace(w, table, a);
+			} catch (Throwable e) {
+				if (logger != null) logger.log(e);
+			}
+			if (a != null) a.close();
+			if (logger != null) {
+				logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+			}
 		}
-		long t = System.currentTimeMillis();
-		try (PrintWriter w = new PrintWriter(new FileWriter(traceFile))){
+	}
+
+	/**
+	 * Write the contents of buffers to a trace file.
+	 * Only a thread holding saveLock calls this method.
+	 * @param w is the output.
+	 * @param table specifies the buffers to be written.
+	 * @param a specifies the arena to be written, or null if arena mode is disabled.
+	 */
+	private void writeTrace(PrintWriter w, DataIdTable<LatestEventBuffer> table, IEventArena a) {
+		outputBuffers = table;
+		outputArena = a;
+		try {
 			if (outputJson) {
 				saveJson(w);
 			} else {
 				saveText(w);
 			}
-		} catch (Throwable e) {
-			if (logger != null) logger.log(e);
+		} finally {
+			outputBuffers = null;
+			outputArena = null;
 		}
-		if (logger != null) {
-			logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+	}
+
+
+
+	/**
+	 * Close the logger and save the contents into a file naemd "recentdata.txt".
+	 * Since no buffer is created after closing, the buffers are written
+	 * without the lock of the logger.
+	 */
+	@Override
+	public void close() {
+		synchronized (saveLock) {
+			DataIdTable<LatestEventBuffer> table;
+			IEventArena a;
+			synchronized (this) {
+				closed = true;
+				table = buffers;
+				a = arena;
+			}
+			if (objectIDs != null) {
+				objectIDs.close();
+			}
+			long t = System.currentTimeMillis();
+			try (PrintWriter w = new PrintWriter(new FileWriter(traceFile))){
+				writeTrace(w, table, a);
+			} catch (Throwable e) {
+				if (logger != null) logger.log(e);
+			}
+			if (a != null) a.close();
+			if (logger != null) {
+				logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+			}
 		}
 	}
 		
 	/**
 	 * This method creates a buffer for a particular data ID if such a buffer does not exist.
+	 * An existing buffer is returned without a lock.
 	 * @param type specifies a value type.
 	 * @param dataId specifies the data ID.
 	 * @return a buffer for the data ID.
 	 */
-	protected synchronized LatestEventBuffer prepareBuffer(Class<?> type, int dataId) {
+	protected LatestEventBuffer prepareBuffer(Class<?> type, int dataId) {
+		LatestEventBuffer b = buffers.get(dataId);
+		if (b != null) return b;
+		return createBuffer(type, dataId);
+	}
+
+	/**
+	 * Select a buffer to record an event of a thread.
+	 * If stripes are enabled, a contended buffer is split into stripes for groups of threads.
+	 * @param type specifies a value type.
+	 * @param dataId specifies the data ID.
+	 * @param threadId specifies the thread recording an event.
+	 * @return a buffer or a stripe for the thread.
+	 */
+	private LatestEventBuffer prepareBuffer(Class<?> type, int dataId, int threadId) {
+		LatestEventBuffer b = prepareBuffer(type, dataId);
+		if (b != null && stripeCount > 0) {
+			return b.getStripe(threadId, stripeCount);
+		}
+		return b;
+	}
+
+	/**
+	 * Create a buffer for a particular data ID.
+	 * This method uses a lock since a buffer is created only once for each data ID.
+	 * @param type specifies a value type.
+	 * @param dataId specifies the data ID.
+	 * @return a buffer for the data ID.
+	 */
+	private synchronized LatestEventBuffer createBuffer(Class<?> type, int dataId) {
 		if (!closed) {
 			try {
-				while (buffers.size() <= dataId) {
-					buffers.add(null);
-				}
-				LatestEventBuffer b = buffers.get(dataId);
+				DataIdTable<LatestEventBuffer> table = buffers;
+				LatestEventBuffer b = table.get(dataId);
 				if (b == null) {
-					b = new LatestEventBuffer(type, bufferSize, keepObject);
-					buffers.set(dataId, b);
+					b = LatestEventBuffer.create(voidEvents.get(dataId) ? void.class : type, bufferSize, keepObject);
+					table.set(dataId, b);
 				}
 				return b;
 			} catch (OutOfMemoryError e) {
 				// release the entire buffers
 				closed = true;
-				buffers = null;
-				buffers = new ArrayList<>();
+				buffers = new DataIdTable<>();
 				logger.log("OutOfMemoryError: Logger discarded internal buffers to continue the current execution.");
 			}
 		}
@@ -207,9 +419,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, boolean value) {
-		LatestEventBuffer b = prepareBuffer(boolean.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, boolean value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addBoolean(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(boolean.class, dataId, threadId);
 		if (b != null) {
-			b.addBoolean(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addBoolean(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -218,9 +445,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, byte value) {
-		LatestEventBuffer b = prepareBuffer(byte.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, byte value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addByte(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(byte.class, dataId, threadId);
 		if (b != null) {
-			b.addByte(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addByte(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -229,9 +471,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, char value) {
-		LatestEventBuffer b = prepareBuffer(char.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, char value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addChar(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(char.class, dataId, threadId);
 		if (b != null) {
-			b.addChar(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addChar(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -240,9 +497,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, double value) {
-		LatestEventBuffer b = prepareBuffer(double.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, double value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addDouble(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(double.class, dataId, threadId);
 		if (b != null) {
-			b.addDouble(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addDouble(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -251,9 +523,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, float value) {
-		LatestEventBuffer b = prepareBuffer(float.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, float value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addFloat(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(float.class, dataId, threadId);
 		if (b != null) {
-			b.addFloat(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addFloat(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -262,9 +549,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, int value) {
-		LatestEventBuffer b = prepareBuffer(int.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, int value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addInt(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(int.class, dataId, threadId);
 		if (b != null) {
-			b.addInt(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addInt(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -273,9 +575,24 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, long value) {
-		LatestEventBuffer b = prepareBuffer(long.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, long value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addLong(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(long.class, dataId, threadId);
 		if (b != null) {
-			b.addLong(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addLong(value, seqnums.next(c), threadId);
 		}
 	}
 	
@@ -284,16 +601,35 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, Object value) {
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, Object value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			if (keepObject == ObjectRecordingStrategy.Id) {
+				a.addObjectId(dataId, objectIDs.getObjectId(value), seqnums.next(c), c.getThreadId());
+			} else {
+				a.addObject(dataId, value, seqnums.next(c), c.getThreadId());
+			}
+			return;
+		}
+		int threadId = c.getThreadId();
 		if (keepObject == ObjectRecordingStrategy.Id) {
-			LatestEventBuffer b = prepareBuffer(ObjectId.class, dataId);
+			LatestEventBuffer b = prepareBuffer(ObjectId.class, dataId, threadId);
 			if (b != null) {
 				ObjectId id = objectIDs.getObjectId(value);
-				b.addObjectId(id, seqnum.getAndIncrement(), ThreadId.get());
+				b.addObjectId(id, seqnums.next(c), threadId);
 			}				
 		} else {
-			LatestEventBuffer b = prepareBuffer(Object.class, dataId);
+			LatestEventBuffer b = prepareBuffer(Object.class, dataId, threadId);
 			if (b != null) {
-				b.addObject(value, seqnum.getAndIncrement(), ThreadId.get());
+				b.addObject(value, seqnums.next(c), threadId);
 			}
 		}
 	}
@@ -303,18 +639,51 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	public void recordEvent(int dataId, short value) {
-		LatestEventBuffer b = prepareBuffer(short.class, dataId);
+		recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * Record the event and the observed value using the context of the current thread.
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, short value) {
+		if (!c.isEnabled()) return;
+		IEventArena a = arena;
+		if (a != null) {
+			a.addShort(dataId, value, seqnums.next(c), c.getThreadId());
+			return;
+		}
+		int threadId = c.getThreadId();
+		LatestEventBuffer b = prepareBuffer(short.class, dataId, threadId);
 		if (b != null) {
-			b.addShort(value, seqnum.getAndIncrement(), ThreadId.get());
+			b.addShort(value, seqnums.next(c), threadId);
 		}
 	}	
 	
+	/**
+	 * @return the buffers to be written to a trace file
+	 */
+	private DataIdTable<LatestEventBuffer> getOutputBuffers() {
+		DataIdTable<LatestEventBuffer> table = outputBuffers;
+		return table != null ? table : buffers;
+	}
+
+	/**
+	 * @return the arena to be written to a trace file, or null if arena mode is disabled
+	 */
+	private IEventArena getOutputArena() {
+		IEventArena a = outputArena;
+		return a != null ? a : arena;
+	}
+
 	/**
 	 * @return true if there exists an event
 	 */
 	@Override
 	protected boolean isRecorded(int dataid) {
-		return dataid < buffers.size() && buffers.get(dataid) != null;
+		IEventArena a = getOutputArena();
+		if (a != null) return a.isRecorded(dataid);
+		return getOutputBuffers().get(dataid) != null;
 	}
 
 	/**
@@ -322,7 +691,12 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	protected void writeAttributes(JsonBuffer buf, DataInfo d) {
-		LatestEventBuffer b = buffers.get(d.getDataId());
+		IEventArena a = getOutputArena();
+		if (a != null) {
+			a.writeJson(buf, d.getDataId(), d.getValueDesc() == Descriptor.Void);
+			return;
+		}
+		LatestEventBuffer b = getOutputBuffers().get(d.getDataId());
 		if (b != null) {
 			b.writeJson(buf, d.getValueDesc() == Descriptor.Void);
 		}
@@ -341,7 +715,12 @@ public class LatestEventLogger extends AbstractEventLogger implements IEventLogg
 	 */
 	@Override
 	protected void writeAttributes(StringBuilder builder, DataInfo d) {
-		LatestEventBuffer b = buffers.get(d.getDataId());
+		IEventArena a = getOutputArena();
+		if (a != null) {
+			builder.append(a.toString(d.getDataId()));
+			return;
+		}
+		LatestEventBuffer b = getOutputBuffers().get(d.getDataId());
 		if (b != null) {
 			builder.append(b.toString());
 		} else {
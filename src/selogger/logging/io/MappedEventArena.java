@@ -0,0 +1,699 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import selogger.logging.IErrorLogger;
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ObjectId;
+
+/**
+ * Storage of the latest k events for all data IDs in a memory-mapped file.
+ * The file is updated by the OS without a save step, so that the latest events
+ * can be recovered by the recover method even if the JVM is killed.
+ * The events are not scanned by GC since they are stored outside of the heap.
+ *
+ * Each data ID is assigned a fixed range of k slots in the file.
+ * A slot stores a sequence number and a thread ID packed into a long value
+ * and the observed value encoded as a long value.
+ * A slot is cleared before its value is overwritten, so that a slot
+ * interrupted by a crash is regarded as empty.
+ * Objects are recorded as object IDs (keepobj=id) or identity hash codes.
+ *
+ * The file consists of a header and segments.
+ * The header includes the buffer size and the number of data IDs assigned slots.
+ * A segment includes the slots for a fixed number of data IDs.
+ * Each data ID has a location header including the data ID, the value type,
+ * and the number of event occurrences.  The number in the file never decreases,
+ * but it may miss events recorded concurrently when the JVM is killed.
+ *
+ * The order of the writes to a slot is kept by volatile writes to the slot lock
+ * between them, since plain writes to the file may be reordered.
+ */
+public class MappedEventArena implements IEventArena {
+
+	/**
+	 * "SELOGNO1" as a long value
+	 */
+	private static final long MAGIC = 0x53454C4F474E4F31L;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_BUFFER_SIZE = 8;
+	private static final int HEADER_LOCATIONS_PER_SEGMENT = 12;
+	private static final int HEADER_LOCATIONS = 16;
+
+	private static final int LOCATION_DATAID = 0;
+	private static final int LOCATION_TYPE = 4;
+	private static final int LOCATION_COUNT = 8;
+	private static final int LOCATION_HEADER_SIZE = 16;
+
+	private static final int SLOT_META = 0;
+	private static final int SLOT_VALUE = 8;
+	private static final int SLOT_SIZE = 16;
+
+	/**
+	 * The number of events in a segment, if the buffer size is smaller than this value
+	 */
+	private static final int SEGMENT_EVENTS = 1 << 16;
+
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private static final int FREE = 0;
+	private static final int LOCKED = 1;
+
+	/**
+	 * A mapped region of the file and locks for the slots.
+	 */
+	private static class Segment {
+
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * The number of event occurrences for each data ID
+		 */
+		private final AtomicLongArray counts;
+
+		/**
+		 * A lock for each slot.
+		 * A thread writes or reads a slot after changing the lock from FREE to LOCKED.
+		 */
+		private final AtomicIntegerArray locks;
+
+		/**
+		 * A lock for the number of event occurrences of each data ID in the file.
+		 */
+		private final AtomicIntegerArray countLocks;
+
+		public Segment(MappedByteBuffer buffer, int events, int locations) {
+			this.buffer = buffer;
+			this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+			this.counts = new AtomicLongArray(locations);
+			this.locks = new AtomicIntegerArray(events);
+			this.countLocks = new AtomicIntegerArray(locations);
+		}
+	}
+
+	private final File file;
+
+	private final int bufferSize;
+
+	/**
+	 * A strategy used if this arena falls back to LatestEventArena
+	 */
+	private final ObjectRecordingStrategy keepObject;
+
+	/**
+	 * The number of data IDs in a segment.  This is a power of two.
+	 */
+	private final int locationsPerSegment;
+
+	/**
+	 * log2(locationsPerSegment)
+	 */
+	private final int segmentBits;
+
+	/**
+	 * The size of a location in bytes
+	 */
+	private final int locationSize;
+
+	private final RandomAccessFile raf;
+
+	private final MappedByteBuffer header;
+
+	/**
+	 * Segments of the file.  The array is replaced when a segment is added.
+	 */
+	private volatile Segment[] segments = new Segment[0];
+
+	/**
+	 * The number of data IDs assigned slots
+	 */
+	private int locations;
+
+	/**
+	 * Pages of location handles.
+	 * An element is (location &lt;&lt; TYPE_BITS | type) + 1, or 0 if no slots are assigned.
+	 */
+	private volatile AtomicIntegerArray[] pages = new AtomicIntegerArray[0];
+
+	/**
+	 * Data IDs of events without values
+	 */
+	private final BitSet voidEvents;
+
+	/**
+	 * The number of arenas created by createEmpty
+	 */
+	private final int generation;
+
+	/**
+	 * Object to record error messages
+	 */
+	private final IErrorLogger logger;
+
+	/**
+	 * If true, an error occurred and no more data IDs are recorded.
+	 */
+	private boolean discarded;
+
+	/**
+	 * Create an empty arena.  An existing file is overwritten.
+	 * @param file specifies a file to store events.
+	 * @param bufferSize specifies the number of events recorded for each data ID.
+	 * @param keepObject specifies how objects are given to this arena.
+	 * Objects are recorded as object IDs if this is Id; otherwise identity hash codes are recorded.
+	 * @param logger records an error message.  This may be null.
+	 * @throws IOException if the file could not be mapped.
+	 */
+	public MappedEventArena(File file, int bufferSize, ObjectRecordingStrategy keepObject, IErrorLogger logger) throws IOException {
+		this(file, bufferSize, keepObject, logger, new BitSet(), 0);
+	}
+
+	private MappedEventArena(File file, int bufferSize, ObjectRecordingStrategy keepObject, IErrorLogger logger, BitSet voidEvents, int generation) throws IOException {
+		this.file = file;
+		this.bufferSize = bufferSize;
+		this.keepObject = keepObject;
+		this.locationsPerSegment = Integer.highestOneBit(Math.max(1, SEGMENT_EVENTS / bufferSize));
+		this.segmentBits = Integer.numberOfTrailingZeros(locationsPerSegment);
+		this.locationSize = LOCATION_HEADER_SIZE + SLOT_SIZE * bufferSize;
+		this.logger = logger;
+		this.voidEvents = voidEvents;
+		this.generation = generation;
+		this.raf = new RandomAccessFile(getFile(), "rw");
+		try {
+			raf.setLength(0);
+			header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(HEADER_BUFFER_SIZE, bufferSize);
+			header.putInt(HEADER_LOCATIONS_PER_SEGMENT, locationsPerSegment);
+			header.putInt(HEADER_LOCATIONS, 0);
+			header.putLong(HEADER_MAGIC, MAGIC);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the file storing the events.
+	 * An arena created by createEmpty uses the file name with a generation number.
+	 */
+	public File getFile() {
+		if (generation == 0) return file;
+		return new File(file.getAbsolutePath() + "." + Integer.toString(generation));
+	}
+
+	/**
+	 * Create an empty arena using a new file.
+	 * If the file could not be created, a LatestEventArena is returned.
+	 */
+	@Override
+	public synchronized IEventArena createEmpty() {
+		try {
+			MappedEventArena a = new MappedEventArena(file, bufferSize, keepObject, logger, (BitSet)voidEvents.clone(), generation + 1);
+			a.discarded = discarded;
+			return a;
+		} catch (IOException e) {
+			if (logger != null) logger.log(e);
+			LatestEventArena a = new LatestEventArena(bufferSize, keepObject, logger);
+			for (int i = voidEvents.nextSetBit(0); i >= 0; i = voidEvents.nextSetBit(i+1)) {
+				a.setVoidEvent(i);
+			}
+			return a;
+		}
+	}
+
+	@Override
+	public synchronized void setVoidEvent(int dataId) {
+		voidEvents.set(dataId);
+	}
+
+	/**
+	 * @return a location handle of a data ID, or -1 if no slots are assigned.
+	 */
+	private int getHandle(int dataId) {
+		AtomicIntegerArray[] dir = pages;
+		int p = dataId >>> PAGE_BITS;
+		if (p < dir.length && dir[p] != null) {
+			return dir[p].get(dataId & PAGE_MASK) - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a location handle of a data ID.  Slots are assigned if necessary.
+	 * -1 is returned if the arena has been discarded.
+	 */
+	private int prepare(int dataId, int type) {
+		int h = getHandle(dataId);
+		if (h >= 0) return h;
+		return assign(dataId, type);
+	}
+
+	/**
+	 * Assign slots to a data ID.
+	 * If the file could not be extended, the arena no longer assigns slots.
+	 * @param type specifies a value type recorded by the first event.
+	 * @return a location handle, or -1 if the arena has been discarded.
+	 */
+	private synchronized int assign(int dataId, int type) {
+		if (discarded) return -1;
+		int h = getHandle(dataId);
+		if (h >= 0) return h;
+		if (voidEvents.get(dataId)) type = LatestEventArena.VOID;
+		try {
+			AtomicIntegerArray[] dir = pages;
+			int p = dataId >>> PAGE_BITS;
+			if (p >= dir.length || dir[p] == null) {
+				dir = Arrays.copyOf(dir, Math.max(dir.length, p + 1));
+				dir[p] = new AtomicIntegerArray(PAGE_SIZE);
+			}
+			int loc = locations;
+			int s = loc >>> segmentBits;
+			Segment[] current = segments;
+			if (s >= current.length) {
+				long offset = HEADER_SIZE + (long)s * locationsPerSegment * locationSize;
+				MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, (long)locationsPerSegment * locationSize);
+				Segment[] newSegments = Arrays.copyOf(current, s + 1);
+				newSegments[s] = new Segment(buffer, locationsPerSegment * bufferSize, locationsPerSegment);
+				segments = newSegments;
+			}
+			MappedByteBuffer buffer = segments[s].buffer;
+			int offset = (loc & (locationsPerSegment - 1)) * locationSize;
+			buffer.putInt(offset + LOCATION_DATAID, dataId);
+			buffer.putInt(offset + LOCATION_TYPE, type);
+			locations = loc + 1;
+			header.putInt(HEADER_LOCATIONS, locations);
+			h = (loc << LatestEventArena.TYPE_BITS) | type;
+			dir[p].set(dataId & PAGE_MASK, h + 1);
+			pages = dir;
+			return h;
+		} catch (IOException|OutOfMemoryError e) {
+			discarded = true;
+			pages = new AtomicIntegerArray[0];
+			if (logger != null) {
+				logger.log(e);
+				logger.log("Logger discarded the memory-mapped buffers to continue the current execution.");
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Record an event in the next slot of a data ID.
+	 * If the slots are already full, the oldest event is overwritten.
+	 * @param type specifies the value type of the event.
+	 * @param value is an encoded value.
+	 */
+	private void add(int dataId, int type, long value, long seqnum, int threadId) {
+		int h = prepare(dataId, type);
+		if (h < 0) return;
+		int t = h & LatestEventArena.TYPE_MASK;
+		if (t != type && t != LatestEventArena.VOID) {
+			throw new UnsupportedOperationException();
+		}
+		int loc = h >>> LatestEventArena.TYPE_BITS;
+		Segment s = segments[loc >>> segmentBits];
+		int l = loc & (locationsPerSegment - 1);
+		long ticket = s.counts.getAndIncrement(l);
+		int slot = l * bufferSize + (int)(ticket % bufferSize);
+		while (!s.locks.compareAndSet(slot, FREE, LOCKED)) {
+			Thread.yield();
+		}
+		int offset = l * locationSize + LOCATION_HEADER_SIZE + (int)(ticket % bufferSize) * SLOT_SIZE;
+		s.buffer.putLong(offset + SLOT_META, LatestEventArena.EMPTY);
+		storeFence(s.locks, slot);
+		s.buffer.putLong(offset + SLOT_VALUE, value);
+		storeFence(s.locks, slot);
+		s.buffer.putLong(offset + SLOT_META, LatestEventArena.pack(seqnum, threadId));
+		s.locks.set(slot, FREE);
+		if (s.countLocks.compareAndSet(l, FREE, LOCKED)) {
+			writeCount(s, l);
+			s.countLocks.set(l, FREE);
+		}
+	}
+
+	/**
+	 * Order the preceding writes to the file before the following writes.
+	 * The method rewrites the lock held by the current thread with a volatile write;
+	 * the preceding writes may not be moved after it, and HotSpot
+	 * emits a full fence after it, so the following writes may not be moved before it.
+	 * @param locks includes the lock of the slot held by the current thread.
+	 * @param slot specifies the lock.
+	 */
+	private static void storeFence(AtomicIntegerArray locks, int slot) {
+		locks.set(slot, LOCKED);
+	}
+
+	/**
+	 * Write the number of event occurrences of a data ID to the file.
+	 * The caller must hold the count lock of the data ID.
+	 * Since the writers are serialized by the lock and each writes the latest count
+	 * in the memory, the count in the file never decreases.
+	 * A thread that fails to acquire the lock skips writing;
+	 * its event is included by a later write or by close.
+	 * @param s is the segment including the data ID.
+	 * @param l specifies the data ID in the segment.
+	 */
+	private void writeCount(Segment s, int l) {
+		s.buffer.putLong(l * locationSize + LOCATION_COUNT, s.counts.get(l));
+	}
+
+	@Override
+	public void addVoid(int dataId, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.VOID, 0, seqnum, threadId);
+	}
+
+	@Override
+	public void addBoolean(int dataId, boolean value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.BOOLEAN, value ? 1 : 0, seqnum, threadId);
+	}
+
+	@Override
+	public void addByte(int dataId, byte value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.BYTE, value, seqnum, threadId);
+	}
+
+	@Override
+	public void addChar(int dataId, char value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.CHAR, value, seqnum, threadId);
+	}
+
+	@Override
+	public void addShort(int dataId, short value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.SHORT, value, seqnum, threadId);
+	}
+
+	@Override
+	public void addInt(int dataId, int value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.INT, value, seqnum, threadId);
+	}
+
+	@Override
+	public void addLong(int dataId, long value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.LONG, value, seqnum, threadId);
+	}
+
+	@Override
+	public void addFloat(int dataId, float value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.FLOAT, Float.floatToRawIntBits(value), seqnum, threadId);
+	}
+
+	@Override
+	public void addDouble(int dataId, double value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.DOUBLE, Double.doubleToRawLongBits(value), seqnum, threadId);
+	}
+
+	/**
+	 * Record an object ID.  0 represents null.
+	 */
+	@Override
+	public void addObjectId(int dataId, ObjectId value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.OBJECT_ID, value != null ? value.getId() : 0, seqnum, threadId);
+	}
+
+	/**
+	 * Record the identity hash code of an object.  0 represents null.
+	 */
+	@Override
+	public void addObject(int dataId, Object value, long seqnum, int threadId) {
+		add(dataId, LatestEventArena.OBJECT, System.identityHashCode(value), seqnum, threadId);
+	}
+
+	@Override
+	public boolean isRecorded(int dataId) {
+		return getHandle(dataId) >= 0;
+	}
+
+	/**
+	 * Events of a data ID copied from the file.
+	 */
+	private static class Events {
+
+		private final int type;
+		private final long count;
+
+		/**
+		 * Packed sequence numbers and thread IDs in the order of event occurrence
+		 */
+		private final long[] meta;
+
+		/**
+		 * Encoded values
+		 */
+		private final long[] values;
+
+		/**
+		 * Copy the published events of a location.
+		 * @param buffer includes the location.
+		 * @param offset specifies the location.
+		 * @param locks specifies the locks of the slots, or null if no threads record events.
+		 * @param firstSlot specifies the lock of the first slot.
+		 * @param count specifies the number of event occurrences.
+		 */
+		public Events(MappedByteBuffer buffer, int offset, int bufferSize, AtomicIntegerArray locks, int firstSlot, long count) {
+			this.type = buffer.getInt(offset + LOCATION_TYPE);
+			this.count = count;
+			long[][] slots = new long[bufferSize][];
+			int len = 0;
+			for (int i=0; i<bufferSize; i++) {
+				if (locks != null) {
+					while (!locks.compareAndSet(firstSlot + i, FREE, LOCKED)) {
+						Thread.yield();
+					}
+				}
+				int slot = offset + LOCATION_HEADER_SIZE + i * SLOT_SIZE;
+				long m = buffer.getLong(slot + SLOT_META);
+				long v = buffer.getLong(slot + SLOT_VALUE);
+				if (locks != null) locks.set(firstSlot + i, FREE);
+				if (m > 0) {
+					slots[len++] = new long[] {m, v};
+				}
+			}
+			Arrays.sort(slots, 0, len, (a, b) -> Long.compare(a[0], b[0]));
+			this.meta = new long[len];
+			this.values = new long[len];
+			for (int i=0; i<len; i++) {
+				meta[i] = slots[i][0];
+				values[i] = slots[i][1];
+			}
+		}
+	}
+
+	/**
+	 * @return the events of a data ID, or null if no slots are assigned.
+	 */
+	private Events getEvents(int dataId) {
+		int h = getHandle(dataId);
+		if (h < 0) return null;
+		int loc = h >>> LatestEventArena.TYPE_BITS;
+		Segment s = segments[loc >>> segmentBits];
+		int l = loc & (locationsPerSegment - 1);
+		return new Events(s.buffer, l * locationSize, bufferSize, s.locks, l * bufferSize, s.counts.get(l));
+	}
+
+	/**
+	 * Write an encoded value as an element of a JSON array.
+	 * The format is the same as LatestEventBuffer except for objects.
+	 */
+	private static void writeValue(JsonBuffer buf, int type, long value) {
+		switch (type) {
+		case LatestEventArena.BOOLEAN:
+			buf.writeBoolean(value != 0);
+			break;
+		case LatestEventArena.FLOAT:
+			buf.writeNumber(Float.intBitsToFloat((int)value));
+			break;
+		case LatestEventArena.DOUBLE:
+			buf.writeNumber(Double.longBitsToDouble(value));
+			break;
+		case LatestEventArena.OBJECT_ID:
+		case LatestEventArena.OBJECT:
+			if (value == 0) {
+				buf.writeNull();
+			} else {
+				buf.writeStartObject();
+				buf.writeStringField("id", type == LatestEventArena.OBJECT ? Integer.toHexString((int)value) : Long.toString(value));
+				buf.writeEndObject();
+			}
+			break;
+		case LatestEventArena.VOID:
+			buf.writeNull();
+			break;
+		default:
+			buf.writeNumber(value);
+		}
+	}
+
+	/**
+	 * Write an encoded value as a column of CSV.
+	 * The format is the same as LatestEventBuffer except for objects.
+	 */
+	private static void appendValue(StringBuilder buf, int type, long value) {
+		switch (type) {
+		case LatestEventArena.BOOLEAN:
+			buf.append(value != 0);
+			break;
+		case LatestEventArena.FLOAT:
+			buf.append(Float.intBitsToFloat((int)value));
+			break;
+		case LatestEventArena.DOUBLE:
+			buf.append(Double.longBitsToDouble(value));
+			break;
+		case LatestEventArena.OBJECT_ID:
+		case LatestEventArena.OBJECT:
+			if (value == 0) {
+				buf.append("null");
+			} else {
+				buf.append(type == LatestEventArena.OBJECT ? Integer.toHexString((int)value) : Long.toString(value));
+			}
+			break;
+		case LatestEventArena.VOID:
+			break;
+		default:
+			buf.append(value);
+		}
+	}
+
+	private static void writeJson(JsonBuffer buf, Events e, boolean skipValues) {
+		int len = e.meta.length;
+		buf.writeNumberField("freq", e.count);
+		buf.writeNumberField("record", len);
+		if (!skipValues) {
+			buf.writeArrayFieldStart("value");
+			for (int i=0; i<len; i++) {
+				writeValue(buf, e.type, e.values[i]);
+			}
+			buf.writeEndArray();
+		}
+		buf.writeArrayFieldStart("seqnum");
+		for (int i=0; i<len; i++) {
+			buf.writeNumber(LatestEventArena.getSeqNum(e.meta[i]));
+		}
+		buf.writeEndArray();
+		buf.writeArrayFieldStart("thread");
+		for (int i=0; i<len; i++) {
+			buf.writeNumber(LatestEventArena.getThreadId(e.meta[i]));
+		}
+		buf.writeEndArray();
+	}
+
+	private static void appendColumns(StringBuilder buf, Events e, int bufferSize) {
+		int len = e.meta.length;
+		buf.append(e.count);
+		buf.append(",");
+		buf.append(len);
+		for (int i=0; i<bufferSize; i++) {
+			buf.append(",");
+			if (i>=len) {
+				buf.append(",");
+				buf.append(",");
+				continue;
+			}
+			appendValue(buf, e.type, e.values[i]);
+			buf.append(",");
+			buf.append(LatestEventArena.getSeqNum(e.meta[i]));
+			buf.append(",");
+			buf.append(LatestEventArena.getThreadId(e.meta[i]));
+		}
+	}
+
+	@Override
+	public void writeJson(JsonBuffer buf, int dataId, boolean skipValues) {
+		Events e = getEvents(dataId);
+		if (e != null) {
+			writeJson(buf, e, skipValues);
+		}
+	}
+
+	@Override
+	public String toString(int dataId) {
+		Events e = getEvents(dataId);
+		if (e == null) return LatestEventBuffer.getEmptyColumns(bufferSize);
+		StringBuilder buf = new StringBuilder();
+		appendColumns(buf, e, bufferSize);
+		return buf.toString();
+	}
+
+	/**
+	 * Flush the mapped file and close it.
+	 * The events remain accessible until the arena is garbage-collected.
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			for (Segment s: segments) {
+				for (int l=0; l<locationsPerSegment; l++) {
+					while (!s.countLocks.compareAndSet(l, FREE, LOCKED)) {
+						Thread.yield();
+					}
+					writeCount(s, l);
+					s.countLocks.set(l, FREE);
+				}
+				s.buffer.force();
+			}
+			header.force();
+			raf.close();
+		} catch (IOException e) {
+			if (logger != null) logger.log(e);
+		}
+	}
+
+	/**
+	 * Read a file written by this class and write the events in a CSV format.
+	 * This method is used to recover a trace after the JVM was killed.
+	 * Each line includes a data ID, a value type, and the columns
+	 * generated by LatestEventBuffer.getColumnNames.
+	 * @param file specifies a file written by MappedEventArena.
+	 * @param w is the output.
+	 * @throws IOException if the file could not be read or it is not a valid file.
+	 */
+	public static void recover(File file, PrintWriter w) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_SIZE) throw new IOException("Invalid file: " + file.getAbsolutePath());
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong(HEADER_MAGIC) != MAGIC) throw new IOException("Invalid file: " + file.getAbsolutePath());
+			int bufferSize = header.getInt(HEADER_BUFFER_SIZE);
+			int locationsPerSegment = header.getInt(HEADER_LOCATIONS_PER_SEGMENT);
+			int locations = header.getInt(HEADER_LOCATIONS);
+			int locationSize = LOCATION_HEADER_SIZE + SLOT_SIZE * bufferSize;
+			long segmentSize = (long)locationsPerSegment * locationSize;
+
+			w.println("dataid,vtype," + LatestEventBuffer.getColumnNames(bufferSize));
+			for (int s=0; s * locationsPerSegment < locations; s++) {
+				long offset = HEADER_SIZE + s * segmentSize;
+				if (offset + segmentSize > channel.size()) break;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, segmentSize);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				for (int l=0; l<locationsPerSegment && s * locationsPerSegment + l < locations; l++) {
+					int loc = l * locationSize;
+					Events e = new Events(buffer, loc, bufferSize, null, 0, buffer.getLong(loc + LOCATION_COUNT));
+					if (e.type < 0 || e.type >= LatestEventArena.TYPES.length) continue;
+					StringBuilder line = new StringBuilder();
+					line.append(buffer.getInt(loc + LOCATION_DATAID));
+					line.append(",");
+					line.append(LatestEventArena.TYPES[e.type].getSimpleName());
+					line.append(",");
+					appendColumns(line, e, bufferSize);
+					w.println(line.toString());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package selogger.logging.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import selogger.weaver.DataInfo;
+
+/**
+ * 以前の実行で記録されたイベント場所ごとの発生回数。
+ * freqモードまたはprometモードが出力したトレース(JSONまたはCSV)の"freq"の値を読み込む。
+ * データIDは実行ごとに変わる可能性があるため、イベント場所は
+ * クラス名、メソッド名、メソッド記述子、命令の位置、イベントの種類の組で識別する。
+ */
+public class PrometProfile {
+
+	private static final String SEPARATOR = "#";
+
+	/**
+	 * イベント場所ごとの発生回数
+	 */
+	private final HashMap<String, Long> frequencies = new HashMap<>();
+
+	/**
+	 * 全イベント場所の発生回数の合計
+	 */
+	private long total;
+
+	/**
+	 * トレースファイルを読み込む。拡張子が".json"の場合はJSON、それ以外はCSVとして読む。
+	 * @param file freqモードまたはprometモードのトレースファイル
+	 * @return 読み込んだプロファイル
+	 * @throws IOException ファイルを読み込めない場合
+	 */
+	public static PrometProfile load(File file) throws IOException {
+		PrometProfile profile = new PrometProfile();
+		if (file.getName().endsWith(".json")) {
+			profile.loadJson(file);
+		} else {
+			profile.loadText(file);
+		}
+		return profile;
+	}
+
+	/**
+	 * @param d イベント場所
+	 * @return イベント場所を識別する文字列
+	 */
+	public static String getKey(DataInfo d) {
+		return getKey(d.getMethodInfo().getClassName(), d.getMethodInfo().getMethodName(), d.getMethodInfo().getMethodDesc(), d.getInstructionIndex(), d.getEventType().name());
+	}
+
+	private static String getKey(String cname, String mname, String mdesc, int inst, String event) {
+		return cname + SEPARATOR + mname + SEPARATOR + mdesc + SEPARATOR + inst + SEPARATOR + event;
+	}
+
+	/**
+	 * イベント場所の発生回数を追加する。
+	 * @param key イベント場所を識別する文字列
+	 * @param freq 発生回数
+	 */
+	public void addFrequency(String key, long freq) {
+		if (freq <= 0) return;
+		frequencies.merge(key, freq, Long::sum);
+		total += freq;
+	}
+
+	/**
+	 * @param d イベント場所
+	 * @return イベント場所の発生回数。プロファイルに含まれない場合は0。
+	 */
+	public long getFrequency(DataInfo d) {
+		Long f = frequencies.get(getKey(d));
+		return f != null ? f : 0;
+	}
+
+	/**
+	 * @return プロファイルに含まれるイベント場所の数
+	 */
+	public int size() {
+		return frequencies.size();
+	}
+
+	/**
+	 * 許容量を発生回数に比例して各イベント場所に割り当てる。
+	 * 発生回数の多い場所から順に割り当て、上限で切り捨てた分は残りの場所に配分する。
+	 * 許容量が残っている限り、発生したイベント場所には少なくとも1を割り当てる。
+	 * 割り当ての合計は許容量を超えない。許容量が残っていない場所は結果に含めない。
+	 * @param capacity 全体の許容量(イベント数)
+	 * @param maxQuota イベント場所ごとの割り当ての上限
+	 * @return イベント場所ごとの割り当て
+	 */
+	public Map<String, Integer> computeQuotas(long capacity, int maxQuota) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<>(frequencies.entrySet());
+		entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		HashMap<String, Integer> quotas = new HashMap<>(entries.size() * 2);
+		long remainingCapacity = capacity;
+		long remainingFrequency = total;
+		for (Map.Entry<String, Long> e: entries) {
+			long f = e.getValue();
+			long q = (long)((double)Math.max(0, remainingCapacity) * f / remainingFrequency);
+			q = Math.min(remainingCapacity, Math.max(1, Math.min(maxQuota, q)));
+			if (q <= 0) break;
+			quotas.put(e.getKey(), (int)q);
+			remainingCapacity -= q;
+			remainingFrequency -= f;
+		}
+		return quotas;
+	}
+
+	/**
+	 * JSON形式のトレースの"events"配列から発生回数を読み込む
+	 */
+	private void loadJson(File file) throws IOException {
+		try (JsonParser parser = new JsonFactory().createParser(file)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) return;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken t = parser.nextToken();
+				if (field.equals("events") && t == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						readJsonEvent(parser);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+
+	/**
+	 * "events"配列の要素を1個読み込む
+	 */
+	private void readJsonEvent(JsonParser parser) throws IOException {
+		String cname = null;
+		String mname = null;
+		String mdesc = null;
+		String event = null;
+		int inst = -1;
+		long freq = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+			case "cname": cname = parser.getText(); break;
+			case "mname": mname = parser.getText(); break;
+			case "mdesc": mdesc = parser.getText(); break;
+			case "event": event = parser.getText(); break;
+			case "inst": inst = parser.getIntValue(); break;
+			case "freq": freq = parser.getLongValue(); break;
+			default: parser.skipChildren();
+			}
+		}
+		if (cname != null && mname != null && mdesc != null && event != null) {
+			addFrequency(getKey(cname, mname, mdesc, inst, event), freq);
+		}
+	}
+
+	/**
+	 * CSV形式のトレースから発生回数を読み込む。列の位置はヘッダから決める。
+	 */
+	private void loadText(File file) throws IOException {
+		try (BufferedReader r = new BufferedReader(new FileReader(file))) {
+			String header = r.readLine();
+			if (header == null) return;
+			List<String> names = split(header, Integer.MAX_VALUE);
+			int cname = names.indexOf("cname");
+			int mname = names.indexOf("mname");
+			int mdesc = names.indexOf("mdesc");
+			int inst = names.indexOf("inst");
+			int event = names.indexOf("event");
+			int freq = names.indexOf("freq");
+			if (cname < 0 || mname < 0 || mdesc < 0 || inst < 0 || event < 0 || freq < 0) {
+				throw new IOException("Missing columns in " + file.getAbsolutePath());
+			}
+			int columns = Math.max(Math.max(Math.max(cname, mname), Math.max(mdesc, inst)), Math.max(event, freq)) + 1;
+			for (String line = r.readLine(); line != null; line = r.readLine()) {
+				List<String> values = split(line, columns);
+				if (values.size() < columns) continue;
+				try {
+					addFrequency(getKey(values.get(cname), values.get(mname), values.get(mdesc), Integer.parseInt(values.get(inst)), values.get(event)), Long.parseLong(values.get(freq)));
+				} catch (NumberFormatException e) {
+					// 値が欠けている行は無視する
+				}
+			}
+		}
+	}
+
+	/**
+	 * CSVの行を先頭から指定した数の列に分割する。二重引用符で囲まれたカンマは区切りとみなさない。
+	 * @param line CSVの行
+	 * @param limit 取り出す列の数
+	 * @return 列の値
+	 */
+	private static List<String> split(String line, int limit) {
+		ArrayList<String> values = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i=0; i<line.length() && values.size() < limit; i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == ',' && !quoted) {
+				values.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		if (values.size() < limit) {
+			values.add(value.toString());
+		}
+		return values;
+	}
+}
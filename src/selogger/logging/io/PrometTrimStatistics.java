@@ -0,0 +1,225 @@
+package selogger.logging.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import selogger.logging.util.JsonBuffer;
+
+/**
+ * ProposedmethodLoggerのトリムに関する統計情報。
+ * 全スレッドから更新される値はLongAdderで競合を分散する。
+ * トリムを実行するスレッドだけが更新する値は、通常のインクリメントで更新する。
+ */
+public class PrometTrimStatistics {
+
+	/**
+	 * 記録されたイベント数
+	 */
+	private final LongAdder recordedEvents = new LongAdder();
+
+	/**
+	 * バッファから削除されたイベント数
+	 */
+	private final LongAdder evictedEvents = new LongAdder();
+
+	/**
+	 * トリムが実行された回数
+	 */
+	private volatile long trimRuns;
+
+	/**
+	 * バッファがトリムされた回数
+	 */
+	private volatile long trimmedBuffers;
+
+	/**
+	 * バッファサイズの許容値が変更された回数
+	 */
+	private volatile long budgetChanges;
+
+	/**
+	 * バックグラウンドのトリムが追いつかず、イベントを記録したスレッドがトリムを行った回数
+	 */
+	private volatile long fallbackTrims;
+
+	/**
+	 * 使用量が減少したため、バッファサイズの許容値を引き上げた回数
+	 */
+	private volatile long regrowths;
+
+	/**
+	 * 部分トレースの保存によって使用量をリセットした回数
+	 */
+	private volatile long intervals;
+
+	/**
+	 * 現在のバッファサイズの許容値
+	 */
+	private volatile int maxBufferSize;
+
+	/**
+	 * @param maxBufferSize バッファサイズの許容値の初期値
+	 */
+	public PrometTrimStatistics(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+	}
+
+	/**
+	 * イベントの記録を数える。
+	 */
+	void recordEvent() {
+		recordedEvents.increment();
+	}
+
+	/**
+	 * 削除されたイベントを数える。
+	 * @param count 削除されたイベント数
+	 */
+	void evict(int count) {
+		evictedEvents.add(count);
+	}
+
+	/**
+	 * トリムの開始を数える。トリムを実行するスレッドだけが呼び出す。
+	 */
+	void startTrim() {
+		trimRuns++;
+	}
+
+	/**
+	 * イベントを記録したスレッドによるトリムを数える。トリムを実行するスレッドだけが呼び出す。
+	 */
+	void fallbackTrim() {
+		fallbackTrims++;
+	}
+
+	/**
+	 * バッファのトリムを数える。トリムを実行するスレッドだけが呼び出す。
+	 * @param count 削除されたイベント数
+	 */
+	void trimBuffer(int count) {
+		trimmedBuffers++;
+		evictedEvents.add(count);
+	}
+
+	/**
+	 * バッファサイズの許容値の変更を記録する。トリムを実行するスレッドだけが呼び出す。
+	 * @param newMaxBufferSize 新しい許容値
+	 */
+	void changeBudget(int newMaxBufferSize) {
+		budgetChanges++;
+		maxBufferSize = newMaxBufferSize;
+	}
+
+	/**
+	 * バッファサイズの許容値の引き上げを記録する。許容値を変更するスレッドだけが呼び出す。
+	 * @param newMaxBufferSize 新しい許容値
+	 */
+	void regrowBudget(int newMaxBufferSize) {
+		regrowths++;
+		changeBudget(newMaxBufferSize);
+	}
+
+	/**
+	 * 部分トレースの保存による新しい区間の開始を記録する。
+	 * バッファサイズの許容値は初期値に戻るが、許容値の変更としては数えない。
+	 * @param initialMaxBufferSize バッファサイズの許容値の初期値
+	 */
+	void startInterval(int initialMaxBufferSize) {
+		intervals++;
+		maxBufferSize = initialMaxBufferSize;
+	}
+
+	/**
+	 * @return 記録されたイベント数
+	 */
+	public long getRecordedEvents() {
+		return recordedEvents.sum();
+	}
+
+	/**
+	 * @return バッファから削除されたイベント数
+	 */
+	public long getEvictedEvents() {
+		return evictedEvents.sum();
+	}
+
+	/**
+	 * @return トリムが実行された回数
+	 */
+	public long getTrimRuns() {
+		return trimRuns;
+	}
+
+	/**
+	 * @return バッファがトリムされた回数
+	 */
+	public long getTrimmedBuffers() {
+		return trimmedBuffers;
+	}
+
+	/**
+	 * @return バッファサイズの許容値が変更された回数
+	 */
+	public long getBudgetChanges() {
+		return budgetChanges;
+	}
+
+	/**
+	 * @return バックグラウンドのトリムが追いつかず、イベントを記録したスレッドがトリムを行った回数
+	 */
+	public long getFallbackTrims() {
+		return fallbackTrims;
+	}
+
+	/**
+	 * @return 使用量が減少したため、バッファサイズの許容値を引き上げた回数
+	 */
+	public long getRegrowths() {
+		return regrowths;
+	}
+
+	/**
+	 * @return 部分トレースの保存によって使用量をリセットした回数
+	 */
+	public long getIntervals() {
+		return intervals;
+	}
+
+	/**
+	 * @return 現在のバッファサイズの許容値
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * 統計情報をJSONのフィールドとして書き込む。
+	 * @param buf 出力先
+	 */
+	public void writeJson(JsonBuffer buf) {
+		buf.writeObjectFieldStart("trim");
+		buf.writeNumberField("maxBufferSize", getMaxBufferSize());
+		buf.writeNumberField("recordedEvents", getRecordedEvents());
+		buf.writeNumberField("evictedEvents", getEvictedEvents());
+		buf.writeNumberField("trimRuns", getTrimRuns());
+		buf.writeNumberField("trimmedBuffers", getTrimmedBuffers());
+		buf.writeNumberField("budgetChanges", getBudgetChanges());
+		buf.writeNumberField("fallbackTrims", getFallbackTrims());
+		buf.writeNumberField("regrowths", getRegrowths());
+		buf.writeNumberField("intervals", getIntervals());
+		buf.writeEndObject();
+	}
+
+	@Override
+	public String toString() {
+		return "maxBufferSize=" + getMaxBufferSize() +
+				", recordedEvents=" + getRecordedEvents() +
+				", evictedEvents=" + getEvictedEvents() +
+				", trimRuns=" + getTrimRuns() +
+				", trimmedBuffers=" + getTrimmedBuffers() +
+				", budgetChanges=" + getBudgetChanges() +
+				", fallbackTrims=" + getFallbackTrims() +
+				", regrowths=" + getRegrowths() +
+				", intervals=" + getIntervals();
+	}
+}
@@ -1,174 +1,448 @@
 package selogger.logging.io;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.core.io.JsonStringEncoder;
 
 import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
 import selogger.logging.util.JsonBuffer;
 import selogger.logging.util.ObjectId;
+import selogger.logging.util.WeakObjectRef;
 
 /**
  * データIDの最新k個のイベントを記録するリングバッファ。
+ * サブクラスが値の型ごとに値の記録と書き出しを実装するため、値を扱う際に配列の型を判定しない。
+ * インスタンスはcreateメソッドで値の型に応じて作成する。
  */
-public class ProposedmethodBuffer {
+public abstract class ProposedmethodBuffer {
 
 	private static final int DEFAULT_CAPACITY = 32; 
 
+	/**
+	 * 割り当て済みの配列の長さがバッファサイズのこの倍数以上になった場合に、配列を縮小する。
+	 * 配列の拡大と同じ倍率にして、縮小するまでに削除するイベントを少なくする。
+	 */
+	private static final int SHRINK_FACTOR = 2;
+
+	/**
+	 * 参照1個のバイト数。ヒープが32GB未満の場合のデフォルトである圧縮参照を仮定する。
+	 */
+	private static final int REFERENCE_BYTES = 4;
+
+	/**
+	 * シーケンス番号とスレッドIDの配列の、要素1個あたりのバイト数
+	 */
+	private static final int METADATA_BYTES = 8 + 4;
+
+	/**
+	 * バッファのオブジェクト自身と、3つの配列のヘッダのバイト数
+	 */
+	public static final int OVERHEAD_BYTES = 72 + 3 * 16;
+
+	/**
+	 * バッファに保持するイベント数の上限
+	 */
 	private int bufferSize;
-	private int nextPos = 0;
+
+	/**
+	 * bufferSizeの最大値。許容値が引き上げられても、この値を超えて拡大しない。
+	 */
+	private final int sizeLimit;
+
+	/**
+	 * 前回のイベントの追加時に渡された許容値。
+	 * 許容値が引き上げられた場合、その差だけbufferSizeを拡大する。
+	 */
+	private int lastMaxSize = Integer.MAX_VALUE;
+
+	/**
+	 * 最も古いイベントの配列上の位置
+	 */
+	private int head = 0;
+
+	/**
+	 * バッファに保持しているイベント数
+	 */
+	private int size = 0;
+
+	/**
+	 * イベントの発生回数
+	 */
 	private long count = 0;
-	private Object array;
-	private long[] seqnums;
-	private int[] threads;
-	private PrometObjectRecordingStrategy keepObject;
 
+	/**
+	 * 値の配列。値を記録しないバッファではnull。
+	 */
+	Object array;
+	long[] seqnums;
+	int[] threads;
+
+	/**
+	 * 値の型。void.classの場合は値を記録しない。
+	 */
+	private final Class<?> valueType;
+
+	/**
+	 * 割り当て済みの配列の長さ
+	 */
 	private int capacity;
 
+	/**
+	 * 3つの配列の要素1個あたりのバイト数の合計
+	 */
+	private final int eventBytes;
+
+	/**
+	 * 割り当て済みの配列から計算したバイト数
+	 */
+	private long footprint;
+
+	/**
+	 * 配列の割り当てによるバイト数の増減を加算するカウンタ。nullの場合は加算しない。
+	 */
+	private final AtomicLong usage;
+
+	/**
+	 * 値の配列がオブジェクト参照を保持するかどうか
+	 */
+	private final boolean holdsReferences;
+
+	/**
+	 * ProposedmethodBufferIndexに登録されたサイズ。未登録の場合は-1。
+	 * インデックスを操作するスレッドだけが参照する。
+	 */
+	int indexedSize = -1;
+	ProposedmethodBuffer indexPrev;
+	ProposedmethodBuffer indexNext;
+
+	/**
+	 * サイズの変化をインデックスに反映するためのキューに登録済みかどうか。
+	 * 記録を行うスレッドがtrueにし、インデックスを操作するスレッドがfalseに戻す。
+	 */
+	volatile boolean indexQueued;
+
+	/**
+	 * 部分トレースの保存によってロガーから切り離されたかどうか。
+	 * 切り離されたバッファへのイベントの追加は、ロガーの使用量に反映しない。
+	 */
+	private volatile boolean retired;
+
+	/**
+	 * 値の型に応じたバッファを作成する。
+	 * @param type バッファに格納される値の型を指定します。void.classの場合、シーケンス番号とスレッドIDだけを記録する。
+	 * @param bufferSize バッファのサイズを指定します。
+	 * @param keepObject typeがObject.classの場合に、オブジェクトを保持する方法
+	 * @return 値の型に応じたバッファ
+	 */
+	public static ProposedmethodBuffer create(Class<?> type, int bufferSize, PrometObjectRecordingStrategy keepObject) {
+		return create(type, bufferSize, keepObject, null);
+	}
+
+	/**
+	 * 配列のバイト数をカウンタに加算する、値の型に応じたバッファを作成する。
+	 * @param type バッファに格納される値の型を指定します。void.classの場合、シーケンス番号とスレッドIDだけを記録する。
+	 * @param bufferSize バッファのサイズを指定します。
+	 * @param keepObject typeがObject.classの場合に、オブジェクトを保持する方法
+	 * @param usage 配列の割り当てによるバイト数の増減を加算するカウンタ。nullの場合は加算しない。
+	 * 作成したバッファの初期のバイト数もこのメソッドの中で加算する。
+	 * @return 値の型に応じたバッファ
+	 */
+	public static ProposedmethodBuffer create(Class<?> type, int bufferSize, PrometObjectRecordingStrategy keepObject, AtomicLong usage) {
+		if (type == void.class) {
+			return new VoidBuffer(bufferSize, usage);
+		} else if (type == boolean.class) {
+			return new BooleanBuffer(bufferSize, usage);
+		} else if (type == byte.class) {
+			return new ByteBuffer(bufferSize, usage);
+		} else if (type == char.class) {
+			return new CharBuffer(bufferSize, usage);
+		} else if (type == short.class) {
+			return new ShortBuffer(bufferSize, usage);
+		} else if (type == int.class) {
+			return new IntBuffer(bufferSize, usage);
+		} else if (type == long.class) {
+			return new LongBuffer(bufferSize, usage);
+		} else if (type == float.class) {
+			return new FloatBuffer(bufferSize, usage);
+		} else if (type == double.class) {
+			return new DoubleBuffer(bufferSize, usage);
+		} else if (type == ObjectId.class) {
+			return new ObjectIdBuffer(bufferSize, usage);
+		} else {
+			return new ObjectBuffer(bufferSize, keepObject, usage);
+		}
+	}
+
 	/**
 	 * バッファを作成する。
 	 * @param type バッファに格納される値の型を指定します。
 	 * @param bufferSize バッファのサイズを指定します。
+	 * @param usage 配列の割り当てによるバイト数の増減を加算するカウンタ。nullの場合は加算しない。
 	 */
-	public ProposedmethodBuffer(Class<?> type, int bufferSize, PrometObjectRecordingStrategy keepOject) {
-		this.capacity = Math.min(DEFAULT_CAPACITY, bufferSize);
+	private ProposedmethodBuffer(Class<?> type, int bufferSize, AtomicLong usage) {
+		this.usage = usage;
 		this.bufferSize = bufferSize;
-		this.array = Array.newInstance(type, capacity);
-		this.seqnums = new long[capacity];
-		this.threads = new int[capacity];
-		this.keepObject = keepOject;
+		this.sizeLimit = bufferSize;
+		this.valueType = type;
+		int length = Math.min(DEFAULT_CAPACITY, bufferSize);
+		this.array = allocateValues(length);
+		this.holdsReferences = !type.isPrimitive();
+		this.seqnums = new long[length];
+		this.threads = new int[length];
+		this.capacity = length;
+		this.eventBytes = estimateEventBytes(type);
+		updateFootprint();
+	}
+
+	/**
+	 * バッファをロガーから切り離す。
+	 */
+	void retire() {
+		retired = true;
+	}
+
+	/**
+	 * @return ロガーから切り離されている場合はtrue
+	 */
+	boolean isRetired() {
+		return retired;
+	}
+
+	/**
+	 * @param length 配列の長さ
+	 * @return 値の配列。値を記録しないバッファではnull。
+	 */
+	private Object allocateValues(int length) {
+		return valueType == void.class ? null : Array.newInstance(valueType, length);
+	}
+
+	/**
+	 * 値を1個、JSON配列の要素として書き込む。
+	 * @param buf 出力先
+	 * @param idx 配列のインデックス
+	 */
+	protected abstract void writeValue(JsonBuffer buf, int idx);
+
+	/**
+	 * 値を1個、CSVの列として書き込む。
+	 * @param buf 出力先
+	 * @param idx 配列のインデックス
+	 */
+	protected abstract void appendValue(StringBuilder buf, int idx);
+
+	/**
+	 * @param type 値の型
+	 * @return 値の配列の要素1個のバイト数
+	 */
+	private static int getValueBytes(Class<?> type) {
+		if (type == void.class) {
+			return 0;
+		} else if (type == boolean.class || type == byte.class) {
+			return 1;
+		} else if (type == char.class || type == short.class) {
+			return 2;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == long.class || type == double.class) {
+			return 8;
+		} else {
+			// 参照先のオブジェクトはバッファが割り当てたものではないため、参照だけを数える
+			return REFERENCE_BYTES;
+		}
+	}
+
+	/**
+	 * @param type 値の型
+	 * @return 指定した型のイベント1個分の、3つの配列の要素のバイト数
+	 */
+	public static int estimateEventBytes(Class<?> type) {
+		return getValueBytes(type) + METADATA_BYTES;
+	}
+
+	/**
+	 * @return イベント1個分の、値、シーケンス番号、スレッドIDの配列の要素のバイト数
+	 */
+	public int getEventBytes() {
+		return eventBytes;
+	}
+
+	/**
+	 * @return バッファの現在のバイト数。
+	 * 保持しているイベント数ではなく、割り当て済みの配列の長さから計算する。
+	 */
+	public synchronized long getFootprint() {
+		return footprint;
+	}
+
+	/**
+	 * 配列の長さからバイト数を再計算し、増減をカウンタに加算する。
+	 * 配列を割り当てた場合だけ呼び出すため、イベントの追加ごとのコストはない。
+	 * ロガーから切り離されたバッファの増減は加算しない。
+	 */
+	private void updateFootprint() {
+		long newFootprint = OVERHEAD_BYTES + (long)capacity * eventBytes;
+		if (usage != null && !retired) {
+			usage.addAndGet(newFootprint - footprint);
+		}
+		footprint = newFootprint;
 	}
 
 	/**
 	 * @return 次の値を書き込むインデックスを返す。   
 	 */
-	private int getNextIndex() {
+	final int getNextIndex() {
 		count++;
-		int next = nextPos++;
-		if (nextPos >= capacity) {
-			if (capacity < bufferSize) {
+		if (size < bufferSize) {
+			if (size == capacity) {
 				// extend the buffer
-				capacity = Math.min(capacity * 2, bufferSize);
-				this.seqnums = Arrays.copyOf(this.seqnums, capacity);
-				this.threads = Arrays.copyOf(this.threads, capacity);
-				if (array instanceof int[]) {
-					this.array = Arrays.copyOf((int[])array, capacity);
-				} else if (array instanceof long[]) {
-					this.array = Arrays.copyOf((long[])array, capacity);
-				} else if (array instanceof float[]) {
-					this.array = Arrays.copyOf((float[])array, capacity);
-				} else if (array instanceof double[]) {
-					this.array = Arrays.copyOf((double[])array, capacity);
-				} else if (array instanceof char[]) {
-					this.array = Arrays.copyOf((char[])array, capacity);
-				} else if (array instanceof short[]) {
-					this.array = Arrays.copyOf((short[])array, capacity);
-				} else if (array instanceof byte[]) {
-					this.array = Arrays.copyOf((byte[])array, capacity);
-				} else if (array instanceof boolean[]) {
-					this.array = Arrays.copyOf((boolean[])array, capacity);
-				} else if (array instanceof String[]) {
-					this.array = Arrays.copyOf((String[])array, capacity);
-				} else {
-					this.array = Arrays.copyOf((Object[])array, capacity);
-				} 
-			} else {
-				// バッファがすでに最大の場合、リングバッファとして機能する
-				nextPos = 0;
+				resize(Math.min(capacity * 2, bufferSize));
+			}
+			int next = getPos(size);
+			size++;
+			return next;
+		} else {
+			// バッファがすでに最大の場合、最も古いイベントを上書きする
+			int next = getPos(size);
+			if (size > 0) {
+				if (holdsReferences && size < capacity) {
+					// 縮小後の空き領域に書き込む場合、上書きされない古いイベントの参照を消去する
+					((Object[])array)[head] = null;
+				}
+				head = getPos(1);
 			}
+			return next;
 		}
-		return next;
 	}
-	
+
+	/**
+	 * 配列を指定した長さで再割り当てする。
+	 * 保持しているイベントは、最も古いものが先頭になるように並べ直す。
+	 * @param newCapacity 新しい配列の長さ。保持しているイベント数以上でなければならない。
+	 */
+	private void resize(int newCapacity) {
+		Object newArray = allocateValues(newCapacity);
+		long[] newSeqnums = new long[newCapacity];
+		int[] newThreads = new int[newCapacity];
+		int first = Math.min(size, capacity - head);
+		if (array != null) {
+			System.arraycopy(array, head, newArray, 0, first);
+			System.arraycopy(array, 0, newArray, first, size - first);
+		}
+		System.arraycopy(seqnums, head, newSeqnums, 0, first);
+		System.arraycopy(seqnums, 0, newSeqnums, first, size - first);
+		System.arraycopy(threads, head, newThreads, 0, first);
+		System.arraycopy(threads, 0, newThreads, first, size - first);
+		array = newArray;
+		seqnums = newSeqnums;
+		threads = newThreads;
+		capacity = newCapacity;
+		head = 0;
+		updateFootprint();
+	}
+
+	/**
+	 * イベントを追加する前に、バッファを許容値のサイズに合わせる。
+	 * 前回から許容値が引き上げられた場合は、引き上げられた分だけバッファサイズを戻す。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return 次のイベントの追加によるイベント数の増減（削除されたイベントを含む）
+	 */
+	final int prepareNext(int maxSize) {
+		if (maxSize > lastMaxSize) {
+			bufferSize = Math.min(sizeLimit, Math.min(maxSize, bufferSize + (maxSize - lastMaxSize)));
+		}
+		lastMaxSize = maxSize;
+		int removed = ensureSize(maxSize);
+		return (size() < bufferSize ? 1 : 0) - removed;
+	}
+
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addBoolean(boolean value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((boolean[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addBoolean(boolean value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addByte(byte value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((byte[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addByte(byte value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addChar(char value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((char[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addChar(char value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addInt(int value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((int[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addInt(int value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addDouble(double value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((double[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addDouble(double value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addFloat(float value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((float[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addFloat(float value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
-	
+
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addLong(long value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((long[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addLong(long value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
-	
+
 	/**
 	 * 次の位置に値を書き込む。
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException 値の型が異なるバッファの場合
 	 */
-	public synchronized void addShort(short value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((short[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addShort(short value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
@@ -176,34 +450,24 @@ public class ProposedmethodBuffer {
 	 * バッファがすでに一杯の場合は、最も古いものを上書きする。
 	 * keepObject が真の場合、このバッファはオブジェクト参照を直接格納する。
 	 * そうでない場合、バッファは参照を格納するために弱い参照を使用します。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException オブジェクトのバッファではない場合
 	 */
-	public synchronized void addObject(Object value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		assert (keepObject == PrometObjectRecordingStrategy.Strong) || (keepObject == PrometObjectRecordingStrategy.Weak);
-		if (keepObject == PrometObjectRecordingStrategy.Strong) {
-			((Object[])array)[index] = value;
-		} else {
-			if (value != null) {
-				WeakReference<?> ref = new WeakReference<>(value);
-				((Object[])array)[index] = ref;
-			} else {
-				((Object[])array)[index] = null;
-			}
-		}
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addObject(Object value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 
 	/**
 	 * オブジェクトIDを次の位置に書き込む。
 	 * addObjectメソッドとは異なり、このメソッドではオブジェクトのIDのみを記録します。
 	 * 参照なしでIDのみを記録します。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return バッファに保存されたイベント数の増減
+	 * @throws UnsupportedOperationException オブジェクトIDのバッファではない場合
 	 */
-	public synchronized void addObjectId(ObjectId value, long seqnum, int threadId) {
-		int index = getNextIndex();
-		((ObjectId[])array)[index] = value;
-		seqnums[index] = seqnum;
-		threads[index] = threadId;
+	public int addObjectId(ObjectId value, long seqnum, int threadId, int maxSize) {
+		throw new UnsupportedOperationException();
 	}
 	
 	/**
@@ -218,7 +482,7 @@ public class ProposedmethodBuffer {
 	@Override
 	public synchronized String toString() {
 		StringBuilder buf = new StringBuilder();
-		int len = (int)Math.min(count, bufferSize);
+		int len = size;
 		buf.append(count());
 		buf.append(",");
 		buf.append(size());
@@ -230,52 +494,8 @@ public class ProposedmethodBuffer {
 				buf.append(",");
 				continue;
 			}
-			int idx = (count >= bufferSize) ? (nextPos + i) % bufferSize : i;
-
-			// Write a value depending on a type
-			if (array instanceof int[]) {
-				buf.append(((int[])array)[idx]);
-			} else if (array instanceof long[]) {
-				buf.append(((long[])array)[idx]);
-			} else if (array instanceof float[]) {
-				buf.append(((float[])array)[idx]);
-			} else if (array instanceof double[]) {
-				buf.append(((double[])array)[idx]);
-			} else if (array instanceof char[]) {
-				buf.append((int)((char[])array)[idx]);
-			} else if (array instanceof short[]) {
-				buf.append(((short[])array)[idx]);
-			} else if (array instanceof byte[]) {
-				buf.append(((byte[])array)[idx]);
-			} else if (array instanceof boolean[]) {
-				buf.append(((boolean[])array)[idx]);
-			} else if (array instanceof String[]) {
-				buf.append(((String[])array)[idx]);
-			} else {
-				String msg = "null";
-				Object o = ((Object[])array)[idx];
-				if (keepObject == PrometObjectRecordingStrategy.Weak) {
-					WeakReference<?> ref = (WeakReference<?>)o;
-					o = ref.get();
-					if (o == null) {
-						msg = "<GC>";
-					}
-				}
-				if (o == null) {
-					buf.append(msg);
-				} else {
-					String id = o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o));
-					if (o instanceof String) {
-						buf.append("\"");
-						buf.append(id);
-						buf.append(":");
-						JsonStringEncoder.getInstance().quoteAsString((String)o, buf);
-						buf.append("\"");
-					} else {
-						buf.append(id);
-					}
-				}
-			}
+			int idx = getPos(i);
+			appendValue(buf, idx);
 			buf.append(",");
 			buf.append(seqnums[idx]);
 			buf.append(",");
@@ -328,66 +548,73 @@ public class ProposedmethodBuffer {
 	}
 
 	/**
-	 * 削除するための実装
-	 * @param trimCount
+	 * 古いイベントを削除する。
+	 * リングの先頭を進めるだけで、配列の内容はコピーしない。
+	 * バッファサイズの上限は、削除後に保持しているイベント数まで小さくなる。
+	 * 一杯でないバッファも拡大する余地を失うため、縮小の判定が上限の初期値に左右されない。
+	 * @param trimCount 削除するイベント数
+	 * @return 実際に削除したイベント数
 	 */
-	public synchronized void trimOldEvents(int trimCount) {
-		if (trimCount <= 0 || count == 0) return;
-	
-		int actualTrim = Math.min(trimCount, size()); // 実際に削除するイベント数
-		int newSize = size() - actualTrim;
-	
-		// 配列の先頭から actualTrim 件分をスライドさせる
-		System.arraycopy(array, actualTrim, array, 0, newSize);
-		System.arraycopy(seqnums, actualTrim, seqnums, 0, newSize);
-		System.arraycopy(threads, actualTrim, threads, 0, newSize);
-	
-		// 配列の末尾をクリア
-		if (array instanceof long[]) {
-			Arrays.fill((long[]) array, newSize, size(), 0L);
-		} else if (array instanceof int[]) {
-			Arrays.fill((int[]) array, newSize, size(), 0);
-		} else if (array instanceof float[]) {
-			Arrays.fill((float[]) array, newSize, size(), 0.0f);
-		} else if (array instanceof double[]) {
-			Arrays.fill((double[]) array, newSize, size(), 0.0);
-		} else if (array instanceof char[]) {
-			Arrays.fill((char[]) array, newSize, size(), '\0');
-		} else if (array instanceof short[]) {
-			Arrays.fill((short[]) array, newSize, size(), (short) 0);
-		} else if (array instanceof byte[]) {
-			Arrays.fill((byte[]) array, newSize, size(), (byte) 0);
-		} else if (array instanceof boolean[]) {
-			Arrays.fill((boolean[]) array, newSize, size(), false);
-		} else if (array instanceof Object[]) {
-			Arrays.fill((Object[]) array, newSize, size(), null);
-		} else {
-			throw new IllegalArgumentException("Unsupported array type: " + array.getClass());
-		}
-	
-		nextPos = newSize;
-		count -= actualTrim;
-		bufferSize -= actualTrim;
+	public synchronized int trimOldEvents(int trimCount) {
+		if (trimCount <= 0 || size == 0) return 0;
+		int actualTrim = Math.min(trimCount, size);
+		removeOldEvents(actualTrim);
+		bufferSize = Math.max(1, Math.min(bufferSize - actualTrim, size));
+		shrinkIfSparse();
+		return actualTrim;
 	}
 
+	/**
+	 * バッファサイズの上限を許容値以下にする。
+	 * 許容値を超えるイベントは古いものから削除する。
+	 * @param maxSize 現在のバッファサイズの許容値
+	 * @return 実際に削除したイベント数
+	 */
 	public synchronized int ensureSize(int maxSize){
 		int trimSize = 0;
-		if(size() > maxSize){
-			trimSize = size() - maxSize;
-			System.out.println("Start ensureTrim(bufferSize:" + size() + ", trimsize:" + trimSize + ")");
-			trimOldEvents(trimSize);
+		if (size > maxSize) {
+			trimSize = size - maxSize;
+			removeOldEvents(trimSize);
+		}
+		if (bufferSize > maxSize) {
 			bufferSize = maxSize;
+			shrinkIfSparse();
 		}
-
 		return trimSize;
 	}
 
+	/**
+	 * リングの先頭を進めて、古いイベントを削除する。
+	 * オブジェクトを保持する配列の場合は、GCのために参照を消去する。
+	 * @param n 削除するイベント数。保持しているイベント数以下でなければならない。
+	 */
+	private void removeOldEvents(int n) {
+		if (holdsReferences) {
+			Object[] objects = (Object[])array;
+			for (int i=0; i<n; i++) {
+				objects[getPos(i)] = null;
+			}
+		}
+		head = getPos(n);
+		size -= n;
+		if (size == 0) head = 0;
+	}
+
+	/**
+	 * バッファサイズの上限が割り当て済みの配列より十分に小さくなった場合、配列を縮小してメモリを解放する。
+	 */
+	private void shrinkIfSparse() {
+		if (capacity > DEFAULT_CAPACITY && (long)bufferSize * SHRINK_FACTOR <= capacity) {
+			resize(Math.max(DEFAULT_CAPACITY, bufferSize));
+		}
+	}
+
 	/**
 	 * @return このバッファに記録されたイベントデータの数を返す。
 	 * 最大値はバッファサイズです。
 	 */
 	public synchronized int size() {
-		return (int)Math.min(count, bufferSize); 
+		return size; 
 	}
 	
 	/**
@@ -396,7 +623,8 @@ public class ProposedmethodBuffer {
 	 * @return 配列のインデックスを返します。
 	 */
 	private int getPos(int i) {
-		return (count >= bufferSize) ? (nextPos + i) % bufferSize : i;
+		int pos = head + i;
+		return (pos >= capacity) ? pos - capacity : pos;
 	}
 
 	/**
@@ -446,64 +674,14 @@ public class ProposedmethodBuffer {
 	 * @throws IOException
 	 */
 	public synchronized void writeJson(JsonBuffer buf, boolean skipValues) { 
-		int len = (int)Math.min(count, bufferSize);
+		int len = size;
 		buf.writeNumberField("freq", count());
 		buf.writeNumberField("record", size());
 
 		if (!skipValues) {
 			buf.writeArrayFieldStart("value");
 			for (int i=0; i<len; i++) {
-				int idx = getPos(i);
-				// 型に応じて値を書き込む
-				if (array instanceof int[]) {
-					buf.writeNumber(((int[])array)[idx]);
-				} else if (array instanceof long[]) {
-					buf.writeNumber(((long[])array)[idx]);
-				} else if (array instanceof float[]) {
-					buf.writeNumber(((float[])array)[idx]);
-				} else if (array instanceof double[]) {
-					buf.writeNumber(((double[])array)[idx]);
-				} else if (array instanceof char[]) {
-					buf.writeNumber((int)((char[])array)[idx]);
-				} else if (array instanceof short[]) {
-					buf.writeNumber(((short[])array)[idx]);
-				} else if (array instanceof byte[]) {
-					buf.writeNumber(((byte[])array)[idx]);
-				} else if (array instanceof boolean[]) {
-					buf.writeBoolean(((boolean[])array)[idx]);
-				} else if (array instanceof ObjectId[]) {
-					ObjectId id = ((ObjectId[])array)[idx];
-					buf.writeStartObject();
-					buf.writeStringField("id", Long.toString(id.getId()));
-					buf.writeStringField("type", id.getClassName());
-					if (id.getContent() != null) buf.writeStringField("str", id.getContent());
-					buf.writeEndObject();
-				} else {
-					String id = null;
-					Object o = ((Object[])array)[idx];
-					if (o == null) {
-						buf.writeNull();
-					} else {
-						if (keepObject == PrometObjectRecordingStrategy.Weak) {
-							WeakReference<?> ref = (WeakReference<?>)o;
-							o = ref.get();
-						} 
-						if (o != null) {
-							id = Integer.toHexString(System.identityHashCode(o));
-						} else {
-							id = "<GC>";
-						}
-						buf.writeStartObject();
-						buf.writeStringField("id", id);
-						if (o != null) {
-							buf.writeStringField("type", o.getClass().getName());
-							if (o instanceof String) {
-								buf.writeEscapedStringField("str", (String)o);
-							}
-						}
-						buf.writeEndObject();
-					}
-				}
+				writeValue(buf, getPos(i));
 			}
 			buf.writeEndArray();
 		}
@@ -519,4 +697,427 @@ public class ProposedmethodBuffer {
 		buf.writeEndArray();
 	}
 
+	/**
+	 * 値のないイベント(Descriptor.Void)のバッファ。シーケンス番号とスレッドIDだけを記録する。
+	 * どのaddメソッドも受け付け、値は破棄する。
+	 */
+	static final class VoidBuffer extends ProposedmethodBuffer {
+
+		VoidBuffer(int bufferSize, AtomicLong usage) {
+			super(void.class, bufferSize, usage);
+		}
+
+		private synchronized int add(long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		public int addBoolean(boolean value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addByte(byte value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addChar(char value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addShort(short value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addInt(int value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addLong(long value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addFloat(float value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addDouble(double value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addObject(Object value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		public int addObjectId(ObjectId value, long seqnum, int threadId, int maxSize) {
+			return add(seqnum, threadId, maxSize);
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNull();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			// 値は記録していない
+		}
+	}
+
+	static final class BooleanBuffer extends ProposedmethodBuffer {
+
+		BooleanBuffer(int bufferSize, AtomicLong usage) {
+			super(boolean.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addBoolean(boolean value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((boolean[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeBoolean(((boolean[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((boolean[])array)[idx]);
+		}
+	}
+
+	static final class ByteBuffer extends ProposedmethodBuffer {
+
+		ByteBuffer(int bufferSize, AtomicLong usage) {
+			super(byte.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addByte(byte value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((byte[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((byte[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((byte[])array)[idx]);
+		}
+	}
+
+	static final class CharBuffer extends ProposedmethodBuffer {
+
+		CharBuffer(int bufferSize, AtomicLong usage) {
+			super(char.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addChar(char value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((char[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber((int)((char[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append((int)((char[])array)[idx]);
+		}
+	}
+
+	static final class ShortBuffer extends ProposedmethodBuffer {
+
+		ShortBuffer(int bufferSize, AtomicLong usage) {
+			super(short.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addShort(short value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((short[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((short[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((short[])array)[idx]);
+		}
+	}
+
+	static final class IntBuffer extends ProposedmethodBuffer {
+
+		IntBuffer(int bufferSize, AtomicLong usage) {
+			super(int.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addInt(int value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((int[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((int[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((int[])array)[idx]);
+		}
+	}
+
+	static final class LongBuffer extends ProposedmethodBuffer {
+
+		LongBuffer(int bufferSize, AtomicLong usage) {
+			super(long.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addLong(long value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((long[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((long[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((long[])array)[idx]);
+		}
+	}
+
+	static final class FloatBuffer extends ProposedmethodBuffer {
+
+		FloatBuffer(int bufferSize, AtomicLong usage) {
+			super(float.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addFloat(float value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((float[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((float[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((float[])array)[idx]);
+		}
+	}
+
+	static final class DoubleBuffer extends ProposedmethodBuffer {
+
+		DoubleBuffer(int bufferSize, AtomicLong usage) {
+			super(double.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addDouble(double value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((double[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			buf.writeNumber(((double[])array)[idx]);
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			buf.append(((double[])array)[idx]);
+		}
+	}
+
+	/**
+	 * オブジェクトIDのバッファ。
+	 */
+	static final class ObjectIdBuffer extends ProposedmethodBuffer {
+
+		ObjectIdBuffer(int bufferSize, AtomicLong usage) {
+			super(ObjectId.class, bufferSize, usage);
+		}
+
+		@Override
+		public synchronized int addObjectId(ObjectId value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			((ObjectId[])array)[index] = value;
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			ObjectId id = ((ObjectId[])array)[idx];
+			buf.writeStartObject();
+			buf.writeStringField("id", Long.toString(id.getId()));
+			buf.writeStringField("type", id.getClassName());
+			if (id.getContent() != null) buf.writeStringField("str", id.getContent());
+			buf.writeEndObject();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			ObjectId o = ((ObjectId[])array)[idx];
+			if (o == null) {
+				buf.append("null");
+			} else {
+				buf.append(o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o)));
+			}
+		}
+	}
+
+	/**
+	 * オブジェクト参照のバッファ。
+	 * keepObjectがStrongの場合はオブジェクト参照を直接格納し、そうでない場合は弱い参照を格納する。
+	 */
+	static final class ObjectBuffer extends ProposedmethodBuffer {
+
+		private final PrometObjectRecordingStrategy keepObject;
+
+		ObjectBuffer(int bufferSize, PrometObjectRecordingStrategy keepObject, AtomicLong usage) {
+			super(Object.class, bufferSize, usage);
+			this.keepObject = keepObject;
+		}
+
+		@Override
+		public synchronized int addObject(Object value, long seqnum, int threadId, int maxSize) {
+			int delta = prepareNext(maxSize);
+			int index = getNextIndex();
+			assert (keepObject == PrometObjectRecordingStrategy.Strong) || (keepObject == PrometObjectRecordingStrategy.Weak);
+			if (keepObject == PrometObjectRecordingStrategy.Strong || value == null) {
+				((Object[])array)[index] = value;
+			} else {
+				((Object[])array)[index] = WeakObjectRef.of(value);
+			}
+			seqnums[index] = seqnum;
+			threads[index] = threadId;
+			return delta;
+		}
+
+		/**
+		 * @return 配列の要素が参照するオブジェクト
+		 */
+		private Object getObject(int idx) {
+			Object o = ((Object[])array)[idx];
+			if (keepObject == PrometObjectRecordingStrategy.Weak && o != null) {
+				o = ((WeakObjectRef)o).get();
+			}
+			return o;
+		}
+
+		@Override
+		protected void writeValue(JsonBuffer buf, int idx) {
+			if (((Object[])array)[idx] == null) {
+				buf.writeNull();
+				return;
+			}
+			Object o = getObject(idx);
+			buf.writeStartObject();
+			if (o != null) {
+				buf.writeStringField("id", Integer.toHexString(System.identityHashCode(o)));
+				buf.writeStringField("type", o.getClass().getName());
+				if (o instanceof String) {
+					buf.writeEscapedStringField("str", (String)o);
+				}
+			} else {
+				WeakObjectRef ref = (WeakObjectRef)((Object[])array)[idx];
+				buf.writeStringField("id", "<GC>");
+				buf.writeStringField("hash", ref.getId());
+				buf.writeStringField("type", ref.getClassName());
+			}
+			buf.writeEndObject();
+		}
+
+		@Override
+		protected void appendValue(StringBuilder buf, int idx) {
+			Object o = getObject(idx);
+			if (((Object[])array)[idx] == null) {
+				buf.append("null");
+			} else if (o == null) {
+				WeakObjectRef ref = (WeakObjectRef)((Object[])array)[idx];
+				buf.append("<GC>:");
+				buf.append(ref.getClassName());
+				buf.append("@");
+				buf.append(ref.getId());
+			} else {
+				String id = o.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(o));
+				if (o instanceof String) {
+					buf.append("\"");
+					buf.append(id);
+					buf.append(":");
+					JsonStringEncoder.getInstance().quoteAsString((String)o, buf);
+					buf.append("\"");
+				} else {
+					buf.append(id);
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,125 @@
+package selogger.logging.io;
+
+import java.util.ArrayList;
+
+/**
+ * バッファをサイズごとに分類するインデックス。
+ * 同じサイズのバッファは双方向リストで連結される。
+ * トリムの対象となる最大サイズのバッファや、許容値を超えたバッファを
+ * 全バッファを走査せずに取得するために使用する。
+ * このクラスはスレッドセーフではない。トリムを実行するスレッドだけが使用する。
+ */
+public class ProposedmethodBufferIndex {
+
+	private static final int INITIAL_BUCKETS = 64;
+
+	/**
+	 * サイズをインデックスとした、各リストの先頭要素
+	 */
+	private ProposedmethodBuffer[] heads;
+
+	/**
+	 * 空でないリストの最大サイズの上限。
+	 * 実際の最大サイズはこの値以下である。
+	 */
+	private int maxSize;
+
+	/**
+	 * インデックスに登録されたバッファの数
+	 */
+	private int count;
+
+	public ProposedmethodBufferIndex() {
+		heads = new ProposedmethodBuffer[INITIAL_BUCKETS];
+	}
+
+	/**
+	 * バッファのサイズをインデックスに反映する。
+	 * 未登録のバッファは新たに登録される。
+	 * 空になったバッファはトリムの対象にならないため、インデックスから削除される。
+	 * @param b バッファ
+	 * @param size バッファの現在のサイズ
+	 */
+	public void update(ProposedmethodBuffer b, int size) {
+		if (b.indexedSize == size) return;
+		remove(b);
+		if (size <= 0) return;
+		if (size >= heads.length) {
+			ProposedmethodBuffer[] newHeads = new ProposedmethodBuffer[Math.max(heads.length * 2, size + 1)];
+			System.arraycopy(heads, 0, newHeads, 0, heads.length);
+			heads = newHeads;
+		}
+		b.indexedSize = size;
+		b.indexPrev = null;
+		b.indexNext = heads[size];
+		if (heads[size] != null) heads[size].indexPrev = b;
+		heads[size] = b;
+		if (size > maxSize) maxSize = size;
+		count++;
+	}
+
+	/**
+	 * すべてのバッファをインデックスから削除する。
+	 * 登録されていたバッファは、以後このインデックスに登録してはならない。
+	 */
+	public void clear() {
+		heads = new ProposedmethodBuffer[INITIAL_BUCKETS];
+		maxSize = 0;
+		count = 0;
+	}
+
+	/**
+	 * バッファをインデックスから削除する。
+	 * @param b バッファ
+	 */
+	public void remove(ProposedmethodBuffer b) {
+		if (b.indexedSize < 0) return;
+		if (b.indexPrev != null) {
+			b.indexPrev.indexNext = b.indexNext;
+		} else {
+			heads[b.indexedSize] = b.indexNext;
+		}
+		if (b.indexNext != null) {
+			b.indexNext.indexPrev = b.indexPrev;
+		}
+		b.indexPrev = null;
+		b.indexNext = null;
+		b.indexedSize = -1;
+		count--;
+	}
+
+	/**
+	 * @return 登録されたバッファの最大サイズ。バッファがない場合は0。
+	 * 空のリストを読み飛ばすコストは、サイズの更新回数に対して償却される。
+	 */
+	public int getLargestSize() {
+		while (maxSize > 0 && heads[maxSize] == null) {
+			maxSize--;
+		}
+		return maxSize;
+	}
+
+	/**
+	 * 指定したサイズのバッファを取得する。
+	 * 返されたリストはインデックスのコピーであるため、
+	 * リストを走査しながらupdateを呼び出してもよい。
+	 * @param size バッファのサイズ
+	 * @return バッファのリスト
+	 */
+	public ArrayList<ProposedmethodBuffer> getBuffers(int size) {
+		ArrayList<ProposedmethodBuffer> result = new ArrayList<>();
+		if (size < heads.length) {
+			for (ProposedmethodBuffer b = heads[size]; b != null; b = b.indexNext) {
+				result.add(b);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return 登録されたバッファの数
+	 */
+	public int size() {
+		return count;
+	}
+}
@@ -3,18 +3,26 @@ package selogger.logging.io;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-//import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import selogger.logging.IErrorLogger;
 import selogger.logging.IEventLogger;
+import selogger.logging.util.DataIdTable;
 import selogger.logging.util.JsonBuffer;
 import selogger.logging.util.ObjectId;
 import selogger.logging.util.ObjectIdMap;
+import selogger.logging.util.SeqnumGenerator;
+import selogger.logging.util.SeqnumGenerator.Ordering;
 import selogger.weaver.DataInfo;
 import selogger.weaver.method.Descriptor;
-import selogger.logging.util.ThreadId;
+import selogger.logging.util.ThreadContext;
 
 /**
  * 提案手法が実装されたクラス
@@ -50,9 +58,11 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	private int bufferSize;
 	
 	/**
-	 * イベントを記録するバッファ 
+	 * イベントを記録するバッファ。
+	 * データIDをキーとして、ロックなしで参照できる。
+	 * バッファの追加はcreateBufferメソッドの中でのみ行う。
 	 */
-	private ArrayList<ProposedmethodBuffer> buffers;
+	private volatile DataIdTable<ProposedmethodBuffer> buffers;
 	
 	/**
 	 * 実行トレースを保存するディレクトリ
@@ -76,7 +86,7 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	
 	/**
 	 */
-	private boolean closed;
+	private volatile boolean closed;
 	
 	/**
 	 * idベースのオブジェクトの再コード化。 
@@ -88,17 +98,45 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	private int saveCount;
 
+	/**
+	 * トレースの書き込みを直列化するためのロック。
+	 * 書き込み中もイベントの記録とバッファの作成を続けられるように、ロガー自身のロックとは分ける。
+	 */
+	private final Object saveLock = new Object();
+
+	/**
+	 * 書き込み中のバッファ。saveLockを獲得したスレッドだけが参照する。
+	 */
+	private DataIdTable<ProposedmethodBuffer> outputBuffers;
+
 	/**
 	 * （追加要素）
-	 * バッファ全体での許容量を設定する
+	 * バッファ全体での許容量を設定する。
+	 * byteBudgetがtrueの場合はバイト数、falseの場合はイベント数。
+	 */
+	private long list_capacity;
+
+	/**
+	 * (追加要素)
+	 * 許容量をバイト数で管理するかどうか
 	 */
-	private int list_capacity;
+	private boolean byteBudget;
 
 	/**
 	 * (追加要素)
-	 * 現在の保存イベント数を保存する
+	 * 現在の使用量を保存する。単位はlist_capacityと同じ。
+	 * イベント数で管理する場合は、各バッファが報告するイベント数の増減を加算するため、全バッファのsize()の合計と一致する。
+	 * バイト数で管理する場合は、各バッファが配列の拡大・縮小のたびに直接加算するため、全バッファのgetFootprint()の合計と一致する。
 	 */
-	private int event_count = 0;
+	private final AtomicLong event_count = new AtomicLong();
+
+	/**
+	 * (追加要素)
+	 * トリムを実行中のスレッドが存在するかどうか。
+	 * トリムは一度に一つのスレッドだけが実行し、
+	 * 他のスレッドはトリムの完了を待たずにイベントの記録を続ける。
+	 */
+	private final AtomicBoolean trimming = new AtomicBoolean(false);
 
 	/**
 	 * (追加要素)
@@ -111,38 +149,156 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 * (追加要素)
 	 * 現段階でのバッファサイズの許容値
 	 * このサイズのバッファサイズまでは許す
+	 * トリムを実行するスレッドだけが更新する
 	 */
-	private int maxBufferSize;
+	private volatile int maxBufferSize;
 
 	/**
 	 * (追加要素)
-	 * 出力結果の最後にmaxbufferSizeを見せるかどうか
+	 * 終了時にトリムの統計情報を標準出力に表示するかどうか
 	 * デフォルトはfalse(見せない)
 	 */
 	private boolean show_bufferSize = false;
 
 	/**
 	 * (追加要素)
-	 * トリムされた回数を記録する
+	 * トリムの統計情報
+	 */
+	private final PrometTrimStatistics statistics;
+
+	/**
+	 * (追加要素)
+	 * バッファをサイズごとに分類するインデックス。
+	 * トリムを実行するスレッドだけが参照・更新する。
+	 */
+	private final ProposedmethodBufferIndex bufferIndex = new ProposedmethodBufferIndex();
+
+	/**
+	 * (追加要素)
+	 * 前回のトリム以降にサイズが変化したバッファ。
+	 * トリムの開始時にbufferIndexへ反映する。
+	 */
+	private final ConcurrentLinkedQueue<ProposedmethodBuffer> resizedBuffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * (追加要素)
+	 * バックグラウンドでトリムを開始する使用量の、許容量に対する割合
+	 */
+	private static final double HIGH_WATER_RATIO = 0.9;
+
+	/**
+	 * (追加要素)
+	 * バックグラウンドのトリムが目標とする使用量の、許容量に対する割合
+	 */
+	private static final double LOW_WATER_RATIO = 0.8;
+
+	/**
+	 * (追加要素)
+	 * バックグラウンドでトリムを実行するスレッド。
+	 * nullの場合、許容量を超えたイベントを記録したスレッドがトリムを行う。
+	 */
+	private final BackgroundTrimmer trimmer;
+
+	/**
+	 * (追加要素)
+	 * 使用量がこの値を超えた場合、バックグラウンドのトリムを要求する
+	 */
+	private final long highWaterMark;
+
+	/**
+	 * (追加要素)
+	 * バックグラウンドのトリムはこの値まで使用量を減らす
+	 */
+	private final long lowWaterMark;
+
+	/**
+	 * (追加要素)
+	 * 使用量がこの値を下回っている場合に、バッファサイズの許容値の引き上げを検討する
+	 */
+	private final long regrowMark;
+
+	/**
+	 * (追加要素)
+	 * 許容値を引き上げる間隔の初期値(記録済みイベント数の差)
+	 */
+	private final long baseRegrowInterval;
+
+	/**
+	 * (追加要素)
+	 * 許容値を引き上げるまでに、前回の許容値の変更から経過する必要のあるイベント数。
+	 * 引き上げの直後にトリムが発生した場合は倍にし、引き上げが維持された場合は初期値に戻す。
+	 */
+	private volatile long regrowInterval;
+
+	/**
+	 * (追加要素)
+	 * 許容値を引き上げる間隔の初期値の最小値
+	 */
+	private static final long MIN_REGROW_INTERVAL = 1024;
+
+	/**
+	 * (追加要素)
+	 * 許容値を引き上げる間隔の、初期値に対する最大の倍率
+	 */
+	private static final int MAX_REGROW_BACKOFF = 64;
+
+	/**
+	 * (追加要素)
+	 * 各スレッドが許容値の引き上げを検討する間隔(イベント数)。
+	 * 検討には全スレッドが更新する記録済みイベント数を集計する必要があるため、イベントごとには行わない。
+	 */
+	private static final int REGROW_CHECK_INTERVAL = 256;
+
+	/**
+	 * (追加要素)
+	 * RegrowCountdownを格納するThreadContextのインデックス
+	 */
+	private static final int REGROW_COUNTDOWN_INDEX = ThreadContext.newLocalIndex();
+
+	/**
+	 * (追加要素)
+	 * スレッドごとの、次に許容値の引き上げを検討するまでのイベント数
+	 */
+	private static final class RegrowCountdown {
+		private int remaining;
+	}
+
+	/**
+	 * (追加要素)
+	 * 最後の許容値の変更が引き上げであったかどうか。
+	 * trimmingフラグを獲得したスレッドだけが参照・更新する。
 	 */
-	private int trim_count = 0;
+	private boolean regrown;
 
 	/**
 	 * (追加要素)
-	 * バッファが減らされた回数を記録する
+	 * 最後にバッファサイズの許容値を変更した時点の記録済みイベント数。
+	 * シーケンス番号の生成方法に依存しないように、統計情報のイベント数を用いる。
+	 * トリムまたは引き上げを行うスレッドだけが更新する。
 	 */
-	private int decre_buffer = 0;
+	private volatile long lastBudgetChange;
 
 	/**
 	 * (追加要素)
-	 * データが追加された回数を知る
+	 * 以前の実行のプロファイルから計算した、イベント場所ごとのバッファサイズの割り当て。
+	 * プロファイルを使用しない場合はnull。
 	 */
-	private int put_data_count = 0;
+	private Map<String, Integer> profileQuotas;
 
-	/*
-	 * 最大バッファのリスト
+	/**
+	 * (追加要素)
+	 * データIDごとのバッファサイズの割り当て。0の場合は割り当てなし。
+	 * onCreatedでprofileQuotasから設定し、createBufferで参照する。
 	 */
-	private ArrayList<ProposedmethodBuffer> max_buffers;
+	private int[] quotas = new int[0];
+
+	/**
+	 * (追加要素)
+	 * 値のないイベント(Descriptor.Void)のデータID。
+	 * これらのイベントには値の配列を持たないバッファを作成する。
+	 * onCreatedで設定し、createBufferで参照する。
+	 */
+	private final BitSet voidEvents = new BitSet();
 	
 	/**
 	 * このオブジェクトは各イベントにシーケンス番号を生成する。
@@ -154,133 +310,448 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 		return seqnum.get();
 	}
 
+	/**
+	 * (追加要素)
+	 * シーケンス番号の生成方法。
+	 * 既定ではすべてのスレッドが共通のカウンタを増やす。
+	 */
+	private SeqnumGenerator seqnums = new SeqnumGenerator(seqnum, Ordering.Global);
+
 	/**
 	 * このロガーのインスタンスを作成する。
 	 * @param outputDir 出力ファイルのディレクトリを指定する。
 	 * @param bufferSize バッファーのサイズを指定します（準全知デバッグではk）。
-	 * @param limit_capacity バッファ全体での許容量
+	 * budgetを指定しない場合は、バッファ全体で保存するイベント数の許容量も兼ねる。
+	 * @param trimSize 一度のトリムで削除するイベント数
+	 * @param budget バッファ全体で使用するバイト数の許容量。0以下の場合はイベント数で管理する。
+	 * @param asyncTrim trueの場合、バックグラウンドのスレッドでトリムを行う。
+	 * 使用量が許容量を超えた場合だけ、イベントを記録したスレッドもトリムを行う。
 	 * @param keepObject バッファがJavaオブジェクトを保持する方法を指定します。 
 	 * @param outputJson ロガーがjsonフォーマットを使用するかどうかを指定します。
 	 */
-	public ProposedmethodLogger(File traceFile, int bufferSize, int trimSize, boolean show_bufferSize, PrometObjectRecordingStrategy keepObject, boolean outputJson, IErrorLogger errorLogger) {
+	public ProposedmethodLogger(File traceFile, int bufferSize, int trimSize, long budget, boolean asyncTrim, boolean show_bufferSize, PrometObjectRecordingStrategy keepObject, boolean outputJson, IErrorLogger errorLogger) {
 		super("Promet");
 		this.traceFile = traceFile;
 		this.bufferSize = bufferSize;
-		this.list_capacity = bufferSize;
+		this.byteBudget = budget > 0;
+		this.list_capacity = byteBudget ? budget : bufferSize;
 		this.trimSize = trimSize;
-		this.buffers = new ArrayList<>();
+		this.buffers = new DataIdTable<>();
 		this.keepObject = keepObject;
 		this.outputJson = outputJson;
 		this.logger = errorLogger;
 		this.maxBufferSize = bufferSize;
 		this.show_bufferSize = show_bufferSize;
+		this.statistics = new PrometTrimStatistics(bufferSize);
+		this.highWaterMark = (long)(list_capacity * HIGH_WATER_RATIO);
+		this.lowWaterMark = (long)(list_capacity * LOW_WATER_RATIO);
+		this.regrowMark = highWaterMark;
+		this.baseRegrowInterval = Math.max(MIN_REGROW_INTERVAL, bufferSize);
+		this.regrowInterval = baseRegrowInterval;
 
 		if (this.keepObject == PrometObjectRecordingStrategy.Id) {
 			objectIDs = new ObjectIdMap(65536);
 		}
+
+		if (asyncTrim) {
+			trimmer = new BackgroundTrimmer();
+			trimmer.start();
+		} else {
+			trimmer = null;
+		}
 	}
-	
+
 	/**
-	 * 記録されたトレースを保存する
+	 * 使用量が高水位を超えた場合に、低水位までトリムを行うスレッド。
+	 * 優先度の低いデーモンスレッドとして動作する。
 	 */
-	@Override
-	public synchronized void save(boolean resetTrace) {
-		saveCount++;
-		long t = System.currentTimeMillis();
-		File f = new File(traceFile.getAbsolutePath() + "." + Integer.toString(saveCount) + (outputJson? ".json": ".txt"));
-		try (PrintWriter w = new PrintWriter(new FileWriter(f))){
-			if (outputJson) {
-				saveJson(w);
-			} else {
-				saveText(w);
+	private class BackgroundTrimmer extends Thread {
+
+		/**
+		 * トリムが要求されているかどうか。
+		 * 要求済みの場合、記録を行うスレッドはスレッドを起こす処理を省略する。
+		 */
+		private volatile boolean requested;
+
+		public BackgroundTrimmer() {
+			super("SELogger-PrometTrimmer");
+			setDaemon(true);
+			setPriority(Thread.MIN_PRIORITY);
+		}
+
+		/**
+		 * トリムを要求する。記録を行うスレッドから呼び出す。
+		 */
+		public void request() {
+			if (!requested) {
+				requested = true;
+				LockSupport.unpark(this);
 			}
-		} catch (Throwable e) {
-			if (logger != null) logger.log(e);
 		}
-		if (logger != null) {
-			logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+
+		@Override
+		public void run() {
+			while (!closed) {
+				if (!requested) {
+					LockSupport.park(this);
+					continue;
+				}
+				requested = false;
+				if (event_count.get() > highWaterMark && trimming.compareAndSet(false, true)) {
+					try {
+						trimBuffers(lowWaterMark);
+					} finally {
+						trimming.set(false);
+					}
+				}
+			}
+		}
+
+		/**
+		 * スレッドを停止し、終了を待つ。
+		 */
+		public void shutdown() {
+			LockSupport.unpark(this);
+			try {
+				join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
-		buffers = null;
-		buffers = new ArrayList<>();
+	}
+	
+	/**
+	 * シーケンス番号の生成方法を変更する。
+	 * Blockでは各スレッドがシーケンス番号をまとめて予約するため、共通のカウンタでの競合が減る。
+	 * Noneではシーケンス番号を記録しない。バッファ内のイベントは記録順に並ぶ。
+	 * イベントの記録が始まる前(ウィービングの開始前)に呼び出すこと。
+	 * @param ordering シーケンス番号の生成方法
+	 */
+	public synchronized void setSeqnumOrdering(Ordering ordering) {
+		seqnums = new SeqnumGenerator(seqnum, ordering);
 	}
 
+	/**
+	 * 以前の実行のプロファイルから、イベント場所ごとのバッファサイズを割り当てる。
+	 * 許容量を発生回数に比例して配分し、割り当ての合計は許容量を超えない。
+	 * 許容量が残らなかったイベント場所は、プロファイルに含まれない場所と同じ扱いになる。
+	 * 割り当てのあるバッファは、そのサイズで作成されるため、起動直後のトリムを避けられる。
+	 * プロファイルに含まれないイベント場所は、通常通りmaxBufferSizeで作成する。
+	 * イベント場所が作成される前(ウィービングの開始前)に呼び出すこと。
+	 * @param profile 以前の実行のプロファイル
+	 */
+	public synchronized void setProfile(PrometProfile profile) {
+		long capacity = list_capacity;
+		if (byteBudget) {
+			// 値の型は分からないため、int型のイベントとしてイベント数に換算する
+			capacity = Math.max(0, list_capacity - (long)profile.size() * ProposedmethodBuffer.OVERHEAD_BYTES) / ProposedmethodBuffer.estimateEventBytes(int.class);
+		}
+		profileQuotas = profile.computeQuotas(capacity, bufferSize);
+		if (logger != null) {
+			logger.log("Promet profile: " + profileQuotas.size() + " locations");
+		}
+	}
 
+	/**
+	 * イベント場所の情報を受け取り、値のないイベントを記録し、プロファイルの割り当てをデータIDに対応付ける。
+	 */
+	@Override
+	public synchronized void onCreated(List<DataInfo> events) {
+		super.onCreated(events);
+		for (DataInfo d: events) {
+			if (d.getValueDesc() == Descriptor.Void) {
+				voidEvents.set(d.getDataId());
+			}
+		}
+		if (profileQuotas != null) {
+			for (DataInfo d: events) {
+				Integer q = profileQuotas.get(PrometProfile.getKey(d));
+				if (q != null) {
+					if (quotas.length <= d.getDataId()) {
+						quotas = Arrays.copyOf(quotas, Math.max(quotas.length * 2, d.getDataId() + 1));
+					}
+					quotas[d.getDataId()] = q;
+				}
+			}
+		}
+	}
 
 	/**
-	 * ロガーを閉じ、内容をファイル名「recentdata.txt 」に保存する。
+	 * 記録されたトレースを保存する。
+	 * resetTraceがtrueの場合、現在のバッファを切り離して新しい区間を開始してから書き込む。
+	 * 書き込みの間はロガーのロックを保持しないため、他のスレッドは新しい区間のイベントを記録できる。
+	 * resetTraceがfalseの場合は、記録を続けているバッファのスナップショットを書き込む。
 	 */
 	@Override
-	public synchronized void close() {
-		closed = true; 
-		if (objectIDs != null) {
-			objectIDs.close();
+	public void save(boolean resetTrace) {
+		synchronized (saveLock) {
+			DataIdTable<ProposedmethodBuffer> snapshot = resetTrace ? startInterval() : buffers;
+			saveCount++;
+			long t = System.currentTimeMillis();
+			File f = new File(traceFile.getAbsolutePath() + "." + Integer.toString(saveCount) + (outputJson? ".json": ".txt"));
+			try (PrintWriter w = new PrintWriter(new FileWriter(f))){
+				writeTrace(w, snapshot);
+			} catch (Throwable e) {
+				if (logger != null) logger.log(e);
+			}
+			if (logger != null) {
+				logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+			}
 		}
-		long t = System.currentTimeMillis();
-		try (PrintWriter w = new PrintWriter(new FileWriter(traceFile))){
+	}
+
+	/**
+	 * 現在のバッファを切り離し、使用量とバッファサイズの許容値を初期状態に戻す。
+	 * 切り離したバッファに後から追加されたイベントは、新しい区間の使用量に数えない。
+	 * トリムと同時に実行しないように、trimmingフラグを獲得してから状態を変更する。
+	 * @return 切り離したバッファ
+	 */
+	private synchronized DataIdTable<ProposedmethodBuffer> startInterval() {
+		while (!trimming.compareAndSet(false, true)) {
+			Thread.yield();
+		}
+		try {
+			DataIdTable<ProposedmethodBuffer> old = buffers;
+			buffers = new DataIdTable<>();
+			old.forEach(ProposedmethodBuffer::retire);
+			resizedBuffers.clear();
+			bufferIndex.clear();
+			event_count.set(0);
+			maxBufferSize = bufferSize;
+			lastBudgetChange = statistics.getRecordedEvents();
+			regrowInterval = baseRegrowInterval;
+			regrown = false;
+			statistics.startInterval(bufferSize);
+			return old;
+		} finally {
+			trimming.set(false);
+		}
+	}
+
+	/**
+	 * 指定したバッファの内容を書き込む。saveLockを獲得したスレッドだけが呼び出す。
+	 * @param w 出力先
+	 * @param table 書き込むバッファ
+	 */
+	private void writeTrace(PrintWriter w, DataIdTable<ProposedmethodBuffer> table) {
+		outputBuffers = table;
+		try {
 			if (outputJson) {
 				saveJson(w);
 			} else {
 				saveText(w);
 			}
-		} catch (Throwable e) {
-			if (logger != null) logger.log(e);
-		}
-		if (logger != null) {
-			logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+		} finally {
+			outputBuffers = null;
 		}
-		if(show_bufferSize){
-			System.out.println("Final maxBufferSize: " + maxBufferSize);
-			System.out.println("Final eventCount: " + event_count);
-			System.out.println("decre_buffer: " + decre_buffer);
-			System.out.println("trim_count: " + trim_count);
-			System.out.println("add_data_count: " + put_data_count);
+	}
+
+
+
+	/**
+	 * ロガーを閉じ、内容をファイル名「recentdata.txt 」に保存する。
+	 * saveと同じくsaveLockで直列化し、ロガーのロックは保持しない。
+	 */
+	@Override
+	public void close() {
+		synchronized (saveLock) {
+			closed = true; 
+			if (trimmer != null) {
+				trimmer.shutdown();
+			}
+			if (objectIDs != null) {
+				objectIDs.close();
+			}
+			long t = System.currentTimeMillis();
+			try (PrintWriter w = new PrintWriter(new FileWriter(traceFile))){
+				writeTrace(w, buffers);
+			} catch (Throwable e) {
+				if (logger != null) logger.log(e);
+			}
+			if (logger != null) {
+				logger.log(Long.toString(System.currentTimeMillis() - t) + "ms used to save a trace");
+			}
+			if (logger != null) {
+				logger.log("Promet trim statistics: " + getUsageLabel() + ", " + statistics.toString());
+			}
+			if(show_bufferSize){
+				System.out.println("Final " + getUsageLabel() + ", " + statistics.toString());
+			}
 		}
 	}
+
+	/**
+	 * @return 現在の使用量を表す文字列
+	 */
+	private String getUsageLabel() {
+		return (byteBudget ? "usedBytes=" : "eventCount=") + event_count.get();
+	}
+
+	/**
+	 * @return 現在の使用量。budgetを指定した場合はバイト数、そうでなければイベント数。
+	 */
+	public long getUsage() {
+		return event_count.get();
+	}
+
+	/**
+	 * @return トリムの統計情報
+	 */
+	public PrometTrimStatistics getStatistics() {
+		return statistics;
+	}
+
 		
 	/**
 	 * バッファが存在しない場合、このメソッドは特定のデータIDのバッファを作成する。
+	 * 作成済みのバッファはロックを取得せずに返す。
 	 * @param type 値の型を指定する。
 	 * @param dataId データIDを指定します。
 	 * @return データIDのバッファを返す。
 	 */
-	protected synchronized ProposedmethodBuffer prepareBuffer(Class<?> type, int dataId) {
+	protected ProposedmethodBuffer prepareBuffer(Class<?> type, int dataId) {
+		ProposedmethodBuffer b = buffers.get(dataId);
+		if (b != null) return b;
+		return createBuffer(type, dataId);
+	}
+
+	/**
+	 * 特定のデータIDのバッファを作成する。
+	 * バッファの作成は各データIDで一度だけ発生するため、ロックを使用する。
+	 * @param type 値の型を指定する。
+	 * @param dataId データIDを指定します。
+	 * @return データIDのバッファを返す。
+	 */
+	private synchronized ProposedmethodBuffer createBuffer(Class<?> type, int dataId) {
 		if (!closed) {
 			try {
-				while (buffers.size() <= dataId) {
-					buffers.add(null);
-				}
-				ProposedmethodBuffer b = buffers.get(dataId);
+				DataIdTable<ProposedmethodBuffer> table = buffers;
+				ProposedmethodBuffer b = table.get(dataId);
 				if (b == null) {
-					b = new ProposedmethodBuffer(type, maxBufferSize, keepObject);
-					buffers.set(dataId, b);
+					// バッファは割り当ての上限で作成し、許容値が引き上げられた場合にそこまで拡大できるようにする
+					int size = bufferSize;
+					if (dataId < quotas.length && quotas[dataId] > 0) {
+						size = Math.min(size, quotas[dataId]);
+					}
+					b = ProposedmethodBuffer.create(voidEvents.get(dataId) ? void.class : type, size, keepObject, byteBudget ? event_count : null);
+					b.ensureSize(maxBufferSize);
+					table.set(dataId, b);
 				}
 				return b;
 			} catch (OutOfMemoryError e) {
 				// release the entire buffers
 				closed = true;
-				buffers = null;
-				buffers = new ArrayList<>();
+				buffers = new DataIdTable<>();
 				logger.log("OutOfMemoryError: Logger discarded internal buffers to continue the current execution.");
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * バッファに記録されたイベント数の増減を全体のイベント数に反映する。
+	 * イベント数が許容量を超えた場合、他のスレッドがトリムを実行していなければトリムを行う。
+	 * 他のスレッドがトリム中の場合は、そのスレッドに任せて待たずに戻る。
+	 * @param c イベントを記録したスレッドのコンテキスト
+	 * @param buffer イベントを記録したバッファ
+	 * @param delta バッファのイベント数の増減
+	 */
+	private void updateEventCount(ThreadContext c, ProposedmethodBuffer buffer, int delta) {
+		statistics.recordEvent();
+		// 部分トレースの保存で切り離されたバッファは、新しい区間の使用量に含めない
+		if (buffer.isRetired()) return;
+		long count;
+		if (delta != 0) {
+			// 負の増減は、許容値に合わせてバッファが古いイベントを削除したことを表す
+			if (delta < 0) statistics.evict(-delta);
+			// バイト数で管理する場合、使用量は配列を割り当てたバッファが更新済みである
+			count = byteBudget ? event_count.get() : event_count.addAndGet(delta);
+			// 同じバッファが重複して登録されても、インデックスへの反映は冪等である
+			if (!buffer.indexQueued) {
+				buffer.indexQueued = true;
+				resizedBuffers.add(buffer);
+			}
+		} else {
+			count = event_count.get();
+		}
+		if (count < regrowMark) {
+			if (maxBufferSize < bufferSize && isRegrowCheckDue(c)) regrowBufferSize();
+			return;
+		}
+		if (trimmer != null && count > highWaterMark) {
+			trimmer.request();
+		}
+		// バックグラウンドのトリムが追いつかない場合も、許容量を超えた時点でこのスレッドがトリムを行う
+		while (count > list_capacity && trimming.compareAndSet(false, true)) {
+			try {
+				if (trimmer != null) statistics.fallbackTrim();
+				if (!trimBuffers(list_capacity)) return;
+			} finally {
+				trimming.set(false);
+			}
+			// トリム中に他のスレッドが追加したイベントを確認する
+			count = event_count.get();
+		}
+	}
+
+	/**
+	 * @param c 現在のスレッドのコンテキスト
+	 * @return スレッドごとにREGROW_CHECK_INTERVAL回に1回だけtrue
+	 */
+	private static boolean isRegrowCheckDue(ThreadContext c) {
+		RegrowCountdown r = (RegrowCountdown)c.getLocal(REGROW_COUNTDOWN_INDEX);
+		if (r == null) {
+			r = new RegrowCountdown();
+			c.setLocal(REGROW_COUNTDOWN_INDEX, r);
+		}
+		if (--r.remaining > 0) return false;
+		r.remaining = REGROW_CHECK_INTERVAL;
+		return true;
+	}
+
+	/**
+	 * 前回の許容値の変更から十分な数のイベントが記録されていれば、バッファサイズの許容値をtrimSizeだけ引き上げる。
+	 * 使用量がregrowMarkを下回っている場合に、各スレッドからREGROW_CHECK_INTERVAL回に1回だけ呼び出される。
+	 * トリムと引き上げの間隔を空け、引き上げの直後にトリムが必要になった場合は間隔を広げることで、
+	 * 許容値が振動しないようにする。
+	 * 許容値の変更はtrimmingフラグを獲得したスレッドだけが行う。
+	 */
+	private void regrowBufferSize() {
+		long now = statistics.getRecordedEvents();
+		if (now - lastBudgetChange < regrowInterval) return;
+		if (trimming.compareAndSet(false, true)) {
+			try {
+				// 前回の引き上げ以降トリムが発生していなければ、間隔を初期値に戻す
+				if (regrown) regrowInterval = baseRegrowInterval;
+				regrown = true;
+				int newMaxBufferSize = Math.min(bufferSize, maxBufferSize + trimSize);
+				maxBufferSize = newMaxBufferSize;
+				lastBudgetChange = now;
+				statistics.regrowBudget(newMaxBufferSize);
+			} finally {
+				trimming.set(false);
+			}
+		}
+	}
+
 	/**
 	 * イベントと観測値を記録する。
 	 */
 	@Override
 	public void recordEvent(int dataId, boolean value) {
-    	ProposedmethodBuffer buffer = prepareBuffer(boolean.class, dataId);
-    	if (buffer != null) {
-        	event_count++;
-			put_data_count += 1;
-        	if (event_count > list_capacity) {
-				trimBuffers();
-        	}
-			event_count -= buffer.ensureSize(maxBufferSize);
-        	buffer.addBoolean(value, seqnum.getAndIncrement(), ThreadId.get());
-    	}
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, boolean value) {
+	    if (!c.isEnabled()) return;
+	    ProposedmethodBuffer buffer = prepareBuffer(boolean.class, dataId);
+	    if (buffer != null) {
+	        updateEventCount(c, buffer, buffer.addBoolean(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
+	    }
 	}
 	
 	/**
@@ -288,16 +759,19 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, byte value) {
-    	ProposedmethodBuffer buffer = prepareBuffer(byte.class, dataId);
-    	if (buffer != null) {
-    	    event_count++;
-			put_data_count += 1;
-    	    if (event_count > list_capacity) {
-            	trimBuffers();
-    	    }
-			event_count -= buffer.ensureSize(maxBufferSize);
-    	   	buffer.addByte(value, seqnum.getAndIncrement(), ThreadId.get());
-    	}
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, byte value) {
+	    if (!c.isEnabled()) return;
+	    ProposedmethodBuffer buffer = prepareBuffer(byte.class, dataId);
+	    if (buffer != null) {
+	        updateEventCount(c, buffer, buffer.addByte(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
+	    }
 	}
 	
 	/**
@@ -305,15 +779,18 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, char value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, char value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(char.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addChar(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addChar(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
 	}
 	
@@ -322,15 +799,18 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, double value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, double value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(double.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addDouble(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addDouble(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
 	}
 	
@@ -339,15 +819,18 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, float value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, float value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(float.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addFloat(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addFloat(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
 	}
 	
@@ -356,15 +839,18 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, int value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, int value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(int.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addInt(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addInt(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
 	}
 	
@@ -373,15 +859,18 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, long value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, long value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(long.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addLong(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addLong(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
 	}
 	
@@ -389,29 +878,26 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 * イベントと観測値を記録する。
 	 */
 	@Override
-	public synchronized void recordEvent(int dataId, Object value) {
+	public void recordEvent(int dataId, Object value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, Object value) {
+	    if (!c.isEnabled()) return;
 	    if (keepObject == PrometObjectRecordingStrategy.Id) {
 	        ProposedmethodBuffer b = prepareBuffer(ObjectId.class, dataId);
 	        if (b != null) {
 	            ObjectId id = objectIDs.getObjectId(value);
-	            event_count++;
-				put_data_count += 1;
-	            if (event_count > list_capacity) {
-            		trimBuffers();
-	            }
-				event_count -= b.ensureSize(maxBufferSize);
-	            b.addObjectId(id, seqnum.getAndIncrement(), ThreadId.get());
+	            updateEventCount(c, b, b.addObjectId(id, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	        }				
 	    } else {
 	        ProposedmethodBuffer b = prepareBuffer(Object.class, dataId);
 	        if (b != null) {
-	            event_count++;
-				put_data_count += 1;
-	            if (event_count > list_capacity) {
-            		trimBuffers();
-	            }
-				event_count -= b.ensureSize(maxBufferSize);
-	            b.addObject(value, seqnum.getAndIncrement(), ThreadId.get());
+	            updateEventCount(c, b, b.addObject(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	        }
 	    }
 	}
@@ -421,82 +907,93 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	public void recordEvent(int dataId, short value) {
+	    recordEvent(ThreadContext.get(), dataId, value);
+	}
+
+	/**
+	 * スレッドのコンテキストを用いて、イベントと観測値を記録する。
+	 */
+	@Override
+	public void recordEvent(ThreadContext c, int dataId, short value) {
+	    if (!c.isEnabled()) return;
 	    ProposedmethodBuffer buffer = prepareBuffer(short.class, dataId);
 	    if (buffer != null) {
-	        event_count++;
-			put_data_count += 1;
-	        if (event_count > list_capacity) {
-            	trimBuffers();
-	        }
-			event_count -= buffer.ensureSize(maxBufferSize);
-	        buffer.addShort(value, seqnum.getAndIncrement(), ThreadId.get());
+	        updateEventCount(c, buffer, buffer.addShort(value, seqnums.next(c), c.getThreadId(), maxBufferSize));
 	    }
-	}	
-
+	}
+	
 	/**
-	 * イベント数が許容量を超えた場合にトリム(削除)を行う
+	 * 使用量が目標値以下になるまでトリム(削除)を行う。
+	 * このメソッドはtrimmingフラグを獲得したスレッドだけが実行する。
+	 * 他のスレッドは並行してイベントを追加するため、イベント数は各バッファが返す実際の削除数で更新する。
+	 * 削除対象のバッファはbufferIndexから取得するため、全バッファを走査しない。
+	 * 許容量がバイト数の場合も、削除対象はイベント数の大きいバッファから選ぶ。
+	 * その場合の使用量は、イベントの削除によってバッファが配列を縮小した時点で減る。
+	 * @param target 使用量の目標値
+	 * @return 使用量が目標値以下になった場合はtrue。
+	 * バッファサイズの許容値が1になっても目標値を超えている場合はfalse。
 	 */
-	private void trimBuffers() {
-		System.out.println("Start Trim!(eventCount:" + event_count +")");
-		while (event_count > list_capacity) {
-			maxBufferSize -= trimSize;
-			if(maxBufferSize <= 0) maxBufferSize = 1;
-			System.out.println("Set Max Buffer Size:" + maxBufferSize);
-			decre_buffer += 1;
-
-			max_buffers = new ArrayList<>();
-			int max_count = 0;
-			for (ProposedmethodBuffer buffer : buffers) {
-				if (buffer == null) {
-					continue; // null の場合はスキップ
-				}
-				if (buffer.size() == max_count) {
-					max_buffers.add(buffer);
-				}
-				if (buffer.size() > max_count) {
-					max_buffers.clear();
-					max_buffers.add(buffer);
-					max_count = buffer.size();
-				}
+	private boolean trimBuffers(long target) {
+		statistics.startTrim();
+		while (event_count.get() > target) {
+			updateBufferIndex();
+			int newMaxBufferSize = maxBufferSize - trimSize;
+			if (newMaxBufferSize <= 0) newMaxBufferSize = 1;
+			maxBufferSize = newMaxBufferSize;
+			lastBudgetChange = statistics.getRecordedEvents();
+			if (regrown) {
+				// 引き上げた許容値を維持できなかったため、次の引き上げまでの間隔を広げる
+				regrown = false;
+				regrowInterval = Math.min(regrowInterval * 2, baseRegrowInterval * MAX_REGROW_BACKOFF);
 			}
+			statistics.changeBudget(newMaxBufferSize);
 
-			for (ProposedmethodBuffer buffer : max_buffers) {
-				int trimAmount = Math.min(trimSize, buffer.size());
-				System.out.println("Trim Buffer Size:" + buffer.size() +"(max_trim)");
-				buffer.trimOldEvents(trimAmount);
-				trim_count += 1;
-				event_count -= trimAmount;
-
-				System.out.println("Trim Data Amount:" + trimAmount);
+			int max_count = bufferIndex.getLargestSize();
+			if (max_count > 0) {
+				for (ProposedmethodBuffer buffer : bufferIndex.getBuffers(max_count)) {
+					int trimmed = buffer.trimOldEvents(trimSize);
+					bufferIndex.update(buffer, buffer.size());
+					statistics.trimBuffer(trimmed);
+					if (!byteBudget) event_count.addAndGet(-trimmed);
+				}
 			}
 
-			if (event_count <= list_capacity) {
-				System.out.println("End Trim!(eventCount:" + event_count + ")");
-				return; // 必要なトリム量を満たしたら終了
+			if (event_count.get() <= target) {
+				return true; // 必要なトリム量を満たしたら終了
 			}
 
-			for (ProposedmethodBuffer buffer : buffers) {
-				if (buffer == null) {
-					continue; // null の場合はスキップ
-				}
-				if (buffer.size() > maxBufferSize) {
-					int trimAmount = buffer.size() - maxBufferSize;
-					System.out.println("Trim Buffer :" + buffer.size() + "(limit_trim)");
-					buffer.trimOldEvents(trimAmount);
-					trim_count += 1;
-					event_count -= trimAmount;
-
-					System.out.println("Trim Data Amount:" + trimAmount);
-
-					if (event_count <= list_capacity) {
-						System.out.println("End Trim!(eventCount:" + event_count + ")");
-						return; // 必要なトリム量を満たしたら終了
+			// 許容値を超えるバッファだけを大きいものから順に縮める
+			for (int size = bufferIndex.getLargestSize(); size > newMaxBufferSize; size = bufferIndex.getLargestSize()) {
+				for (ProposedmethodBuffer buffer : bufferIndex.getBuffers(size)) {
+					int trimmed = buffer.ensureSize(newMaxBufferSize);
+					bufferIndex.update(buffer, buffer.size());
+					if (trimmed > 0) {
+						statistics.trimBuffer(trimmed);
+						if (!byteBudget) event_count.addAndGet(-trimmed);
+					}
+					// バイト数で管理する場合は、イベントを削除しなくても配列の縮小で使用量が減ることがある
+					if (event_count.get() <= target) {
+						return true; // 必要なトリム量を満たしたら終了
 					}
 				}
 			}
 
-			if(maxBufferSize == 1) break;
+			if (newMaxBufferSize == 1) return false;
+
+		}
+		return true;
+	}
 
+	/**
+	 * 前回の呼び出し以降にサイズが変化したバッファをbufferIndexに反映する。
+	 * フラグを戻してからサイズを読むため、その後に変化したバッファは再びキューに登録される。
+	 */
+	private void updateBufferIndex() {
+		ProposedmethodBuffer buffer;
+		while ((buffer = resizedBuffers.poll()) != null) {
+			buffer.indexQueued = false;
+			if (buffer.isRetired()) continue;
+			bufferIndex.update(buffer, buffer.size());
 		}
 	}
 	
@@ -505,7 +1002,15 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected boolean isRecorded(int dataid) {
-		return dataid < buffers.size() && buffers.get(dataid) != null;
+		return outputBuffers.get(dataid) != null;
+	}
+
+	/**
+	 * トリムの統計情報をJSONのフッターに書き込む
+	 */
+	@Override
+	protected void writeFooter(JsonBuffer buf) {
+		statistics.writeJson(buf);
 	}
 
 	/**
@@ -513,7 +1018,7 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected void writeAttributes(JsonBuffer buf, DataInfo d) {
-		ProposedmethodBuffer b = buffers.get(d.getDataId());
+		ProposedmethodBuffer b = outputBuffers.get(d.getDataId());
 		if (b != null) {
 			b.writeJson(buf, d.getValueDesc() == Descriptor.Void);
 		}
@@ -532,7 +1037,7 @@ public class ProposedmethodLogger extends AbstractEventLogger implements IEventL
 	 */
 	@Override
 	protected void writeAttributes(StringBuilder builder, DataInfo d) {
-		ProposedmethodBuffer b = buffers.get(d.getDataId());
+		ProposedmethodBuffer b = outputBuffers.get(d.getDataId());
 		if (b != null) {
 			builder.append(b.toString());
 		} else {
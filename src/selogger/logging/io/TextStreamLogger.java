@@ -10,7 +10,7 @@ import selogger.logging.IErrorLogger;
 import selogger.logging.IEventLogger;
 import selogger.logging.util.FileNameGenerator;
 import selogger.logging.util.ObjectIdFile;
-import selogger.logging.util.ThreadId;
+import selogger.logging.util.ThreadContext;
 import selogger.logging.util.TypeIdMap;
 import selogger.logging.util.ObjectIdFile.ExceptionRecording;
 
@@ -81,29 +81,33 @@ public class TextStreamLogger implements IEventLogger {
 	 * @param dataId specifies an event and its bytecode location.
 	 * @param value specifies a data value observed in the event.
 	 */
-	private synchronized void write(int dataId, String value) {
-		if (out != null) {
-			try {
-				if (count >= MAX_EVENTS_PER_FILE) {
-					out.close();
-					out = new PrintWriter(new BufferedWriter(new FileWriter(files.getNextFile()), 1024*1024));
-					count = 0;
+	private void write(int dataId, String value) {
+		ThreadContext c = ThreadContext.get();
+		if (!c.isEnabled()) return;
+		synchronized (this) {
+			if (out != null) {
+				try {
+					if (count >= MAX_EVENTS_PER_FILE) {
+						out.close();
+						out = new PrintWriter(new BufferedWriter(new FileWriter(files.getNextFile()), 1024*1024));
+						count = 0;
+					}
+					StringBuilder builder = new StringBuilder(64);
+					builder.append(seqnum);
+					builder.append(",");
+					builder.append(dataId);
+					builder.append(",");
+					builder.append(c.getThreadId());
+					builder.append(",");
+					builder.append(value);
+					builder.append("\n");
+					out.write(builder.toString());
+					count++;
+					seqnum++;
+				} catch (IOException e) {
+					out = null;
+					err.log(e);
 				}
-				StringBuilder builder = new StringBuilder(64);
-				builder.append(seqnum);
-				builder.append(",");
-				builder.append(dataId);
-				builder.append(",");
-				builder.append(ThreadId.get());
-				builder.append(",");
-				builder.append(value);
-				builder.append("\n");
-				out.write(builder.toString());
-				count++;
-				seqnum++;
-			} catch (IOException e) {
-				out = null;
-				err.log(e);
 			}
 		}
 	}
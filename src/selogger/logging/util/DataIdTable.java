@@ -0,0 +1,147 @@
+package selogger.logging.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A table to associate an object (e.g. a buffer or a counter) with each data ID.
+ * The table consists of fixed-size pages, so that extending the table
+ * allocates only a new page and a small directory of pages.
+ * A page is allocated only for a range of data IDs actually used.
+ * Threads can look up the table without a lock.
+ * @param <T> is the type of objects stored in the table.
+ */
+public class DataIdTable<T> {
+
+	/**
+	 * The number of bits of a data ID to specify an element in a page
+	 */
+	private static final int PAGE_BITS = 10;
+
+	/**
+	 * The number of elements in a page
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * The directory of pages.
+	 * The array is never modified after it is published;
+	 * adding a page replaces the whole array.
+	 */
+	private volatile AtomicReferenceArray<?>[] pages;
+
+	/**
+	 * Create an empty table.
+	 */
+	public DataIdTable() {
+		pages = new AtomicReferenceArray<?>[0];
+	}
+
+	/**
+	 * @param dataId specifies an element.
+	 * @return the page including the element, or null if the page does not exist.
+	 */
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<T> getPage(int dataId) {
+		AtomicReferenceArray<?>[] dir = pages;
+		int p = dataId >>> PAGE_BITS;
+		if (p < dir.length) {
+			return (AtomicReferenceArray<T>)dir[p];
+		}
+		return null;
+	}
+
+	/**
+	 * @param dataId specifies an element.
+	 * @return the page including the element.  The page is created if it does not exist.
+	 */
+	@SuppressWarnings("unchecked")
+	private synchronized AtomicReferenceArray<T> preparePage(int dataId) {
+		AtomicReferenceArray<?>[] dir = pages;
+		int p = dataId >>> PAGE_BITS;
+		if (p < dir.length && dir[p] != null) {
+			return (AtomicReferenceArray<T>)dir[p];
+		}
+		AtomicReferenceArray<?>[] newDir = Arrays.copyOf(dir, Math.max(dir.length, p + 1));
+		AtomicReferenceArray<T> page = new AtomicReferenceArray<>(PAGE_SIZE);
+		newDir[p] = page;
+		pages = newDir;
+		return page;
+	}
+
+	/**
+	 * @param dataId specifies an element.
+	 * @return the object associated with the data ID, or null if no object is stored.
+	 */
+	public T get(int dataId) {
+		AtomicReferenceArray<T> page = getPage(dataId);
+		if (page != null) {
+			return page.get(dataId & PAGE_MASK);
+		}
+		return null;
+	}
+
+	/**
+	 * Associate an object with a data ID.
+	 * @param dataId specifies an element.
+	 * @param value is the object to be stored.
+	 */
+	public void set(int dataId, T value) {
+		AtomicReferenceArray<T> page = getPage(dataId);
+		if (page == null) {
+			page = preparePage(dataId);
+		}
+		page.set(dataId & PAGE_MASK, value);
+	}
+
+	/**
+	 * Return the object associated with a data ID.
+	 * If no object is stored, this method creates an object using a given function.
+	 * The function is called at most once for each data ID.
+	 * @param dataId specifies an element.
+	 * @param factory creates an object for the data ID.
+	 * @return the object associated with the data ID.
+	 */
+	public T computeIfAbsent(int dataId, IntFunction<? extends T> factory) {
+		T value = get(dataId);
+		if (value != null) return value;
+		synchronized (this) {
+			value = get(dataId);
+			if (value == null) {
+				value = factory.apply(dataId);
+				set(dataId, value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * @return an upper bound of data IDs stored in this table.
+	 * All the stored data IDs are less than this value.
+	 */
+	public int length() {
+		return pages.length << PAGE_BITS;
+	}
+
+	/**
+	 * Apply an action to all the objects stored in this table.
+	 * The objects are visited in the order of data IDs.
+	 * @param action is applied to each non-null object.
+	 */
+	public void forEach(Consumer<? super T> action) {
+		AtomicReferenceArray<?>[] dir = pages;
+		for (int p=0; p<dir.length; p++) {
+			if (dir[p] == null) continue;
+			@SuppressWarnings("unchecked")
+			AtomicReferenceArray<T> page = (AtomicReferenceArray<T>)dir[p];
+			for (int i=0; i<PAGE_SIZE; i++) {
+				T value = page.get(i);
+				if (value != null) action.accept(value);
+			}
+		}
+	}
+}
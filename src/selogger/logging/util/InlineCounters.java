@@ -0,0 +1,76 @@
+package selogger.logging.util;
+
+import java.util.Arrays;
+
+/**
+ * Event counters directly incremented by woven code.
+ * The weaver generates instructions to increment pages[dataId / PAGE_SIZE][dataId % PAGE_SIZE]
+ * instead of calling the Logging class.
+ * A page must be prepared before a woven class including the data IDs is executed.
+ * The counters are shared by threads without synchronization;
+ * a count may be lost if multiple threads execute the same location at the same time.
+ */
+public class InlineCounters {
+
+	/**
+	 * The number of bits of a data ID to specify an element in a page
+	 */
+	public static final int PAGE_BITS = 10;
+
+	/**
+	 * The number of counters in a page
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	public static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	/**
+	 * The directory of pages.  Woven code loads this field at the beginning of a method.
+	 * Adding a page replaces the whole array, but existing pages are kept.
+	 */
+	public static volatile long[][] pages = new long[0][];
+
+	/**
+	 * Allocate pages for new data IDs and clear their counters.
+	 * The counters are cleared because the same data IDs may be 
+	 * assigned again when classes are woven by another weaver (e.g. in tests).
+	 * @param firstDataId is the smallest data ID of a woven class.
+	 * @param lastDataId is the largest data ID of a woven class.
+	 */
+	public static synchronized void prepare(int firstDataId, int lastDataId) {
+		int p = lastDataId >>> PAGE_BITS;
+		long[][] dir = pages;
+		if (p >= dir.length) {
+			long[][] newDir = Arrays.copyOf(dir, p + 1);
+			for (int i=dir.length; i<newDir.length; i++) {
+				newDir[i] = new long[PAGE_SIZE];
+			}
+			pages = newDir;
+			dir = newDir;
+		}
+		for (int id=firstDataId; id<=lastDataId; id++) {
+			dir[id >>> PAGE_BITS][id & PAGE_MASK] = 0;
+		}
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return the number of occurrences of the event.
+	 */
+	public static long get(int dataId) {
+		long[][] dir = pages;
+		int p = dataId >>> PAGE_BITS;
+		if (p < dir.length) {
+			return dir[p][dataId & PAGE_MASK];
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the number of data IDs that may have counters.
+	 */
+	public static int length() {
+		return pages.length * PAGE_SIZE;
+	}
+
+}
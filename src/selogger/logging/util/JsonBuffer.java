@@ -94,7 +94,21 @@ public class JsonBuffer implements AttrProc {
 		buf.append(value);
 		needSeparator = true;
 	}
-	
+
+	/**
+	 * Write a field name and its boolean value
+	 * @param key specifies a field name
+	 * @param value
+	 */
+	public void writeBooleanField(String key, boolean value) {
+		if (needSeparator) buf.append(",");
+		buf.append("\"");
+		buf.append(key);
+		buf.append("\":");
+		buf.append(value);
+		needSeparator = true;
+	}
+
 	/**
 	 * Write a field name whose value is an array.
 	 * After writing values, writeEndArray is needed.
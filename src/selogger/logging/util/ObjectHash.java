@@ -0,0 +1,74 @@
+package selogger.logging.util;
+
+import java.util.ArrayList;
+
+/**
+ * A class to represent an object by a long value without a reference to the object.
+ * The upper 32 bits are a class ID assigned by this class, and
+ * the lower 32 bits are the identity hash code of the object.
+ * Identity hash codes are not unique, but they are sufficient to
+ * correlate the same object across event locations in most cases.
+ */
+public class ObjectHash {
+
+	/**
+	 * The value representing null
+	 */
+	public static final long NULL = -1L;
+
+	/**
+	 * Class names indexed by class IDs
+	 */
+	private static final ArrayList<String> classNames = new ArrayList<>();
+
+	/**
+	 * A class ID for each class.  ClassValue does not keep classes from unloading.
+	 */
+	private static final ClassValue<Integer> classIds = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			synchronized (classNames) {
+				classNames.add(type.getName());
+				return classNames.size() - 1;
+			}
+		}
+	};
+
+	/**
+	 * @param value is an object to be recorded.
+	 * @return a value representing the class and identity hash code of the object.
+	 */
+	public static long of(Object value) {
+		if (value == null) return NULL;
+		long classId = classIds.get(value.getClass());
+		return (classId << 32) | (System.identityHashCode(value) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param type is a class.
+	 * @return the class name registered in the table of this class.
+	 * The same String object is returned for the same class.
+	 */
+	public static String getClassName(Class<?> type) {
+		return getClassName((long)classIds.get(type) << 32);
+	}
+
+	/**
+	 * @param hash is a value returned by the of method.
+	 * @return the class name of the object.
+	 */
+	public static String getClassName(long hash) {
+		synchronized (classNames) {
+			return classNames.get((int)(hash >>> 32));
+		}
+	}
+
+	/**
+	 * @param hash is a value returned by the of method.
+	 * @return the identity hash code of the object in a hexadecimal format.
+	 */
+	public static String getId(long hash) {
+		return Integer.toHexString((int)hash);
+	}
+
+}
@@ -50,7 +50,15 @@ public class ObjectIdMap {
 		if (o == null) {
 			return 0L;
 		} 
+		return getEntry(o).objectId;
+	}
 
+	/**
+	 * Find an entry for an object.  A new entry is created if not found.
+	 * @param o is a non-null object.
+	 * @return the entry of the object.
+	 */
+	private Entry getEntry(Object o) {
 		int hash = System.identityHashCode(o);
 		
 		// Search the object.  If found, return the registered ID.
@@ -58,7 +66,7 @@ public class ObjectIdMap {
         Entry e = entries[index];
         while (e != null) {
             if (o == e.reference.get()) {
-            	return e.objectId;
+            	return e;
             }
             e = e.next;
         }
@@ -80,7 +88,7 @@ public class ObjectIdMap {
         if (size >= threshold) {
         	resize();
         }
-        return id;
+        return e;
 	}
  
 	/**
@@ -160,21 +168,31 @@ public class ObjectIdMap {
 	}
 	
 	/**
-	 * Create a string representation for an object ID
+	 * Create a string representation for an object ID.
+	 * The ObjectId is created when the object is first given to this method, 
+	 * and then reused for the same object.  A Throwable object is 
+	 * represented by the message at that time.
+	 * A String object is not cached, since its ObjectId refers to the String 
+	 * and keeps it from garbage collection.
 	 * @param value specifies an object
-	 * @return
+	 * @return an ObjectId object.  null is returned for null.
 	 */
-	public ObjectId getObjectId(Object value) {
+	public synchronized ObjectId getObjectId(Object value) {
 		if (value == null) return null;
-		long id = this.getId(value);
-		String typeName = value.getClass().getName();
-		String content = null;
+		Entry e = getEntry(value);
+		if (e.descriptor != null) {
+			return e.descriptor;
+		}
+		String typeName = ObjectHash.getClassName(value.getClass());
 		if (value instanceof String) {
-			content = (String)value;
-		} else if (value instanceof Throwable) {
+			return new ObjectId(e.objectId, typeName, (String)value);
+		}
+		String content = null;
+		if (value instanceof Throwable) {
 			content = ((Throwable)value).getMessage();
 		}
-		return new ObjectId(id, typeName, content);
+		e.descriptor = new ObjectId(e.objectId, typeName, content);
+		return e.descriptor;
 	}
 
 
@@ -188,6 +206,11 @@ public class ObjectIdMap {
 		private long objectId;
 		private Entry next;
 		
+		/**
+		 * A cached ObjectId for getObjectId
+		 */
+		private ObjectId descriptor;
+		
 		public Entry(Object o, long id, Entry e, int hashcode) {
 			this.reference = new WeakReference<Object>(o);
 			this.objectId = id;
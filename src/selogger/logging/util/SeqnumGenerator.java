@@ -0,0 +1,97 @@
+package selogger.logging.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class to generate sequence numbers representing the order of events.
+ * The Global ordering increments a shared counter for each event.
+ * The Block ordering reduces the contention on the counter;
+ * each thread reserves a block of sequence numbers and uses them for its events.
+ * The None ordering records no sequence numbers.
+ */
+public class SeqnumGenerator {
+
+	/**
+	 * Enum object to specify how to generate sequence numbers
+	 */
+	public enum Ordering {
+		/**
+		 * Sequence numbers represent the total order of events.
+		 * All threads increment the same counter.
+		 */
+		Global,
+		/**
+		 * Sequence numbers are unique and increase in each thread.
+		 * Sequence numbers of different threads are ordered by the reservation of blocks,
+		 * so that the order of events in different threads is approximate.
+		 */
+		Block,
+		/**
+		 * All events have NONE as a sequence number.
+		 */
+		None
+	}
+
+	/**
+	 * The number of sequence numbers reserved by a thread at once
+	 */
+	public static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * The sequence number of an event if the ordering is None
+	 */
+	public static final long NONE = -1;
+
+	/**
+	 * The next sequence number to be used or reserved
+	 */
+	private final AtomicLong counter;
+
+	private final Ordering ordering;
+
+	/**
+	 * Create a generator.
+	 * @param counter is shared by generators to generate unique numbers.
+	 * @param ordering specifies how to generate sequence numbers.
+	 */
+	public SeqnumGenerator(AtomicLong counter, Ordering ordering) {
+		this.counter = counter;
+		this.ordering = ordering;
+	}
+
+	/**
+	 * @return the ordering of sequence numbers.
+	 */
+	public Ordering getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * @return a sequence number for a new event of the current thread.
+	 */
+	public long next() {
+		return next(ThreadContext.get());
+	}
+
+	/**
+	 * @param context is the context of the current thread.
+	 * The Block ordering keeps a reserved block in the context.
+	 * @return a sequence number for a new event.
+	 */
+	public long next(ThreadContext context) {
+		switch (ordering) {
+		case Global:
+			return counter.getAndIncrement();
+		case Block:
+			if (context.seqnumOwner != this || context.nextSeqnum == context.seqnumEnd) {
+				context.seqnumOwner = this;
+				context.nextSeqnum = counter.getAndAdd(BLOCK_SIZE);
+				context.seqnumEnd = context.nextSeqnum + BLOCK_SIZE;
+			}
+			return context.nextSeqnum++;
+		default:
+			return NONE;
+		}
+	}
+
+}
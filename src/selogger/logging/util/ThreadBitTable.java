@@ -0,0 +1,66 @@
+package selogger.logging.util;
+
+import java.util.BitSet;
+
+/**
+ * A table of bits representing whether each data ID has been observed.
+ * Each thread sets bits in its own pages stored in its ThreadContext,
+ * so that setting a bit requires neither a lock nor an atomic operation.
+ * The get method combines the bits of all threads.
+ */
+public class ThreadBitTable extends ThreadPageTable {
+
+	/**
+	 * The number of bits of a data ID to specify a bit in a page
+	 */
+	private static final int PAGE_BITS = 12;
+
+	/**
+	 * The number of data IDs in a page
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	public ThreadBitTable() {
+		super(PAGE_BITS, PAGE_SIZE / 64);
+	}
+
+	/**
+	 * Set the bit of a data ID for the current thread.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event.
+	 */
+	public void set(ThreadContext context, int dataId) {
+		long[] page = getPage(context, dataId);
+		int index = (dataId & PAGE_MASK) >>> 6;
+		long bit = 1L << dataId;
+		// Avoid writing to the memory once the bit is set
+		if ((page[index] & bit) == 0) {
+			page[index] |= bit;
+		}
+	}
+
+	/**
+	 * @return the bits set by any thread, indexed by data ID.
+	 * The bits may not reflect the bits being set by other threads.
+	 */
+	public BitSet getBits() {
+		return BitSet.valueOf(snapshot());
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return true if a thread has set the bit of the data ID.
+	 * The value may not reflect the bits being set by other threads.
+	 */
+	public boolean get(int dataId) {
+		return (read(dataId, (dataId & PAGE_MASK) >>> 6) & (1L << dataId)) != 0;
+	}
+
+	@Override
+	protected long combine(long v1, long v2) {
+		return v1 | v2;
+	}
+
+}
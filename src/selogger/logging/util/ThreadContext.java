@@ -0,0 +1,126 @@
+package selogger.logging.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A per-thread state shared by loggers.
+ * A logger obtains this object once for each event using a single
+ * ThreadLocal access, and then reads the thread ID, the reserved
+ * sequence numbers and the logger-specific data from the object.
+ * The fields are accessed only by the owner thread.
+ */
+public final class ThreadContext {
+
+	/**
+	 * An object to assign an integer for each thread.
+	 */
+	private static final AtomicInteger nextThreadId = new AtomicInteger(0);
+
+	/**
+	 * An object to assign an index of logger-specific data.
+	 */
+	private static final AtomicInteger nextLocalIndex = new AtomicInteger(0);
+
+	/**
+	 * This object keeps a context for each thread.
+	 */
+	private static final ThreadLocal<ThreadContext> contexts = ThreadLocal.withInitial(ThreadContext::new);
+
+	/**
+	 * @return the context of the current thread.
+	 */
+	public static ThreadContext get() {
+		return contexts.get();
+	}
+
+	/**
+	 * Allocate an index for logger-specific data.
+	 * A logger class should call this method once and keep the index in a static field.
+	 * Allocating an index for each logger instance extends the contexts of all threads,
+	 * and the data of closed loggers remain reachable from live threads.
+	 * If multiple instances share an index, the stored object should identify its owner instance.
+	 * @return an index for getLocal and setLocal.
+	 */
+	public static int newLocalIndex() {
+		return nextLocalIndex.getAndIncrement();
+	}
+
+	/**
+	 * A thread ID assigned by this class
+	 */
+	private final int threadId;
+
+	/**
+	 * If false, loggers ignore events of this thread
+	 */
+	private boolean enabled = true;
+
+	/**
+	 * The generator that reserved the current block of sequence numbers
+	 */
+	SeqnumGenerator seqnumOwner;
+
+	/**
+	 * The next sequence number in the reserved block
+	 */
+	long nextSeqnum;
+
+	/**
+	 * The end of the reserved block (exclusive)
+	 */
+	long seqnumEnd;
+
+	/**
+	 * Logger-specific data indexed by newLocalIndex
+	 */
+	private Object[] locals = new Object[0];
+
+	private ThreadContext() {
+		this.threadId = nextThreadId.getAndIncrement();
+	}
+
+	/**
+	 * @return a thread ID.  IDs are sequential numbers assigned in the order of the first events of threads.
+	 */
+	public int getThreadId() {
+		return threadId;
+	}
+
+	/**
+	 * @return true if events of this thread should be recorded.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enable or disable recording of events in this thread.
+	 * For example, a thread of a tool may exclude its own events from a trace.
+	 * @param enabled specifies whether events are recorded.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @param index is obtained by newLocalIndex.
+	 * @return the object stored by setLocal, or null.
+	 */
+	public Object getLocal(int index) {
+		return index < locals.length ? locals[index] : null;
+	}
+
+	/**
+	 * Store a logger-specific object for this thread.
+	 * @param index is obtained by newLocalIndex.
+	 * @param value is the object to be stored.
+	 */
+	public void setLocal(int index, Object value) {
+		if (index >= locals.length) {
+			locals = Arrays.copyOf(locals, Math.max(index + 1, nextLocalIndex.get()));
+		}
+		locals[index] = value;
+	}
+
+}
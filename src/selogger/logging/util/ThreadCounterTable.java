@@ -0,0 +1,59 @@
+package selogger.logging.util;
+
+/**
+ * A table of event counters for data IDs.
+ * Each thread increments its own counters stored in its ThreadContext,
+ * so that a hot data ID does not share a cache line among threads.
+ * The get method sums up the counters of all threads.
+ */
+public class ThreadCounterTable extends ThreadPageTable {
+
+	/**
+	 * The number of bits of a data ID to specify an element in a page
+	 */
+	private static final int PAGE_BITS = 10;
+
+	/**
+	 * The number of counters in a page
+	 */
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	public ThreadCounterTable() {
+		super(PAGE_BITS, PAGE_SIZE);
+	}
+
+	/**
+	 * Increment the counter of a data ID for the current thread.
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies an event.
+	 */
+	public void increment(ThreadContext context, int dataId) {
+		getPage(context, dataId)[dataId & PAGE_MASK]++;
+	}
+
+	/**
+	 * @return the sums of the counters of all threads, indexed by data ID.
+	 * The length of the array may be shorter or longer than the number of data IDs.
+	 * The values may not include increments being performed by other threads.
+	 */
+	public long[] getCounts() {
+		return snapshot();
+	}
+
+	/**
+	 * @param dataId specifies an event.
+	 * @return the sum of the counters of all threads.
+	 * The value may not include increments being performed by other threads.
+	 */
+	public long get(int dataId) {
+		return read(dataId, dataId & PAGE_MASK);
+	}
+
+	@Override
+	protected long combine(long v1, long v2) {
+		return v1 + v2;
+	}
+
+}
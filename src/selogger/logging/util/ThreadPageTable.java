@@ -0,0 +1,270 @@
+package selogger.logging.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A base class of tables storing long values for data IDs in per-thread pages.
+ * Each thread writes its own pages stored in its ThreadContext,
+ * so that writing a value requires neither a lock nor an atomic operation.
+ * A subclass defines how the values of threads are combined.
+ * The values of a terminated thread are combined into pages shared by
+ * terminated threads, so that a thread pool does not grow the table.
+ * A reader of many data IDs should take a snapshot, since
+ * reading a single data ID scans the pages of all threads under a lock.
+ */
+public abstract class ThreadPageTable {
+
+	/**
+	 * Pages of a thread.
+	 * Only the owner thread modifies the arrays.
+	 */
+	private static final class Pages {
+
+		/**
+		 * The table including this object
+		 */
+		private final ThreadPageTable table;
+
+		/**
+		 * The ID of the owner thread
+		 */
+		private final int threadId;
+
+		/**
+		 * The owner thread
+		 */
+		private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+
+		/**
+		 * The directory of pages.  A page is allocated when a data ID in the page is written.
+		 * The array is replaced when a page is added.
+		 */
+		private volatile long[][] pages = new long[0][];
+
+		private Pages(ThreadPageTable table, int threadId) {
+			this.table = table;
+			this.threadId = threadId;
+		}
+
+		/**
+		 * @return true if the owner thread may still write the pages.
+		 */
+		private boolean isAlive() {
+			Thread t = owner.get();
+			return t != null && t.isAlive();
+		}
+	}
+
+	/**
+	 * The index of Pages in ThreadContext.
+	 * The index is shared by all tables, so that creating a table does not extend
+	 * the context of every thread.  A thread keeps the Pages of the table it used last.
+	 */
+	private static final int CONTEXT_INDEX = ThreadContext.newLocalIndex();
+
+	private static final int MIN_FOLD_THRESHOLD = 16;
+
+	/**
+	 * The number of bits of a data ID to specify a page
+	 */
+	private final int pageBits;
+
+	/**
+	 * The length of a page array
+	 */
+	private final int pageLength;
+
+	/**
+	 * Pages of all threads
+	 */
+	private final ArrayList<Pages> threads = new ArrayList<>();
+
+	/**
+	 * The values of terminated threads
+	 */
+	private long[][] terminated = new long[0][];
+
+	/**
+	 * The number of threads that triggers folding terminated threads
+	 * when a new thread is registered
+	 */
+	private int foldThreshold = MIN_FOLD_THRESHOLD;
+
+	/**
+	 * @param pageBits specifies the number of data IDs in a page, i.e. 1 << pageBits.
+	 * @param pageLength specifies the length of a page array.
+	 */
+	protected ThreadPageTable(int pageBits, int pageLength) {
+		this.pageBits = pageBits;
+		this.pageLength = pageLength;
+	}
+
+	/**
+	 * Combine the values of two threads.
+	 * @param v1 is a value.
+	 * @param v2 is another value.
+	 * @return the combined value.
+	 */
+	protected abstract long combine(long v1, long v2);
+
+	/**
+	 * @param context is the context of the current thread.
+	 * @param dataId specifies a data ID.
+	 * @return the page of the current thread including the data ID.
+	 */
+	protected final long[] getPage(ThreadContext context, int dataId) {
+		Pages t = (Pages)context.getLocal(CONTEXT_INDEX);
+		if (t == null || t.table != this) {
+			t = getPages(context);
+			context.setLocal(CONTEXT_INDEX, t);
+		}
+		long[][] dir = t.pages;
+		int p = dataId >>> pageBits;
+		long[] page = p < dir.length ? dir[p] : null;
+		if (page == null) {
+			dir = Arrays.copyOf(dir, Math.max(dir.length, p + 1));
+			page = new long[pageLength];
+			dir[p] = page;
+			t.pages = dir;
+		}
+		return page;
+	}
+
+	/**
+	 * @param context is the context of the current thread.
+	 * @return the pages of the current thread in this table.
+	 * The existing object is returned if the thread has used another table in the meantime.
+	 */
+	private Pages getPages(ThreadContext context) {
+		synchronized (threads) {
+			for (Pages t: threads) {
+				if (t.threadId == context.getThreadId()) return t;
+			}
+			if (threads.size() >= foldThreshold) {
+				foldTerminatedThreads();
+				foldThreshold = Math.max(MIN_FOLD_THRESHOLD, threads.size() * 2);
+			}
+			Pages t = new Pages(this, context.getThreadId());
+			threads.add(t);
+			return t;
+		}
+	}
+
+	/**
+	 * @param dataId specifies a data ID.
+	 * @param index specifies an element of the page including the data ID.
+	 * @return the combined value of all threads.
+	 * The value may not reflect the values being written by other threads.
+	 */
+	protected final long read(int dataId, int index) {
+		int p = dataId >>> pageBits;
+		long value = 0;
+		synchronized (threads) {
+			if (p < terminated.length && terminated[p] != null) {
+				value = terminated[p][index];
+			}
+			for (Pages t: threads) {
+				long[][] dir = t.pages;
+				if (p < dir.length && dir[p] != null) {
+					value = combine(value, dir[p][index]);
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Combine the values of all threads.
+	 * The lock is held only to fold terminated threads and to collect the pages,
+	 * and the pages of live threads are combined without the lock.
+	 * @return the combined pages concatenated into an array.
+	 * The element of index i in page p is located at p * pageLength + i.
+	 * The values may not reflect the values being written by other threads.
+	 */
+	protected final long[] snapshot() {
+		long[] values;
+		ArrayList<long[][]> dirs;
+		synchronized (threads) {
+			foldTerminatedThreads();
+			int pages = terminated.length;
+			dirs = new ArrayList<>(threads.size());
+			for (Pages t: threads) {
+				long[][] dir = t.pages;
+				dirs.add(dir);
+				pages = Math.max(pages, dir.length);
+			}
+			// Terminated pages are copied here since a later fold modifies them
+			values = new long[pages * pageLength];
+			for (int p=0; p<terminated.length; p++) {
+				if (terminated[p] != null) {
+					System.arraycopy(terminated[p], 0, values, p * pageLength, pageLength);
+				}
+			}
+		}
+		for (long[][] dir: dirs) {
+			for (int p=0; p<dir.length; p++) {
+				long[] page = dir[p];
+				if (page == null) continue;
+				int base = p * pageLength;
+				for (int i=0; i<pageLength; i++) {
+					values[base + i] = combine(values[base + i], page[i]);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return the number of data IDs that may have values.
+	 */
+	public int length() {
+		int length;
+		synchronized (threads) {
+			length = terminated.length << pageBits;
+			for (Pages t: threads) {
+				length = Math.max(length, t.pages.length << pageBits);
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Move the values of terminated threads to the shared pages.
+	 * This method is called when a snapshot is taken or when the thread list grows.
+	 * The caller must hold the lock of the thread list.
+	 */
+	private void foldTerminatedThreads() {
+		for (Iterator<Pages> it = threads.iterator(); it.hasNext(); ) {
+			Pages t = it.next();
+			if (t.isAlive()) continue;
+			long[][] dir = t.pages;
+			if (terminated.length < dir.length) {
+				terminated = Arrays.copyOf(terminated, dir.length);
+			}
+			for (int p=0; p<dir.length; p++) {
+				if (dir[p] == null) continue;
+				if (terminated[p] == null) {
+					terminated[p] = dir[p];
+				} else {
+					for (int i=0; i<pageLength; i++) {
+						terminated[p][i] = combine(terminated[p][i], dir[p][i]);
+					}
+				}
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return the number of threads whose pages are separately kept.
+	 */
+	int getThreadCount() {
+		synchronized (threads) {
+			return threads.size();
+		}
+	}
+
+}
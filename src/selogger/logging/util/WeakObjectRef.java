@@ -0,0 +1,64 @@
+package selogger.logging.util;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * A weak reference shared by events recording the same object.
+ * The class name and the identity hash code are captured when the
+ * reference is created, so that a trace can show them after the
+ * object is garbage-collected.
+ *
+ * The of method looks up a small direct-mapped cache indexed by
+ * identity hash codes, so that consecutive events of an object
+ * reuse one reference instead of allocating a reference for each event.
+ * The cache is shared by threads without a lock;
+ * a lost update only causes another allocation.
+ */
+public final class WeakObjectRef extends WeakReference<Object> {
+
+	/**
+	 * The number of cache entries.  This must be a power of two.
+	 */
+	static final int CACHE_SIZE = 1 << 14;
+
+	private static final WeakObjectRef[] cache = new WeakObjectRef[CACHE_SIZE];
+
+	/**
+	 * @param value is an object to be recorded.  It must not be null.
+	 * @return a weak reference to the object.
+	 */
+	public static WeakObjectRef of(Object value) {
+		int hash = System.identityHashCode(value);
+		int index = hash & (CACHE_SIZE - 1);
+		WeakObjectRef ref = cache[index];
+		if (ref == null || ref.get() != value) {
+			ref = new WeakObjectRef(value, hash);
+			cache[index] = ref;
+		}
+		return ref;
+	}
+
+	private final String className;
+	private final int identityHash;
+
+	private WeakObjectRef(Object value, int identityHash) {
+		super(value);
+		this.className = value.getClass().getName();
+		this.identityHash = identityHash;
+	}
+
+	/**
+	 * @return the class name of the object.
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the identity hash code of the object in a hexadecimal format.
+	 */
+	public String getId() {
+		return Integer.toHexString(identityHash);
+	}
+
+}
@@ -0,0 +1,31 @@
+package selogger.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import selogger.logging.io.MappedEventArena;
+
+/**
+ * A main class to read a memory-mapped file written by the nearomni mode
+ * with the arena=mmap option, and print the latest events in a CSV format.
+ * The file is readable even if the JVM has been killed.
+ */
+public class MappedTracePrinter {
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.err.println("Usage: MappedTracePrinter trace.json.mmap");
+			return;
+		}
+		PrintWriter w = new PrintWriter(System.out);
+		try {
+			MappedEventArena.recover(new File(args[0]), w);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			w.flush();
+		}
+	}
+
+}
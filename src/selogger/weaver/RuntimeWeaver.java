@@ -15,6 +15,7 @@ import org.objectweb.asm.ClassReader;
 
 import selogger.logging.Logging;
 import selogger.logging.io.BinaryStreamLogger;
+import selogger.logging.io.CoverageLogger;
 import selogger.logging.io.DiscardLogger;
 import selogger.logging.io.EventFrequencyLogger;
 import selogger.logging.io.ExecuteBeforeLogger;
@@ -23,6 +24,7 @@ import selogger.logging.io.LatestEventLogger;
 import selogger.logging.io.TextStreamLogger;
 import selogger.logging.IEventLogger;
 
+import selogger.logging.io.PrometProfile;
 import selogger.logging.io.ProposedmethodLogger;
 
 /**
@@ -67,7 +69,7 @@ public class RuntimeWeaver implements ClassFileTransformer {
 	private long startTime;
 	
 
-	public enum Mode { BinaryStream, TextStream, Frequency, FixedSize, ExecuteBefore, Discard, Invalid, Promet };
+	public enum Mode { BinaryStream, TextStream, Frequency, Coverage, FixedSize, ExecuteBefore, Discard, Invalid, Promet };
 	
 	
 	private RuntimeWeaverParameters params;
@@ -85,6 +87,11 @@ public class RuntimeWeaver implements ClassFileTransformer {
 		logMessageFile = new LogMessageFile(params.getWeaverLogFile());
 		
 		WeaveConfig weaveConfig = new WeaveConfig(params.getWeaveOption());
+		// Inline counters bypass the logger and hence FilterLogger
+		Map<String, DataInfoPattern> targets = params.getLoggingTargetOptions();
+		boolean inlineCounters = (params.getMode() == Mode.Frequency || params.getMode() == Mode.Coverage) && params.isInlineCounterEnabled() &&
+				!(targets.get("logstart") != null && targets.get("logend") != null);
+		weaveConfig.setInlineCounters(inlineCounters);
 		if (weaveConfig.isValid()) {
 			weaver = new Weaver(params.getOutputDir(), logMessageFile, weaveConfig);
 			for (DataInfoPattern pattern: params.getLoggingTargetOptions().values()) {
@@ -95,15 +102,30 @@ public class RuntimeWeaver implements ClassFileTransformer {
 			logMessageFile.log("Selected File Format: " + params.getMode().toString());
 			switch (params.getMode()) {
 			case FixedSize:
-				logger = new LatestEventLogger(traceFile, params.getBufferSize(), params.getObjectRecordingStrategy(), params.isOutputJsonEnabled(), logMessageFile);
+				LatestEventLogger nearomni = new LatestEventLogger(traceFile, params.getBufferSize(), params.getObjectRecordingStrategy(), params.isOutputJsonEnabled(), params.getEventStorage(), params.getStripeCount(), logMessageFile);
+				nearomni.setSeqnumOrdering(params.getSeqnumOrdering());
+				logger = nearomni;
 				break;
 
 			case Promet:
-				logger = new ProposedmethodLogger(traceFile, params.getBufferSize(), params.getTrimSize(), params.getShowBufferSize(), params.getPrometObjectRecordingStrategy(), params.isOutputJsonEnabled(), logMessageFile);
+				ProposedmethodLogger promet = new ProposedmethodLogger(traceFile, params.getBufferSize(), params.getTrimSize(), params.getBudget(), params.isAsyncTrimEnabled(), params.getShowBufferSize(), params.getPrometObjectRecordingStrategy(), params.isOutputJsonEnabled(), logMessageFile);
+				promet.setSeqnumOrdering(params.getSeqnumOrdering());
+				if (params.getProfile() != null) {
+					try {
+						promet.setProfile(PrometProfile.load(params.getProfile()));
+					} catch (IOException e) {
+						logMessageFile.log(e);
+					}
+				}
+				logger = promet;
 				break;
 
 			case Frequency:
-				logger = new EventFrequencyLogger(traceFile, logMessageFile);
+				logger = new EventFrequencyLogger(traceFile, inlineCounters, logMessageFile);
+				break;
+
+			case Coverage:
+				logger = new CoverageLogger(traceFile, params.isOutputJsonEnabled(), inlineCounters, logMessageFile);
 				break;
 				
 			case BinaryStream:
@@ -10,9 +10,11 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import selogger.logging.io.FilterLogger.PartialSaveStrategy;
+import selogger.logging.io.LatestEventLogger.EventStorage;
 import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
 import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
 import selogger.logging.util.ObjectIdFile.ExceptionRecording;
+import selogger.logging.util.SeqnumGenerator.Ordering;
 import selogger.weaver.RuntimeWeaver.Mode;
 
 /**
@@ -48,6 +50,26 @@ public class RuntimeWeaverParameters {
 	 */
 	private int bufferSize = 32;
 
+	/**
+	 * Where nearomni events are stored
+	 */
+	private EventStorage eventStorage = EventStorage.Buffer;
+
+	/**
+	 * The number of stripes for a contended nearomni buffer.  0 disables stripes.
+	 */
+	private int stripeCount = 0;
+
+	/**
+	 * How sequence numbers are assigned to events in nearomni and promet modes
+	 */
+	private Ordering seqnumOrdering = Ordering.Global;
+
+	/**
+	 * If true, freq and coverage modes count events by inline instructions
+	 */
+	private boolean inlineCounters = false;
+
 	/**
 	 * Strategy to keep objects on memory
 	 */
@@ -120,6 +142,29 @@ public class RuntimeWeaverParameters {
 	 */
 	private boolean show_bufferSize = false;
 
+	/**
+	 * 追加要素：budget
+	 * prometモードでバッファ全体が使用するバイト数の許容量を設定する
+	 * 0の場合はsizeで指定したイベント数を許容量とする
+	 * デフォルトは0
+	 */
+	private long budget = 0;
+
+	/**
+	 * 追加要素：asynctrim
+	 * prometモードでバッファのトリムをバックグラウンドのスレッドで行うかどうかを決定する
+	 * デフォルトはfalse
+	 */
+	private boolean asyncTrim = false;
+
+	/**
+	 * 追加要素：profile
+	 * prometモードでバッファサイズの割り当てに使用する、以前の実行のトレースファイル
+	 * freqモードまたはprometモードの出力を指定できる
+	 * デフォルトはnull(使用しない)
+	 */
+	private File profile = null;
+
 	public RuntimeWeaverParameters(String args) {
 		if (args == null)
 			args = "";
@@ -152,6 +197,30 @@ public class RuntimeWeaverParameters {
 			} else if (arg.startsWith("json=")) {
 				String param = arg.substring("json=".length());
 				outputJson = param.equalsIgnoreCase("true");
+			} else if (arg.startsWith("arena=")) {
+				String param = arg.substring("arena=".length());
+				if (param.equalsIgnoreCase("true")) {
+					eventStorage = EventStorage.Arena;
+				} else if (param.equalsIgnoreCase("mmap")) {
+					eventStorage = EventStorage.MappedArena;
+				} else {
+					eventStorage = EventStorage.Buffer;
+				}
+			} else if (arg.startsWith("stripes=")) {
+				stripeCount = Integer.parseInt(arg.substring("stripes=".length()));
+				if (stripeCount < 0)
+					stripeCount = 0;
+			} else if (arg.startsWith("seqnum=")) {
+				String param = arg.substring("seqnum=".length());
+				if (param.equalsIgnoreCase("block")) {
+					seqnumOrdering = Ordering.Block;
+				} else if (param.equalsIgnoreCase("none")) {
+					seqnumOrdering = Ordering.None;
+				} else {
+					seqnumOrdering = Ordering.Global;
+				}
+			} else if (arg.startsWith("inline=")) {
+				inlineCounters = Boolean.parseBoolean(arg.substring("inline=".length()));
 			} else if (arg.startsWith("keepobj=")) {
 				String param = arg.substring("keepobj=".length());
 				if (param.equalsIgnoreCase("true") || param.equalsIgnoreCase("strong")) {
@@ -163,6 +232,9 @@ public class RuntimeWeaverParameters {
 				} else if (param.equalsIgnoreCase("id")) {
 					keepObject = ObjectRecordingStrategy.Id;
 					PrometKeepObject = PrometObjectRecordingStrategy.Id;
+				} else if (param.equalsIgnoreCase("hash")) {
+					keepObject = ObjectRecordingStrategy.Hash;
+					PrometKeepObject = PrometObjectRecordingStrategy.Weak;
 				}
 			} else if (arg.startsWith("logstart=")) {
 				DataInfoPattern p = new DataInfoPattern(arg.substring("logstart=".length()));
@@ -220,6 +292,8 @@ public class RuntimeWeaverParameters {
 				String opt = arg.substring("format=".length()).toLowerCase();
 				if (opt.equals("freq")) {
 					mode = Mode.Frequency;
+				} else if (opt.equals("coverage")) {
+					mode = Mode.Coverage;
 				} else if (opt.equals("before")) {
 					mode = Mode.ExecuteBefore;
 				} else if (opt.equals("discard")) {
@@ -242,6 +316,14 @@ public class RuntimeWeaverParameters {
 			} else if (arg.startsWith("showbuffersize=")) {
 				String param = arg.substring("showbuffersize=".length());
 				show_bufferSize = Boolean.parseBoolean(param);
+			} else if (arg.startsWith("budget=")) {
+				budget = parseBytes(arg.substring("budget=".length()));
+				if (budget < 0)
+					budget = 0;
+			} else if (arg.startsWith("asynctrim=")) {
+				asyncTrim = Boolean.parseBoolean(arg.substring("asynctrim=".length()));
+			} else if (arg.startsWith("profile=")) {
+				profile = new File(arg.substring("profile=".length()));
 			}
 		}
 	}
@@ -319,6 +401,22 @@ public class RuntimeWeaverParameters {
 		return outputJson;
 	}
 
+	public EventStorage getEventStorage() {
+		return eventStorage;
+	}
+
+	public int getStripeCount() {
+		return stripeCount;
+	}
+
+	public Ordering getSeqnumOrdering() {
+		return seqnumOrdering;
+	}
+
+	public boolean isInlineCounterEnabled() {
+		return inlineCounters;
+	}
+
 	public ExceptionRecording isRecordingExceptions() {
 		return recordExceptions;
 	}
@@ -351,6 +449,43 @@ public class RuntimeWeaverParameters {
 		return show_bufferSize;
 	}
 
+	public long getBudget() {
+		return budget;
+	}
+
+	public boolean isAsyncTrimEnabled() {
+		return asyncTrim;
+	}
+
+	/**
+	 * @return a trace file of a previous execution used to assign buffer sizes in promet mode, or null.
+	 */
+	public File getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Parse a number of bytes.
+	 * 
+	 * @param s is a number optionally followed by a unit "k", "m", or "g" (case-insensitive).
+	 * @return the number of bytes.
+	 */
+	private static long parseBytes(String s) {
+		long unit = 1;
+		String lower = s.toLowerCase();
+		if (lower.endsWith("k")) {
+			unit = 1024L;
+		} else if (lower.endsWith("m")) {
+			unit = 1024L * 1024;
+		} else if (lower.endsWith("g")) {
+			unit = 1024L * 1024 * 1024;
+		}
+		if (unit > 1) {
+			s = s.substring(0, s.length() - 1);
+		}
+		return Long.parseLong(s) * unit;
+	}
+
 	/**
 	 * This method checks whether a given class is a logging target or not.
 	 * 
@@ -19,6 +19,7 @@ public class WeaveConfig {
 	private boolean weaveObject = true;
 	private boolean weaveLineNumber = true;
 	private boolean ignoreArrayInitializer = false;
+	private boolean inlineCounters = false;
 
 	private boolean weaveNone = false;
 
@@ -82,6 +83,7 @@ public class WeaveConfig {
 		this.weaveLocalAccess = parent.weaveLocalAccess;
 		this.weaveLineNumber = parent.weaveLineNumber;
 		this.ignoreArrayInitializer = parent.ignoreArrayInitializer;
+		this.inlineCounters = parent.inlineCounters;
 		this.weaveNone = parent.weaveNone;
 		if (level == LogLevel.IgnoreArrayInitializer) {
 			this.ignoreArrayInitializer = true;
@@ -179,6 +181,23 @@ public class WeaveConfig {
 		return ignoreArrayInitializer;
 	}
 	
+	/**
+	 * Enable or disable inline counters.
+	 * @param inlineCounters If true, the weaver generates instructions to 
+	 * increment the counters in InlineCounters instead of calling the Logging class.
+	 * Observed values are not passed to a logger.
+	 */
+	public void setInlineCounters(boolean inlineCounters) {
+		this.inlineCounters = inlineCounters;
+	}
+
+	/**
+	 * @return true if the weaver should count events by inline instructions.
+	 */
+	public boolean useInlineCounters() {
+		return inlineCounters;
+	}
+
 	/**
 	 * @return true if the weaver should record CATCH events.  
 	 */
@@ -1,6 +1,7 @@
 package selogger.weaver.method;
 
 import selogger.EventType;
+import selogger.logging.util.InlineCounters;
 import selogger.weaver.WeaveLog;
 import selogger.weaver.WeaveConfig;
 
@@ -40,6 +41,16 @@ public class MethodTransformer extends LocalVariablesSorter {
 	public static final String LOGGER_CLASS = "selogger/logging/Logging";
 
 	public static final String METHOD_RECORD_EVENT = "recordEvent";
+
+	public static final String METHOD_GET_THREAD_CONTEXT = "getThreadContext";
+
+	public static final String THREAD_CONTEXT_DESC = "Lselogger/logging/util/ThreadContext;";
+
+	public static final String COUNTERS_CLASS = "selogger/logging/util/InlineCounters";
+
+	public static final String FIELD_COUNTER_PAGES = "pages";
+
+	public static final String COUNTER_PAGES_DESC = "[[J";
 	
 	/**
 	 * String attribute for CALL and FIELD events. 
@@ -166,6 +177,18 @@ public class MethodTransformer extends LocalVariablesSorter {
 	// Intentionally set -1 to represent "uninitialized"
 	private int lastLocationVar = -1;
 
+	/**
+	 * A local variable keeping the context of the current thread.
+	 * Logging instructions pass the context to avoid a ThreadLocal access for each event.
+	 */
+	private int threadContextVar = -1;
+
+	/**
+	 * A local variable keeping the pages of InlineCounters 
+	 * if the weaving configuration enables inline counters.
+	 */
+	private int counterPagesVar = -1;
+
 	/**
 	 * In a constructor, this flag becomes true after the super() is called.
 	 */
@@ -341,6 +364,18 @@ public class MethodTransformer extends LocalVariablesSorter {
 
 		super.visitCode();
 
+		// Obtain the thread context (or counters) before the try block, 
+		// so that the variable is available in the exception handler
+		if (config.useInlineCounters()) {
+			counterPagesVar = newLocal(Type.getType(COUNTER_PAGES_DESC));
+			super.visitFieldInsn(Opcodes.GETSTATIC, COUNTERS_CLASS, FIELD_COUNTER_PAGES, COUNTER_PAGES_DESC);
+			generateNewVarInsn(Opcodes.ASTORE, counterPagesVar);
+		} else {
+			threadContextVar = newLocal(Type.getType(THREAD_CONTEXT_DESC));
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_GET_THREAD_CONTEXT, "()" + THREAD_CONTEXT_DESC, false);
+			generateNewVarInsn(Opcodes.ASTORE, threadContextVar);
+		}
+
 		if (config.recordExecution() || config.recordCatch()) {
 			super.visitTryCatchBlock(startLabel, endLabel, endLabel, "java/lang/Throwable");
 
@@ -993,6 +1028,14 @@ public class MethodTransformer extends LocalVariablesSorter {
 		nextDataId(EventType.ARRAY_LOAD_INDEX, Descriptor.Integer, null); 
 		int resultId = nextDataId(EventType.ARRAY_LOAD_RESULT, elementDesc, null);
 
+		if (config.useInlineCounters()) {
+			generateCounterIncrement(dataId);
+			generateCounterIncrement(dataId + 1);
+			super.visitInsn(opcode);
+			generateCounterIncrement(resultId);
+			return;
+		}
+
 		super.visitInsn(Opcodes.DUP2); // stack: [array, index, array, index]
 		super.visitLdcInsn(dataId); // [array, index, array, index, id]
 		super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, "recordArrayLoad", "(Ljava/lang/Object;II)V", false);
@@ -1021,6 +1064,14 @@ public class MethodTransformer extends LocalVariablesSorter {
 		nextDataId(EventType.ARRAY_STORE_INDEX, Descriptor.Integer, null);
 		nextDataId(EventType.ARRAY_STORE_VALUE, Descriptor.get(elementDesc), null);
 
+		if (config.useInlineCounters()) {
+			generateCounterIncrement(arrayDataId);
+			generateCounterIncrement(arrayDataId + 1);
+			generateCounterIncrement(arrayDataId + 2);
+			super.visitInsn(opcode);
+			return;
+		}
+
 		int valueStoreVar = super.newLocal(OpcodesUtil.getAsmType(elementDesc));
 		// Stack: [ array, index, value ]
 		generateNewVarInsn(OpcodesUtil.getStoreInstruction(elementDesc), valueStoreVar); // -> Local: [value],  Stack: [array, index].
@@ -1181,12 +1232,23 @@ public class MethodTransformer extends LocalVariablesSorter {
 	 */
 	private void generateLogging(EventType eventType, Descriptor valueDesc, InstructionAttributes label) {
 		int dataId = nextDataId(eventType, valueDesc, label);
+		if (config.useInlineCounters()) {
+			// Discard the value prepared for the event
+			if (valueDesc == Descriptor.Long || valueDesc == Descriptor.Double) {
+				super.visitInsn(Opcodes.POP2);
+			} else if (valueDesc != Descriptor.Void) {
+				super.visitInsn(Opcodes.POP);
+			}
+			generateCounterIncrement(dataId);
+			return;
+		}
+		generateNewVarInsn(Opcodes.ALOAD, threadContextVar);
 		super.visitLdcInsn(dataId);
 		if (valueDesc == Descriptor.Void) {
-			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT, "(I)V", false);
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT, "(" + THREAD_CONTEXT_DESC + "I)V", false);
 		} else {
 			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT, 
-					"(" + valueDesc.getString() + "I)V", false);
+					"(" + valueDesc.getString() + THREAD_CONTEXT_DESC + "I)V", false);
 		}
 	}
 
@@ -1200,21 +1262,42 @@ public class MethodTransformer extends LocalVariablesSorter {
 	 */
 	private void generateLoggingPreservingStackTop(EventType eventType, Descriptor valueDesc, InstructionAttributes label) {
 		int dataId = nextDataId(eventType, valueDesc, label);
-		if (valueDesc == Descriptor.Void) {
+		if (config.useInlineCounters()) {
+			generateCounterIncrement(dataId);
+		} else if (valueDesc == Descriptor.Void) {
+			generateNewVarInsn(Opcodes.ALOAD, threadContextVar);
 			super.visitLdcInsn(dataId);
-			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT, "(I)V", false);
+			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT, "(" + THREAD_CONTEXT_DESC + "I)V", false);
 		} else {
 			if (valueDesc == Descriptor.Long || valueDesc == Descriptor.Double) {
 				super.visitInsn(Opcodes.DUP2);
 			} else {
 				super.visitInsn(Opcodes.DUP);
 			}
+			generateNewVarInsn(Opcodes.ALOAD, threadContextVar);
 			super.visitLdcInsn(dataId);
 			super.visitMethodInsn(Opcodes.INVOKESTATIC, LOGGER_CLASS, METHOD_RECORD_EVENT,
-					"(" + valueDesc.getString() + "I)V", false);
+					"(" + valueDesc.getString() + THREAD_CONTEXT_DESC + "I)V", false);
 		}
 	}
 	
+	/**
+	 * Generate instructions to increment a counter in InlineCounters.
+	 * The instructions do not change a stack.
+	 * @param dataId specifies a counter.
+	 */
+	private void generateCounterIncrement(int dataId) {
+		generateNewVarInsn(Opcodes.ALOAD, counterPagesVar);
+		super.visitLdcInsn(dataId >>> InlineCounters.PAGE_BITS);
+		super.visitInsn(Opcodes.AALOAD); // -> [page]
+		super.visitLdcInsn(dataId & InlineCounters.PAGE_MASK);
+		super.visitInsn(Opcodes.DUP2); // -> [page, index, page, index]
+		super.visitInsn(Opcodes.LALOAD);
+		super.visitInsn(Opcodes.LCONST_1);
+		super.visitInsn(Opcodes.LADD);
+		super.visitInsn(Opcodes.LASTORE);
+	}
+
 	/**
 	 * @param method specifies a method containing an instruction.
 	 * @param index specifies the position of an instruction in the list of instructions.
@@ -0,0 +1,79 @@
+package selogger.benchmark;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+
+import selogger.logging.Logging;
+import selogger.logging.io.EventFrequencyLogger;
+import selogger.testutil.WeaveClassLoader;
+import selogger.weaver.WeaveConfig;
+
+/**
+ * A micro benchmark to compare the overhead of the freq mode 
+ * with and without inline counters.
+ * This program repeatedly calls createArray and useLocal of 
+ * selogger.testdata.SimpleTarget without weaving, 
+ * woven to call the Logging class, and woven with inline counters.
+ * It is not executed as a test case.
+ * Usage: FreqBenchmark [weave option] [calls] [array size]
+ */
+public class FreqBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String weaveOption = args.length > 0 ? args[0] : WeaveConfig.KEY_RECORD_ALL;
+		int calls = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+		File dir = Files.createTempDirectory("selogger-benchmark").toFile();
+		Class<?> original = new WeaveClassLoader(null).loadClassFromResource("selogger.testdata.SimpleTarget", "selogger/testdata/SimpleTarget.class");
+		Class<?> logging = weave(weaveOption, false, new File(dir, "logging.json"));
+		Class<?> inline = weave(weaveOption, true, new File(dir, "inline.json"));
+
+		for (int i=0; i<2; i++) {
+			// The first iteration is a warm up to exclude JIT compilation
+			for (Class<?> c: new Class<?>[] { original, logging, inline }) {
+				String name = c == original ? "original" : c == logging ? "logging" : "inline";
+				Object target = c.newInstance();
+				report(name, "createArray", measure(target, c.getMethod("createArray", int.class), calls, size), calls);
+				report(name, "useLocal", measure(null, c.getMethod("useLocal"), calls * 100, -1), calls * 100);
+			}
+		}
+	}
+
+	/**
+	 * Weave SimpleTarget and create a logger for the woven class.
+	 */
+	private static Class<?> weave(String weaveOption, boolean inline, File trace) throws Exception {
+		WeaveConfig config = new WeaveConfig(weaveOption);
+		config.setInlineCounters(inline);
+		WeaveClassLoader loader = new WeaveClassLoader(config);
+		Class<?> c = loader.loadAndWeaveClass("selogger.testdata.SimpleTarget");
+		loader.loadClassFromResource("selogger.testdata.SimpleTarget$StringComparator", "selogger/testdata/SimpleTarget$StringComparator.class");
+		EventFrequencyLogger log = new EventFrequencyLogger(trace, inline, null);
+		log.onCreated(loader.getWeaveLog().getDataEntries());
+		Logging.setLogger(log);
+		return c;
+	}
+
+	/**
+	 * Call a method repeatedly.
+	 * @return elapsed time.
+	 */
+	private static long measure(Object target, Method m, int calls, int size) throws ReflectiveOperationException {
+		long t = System.nanoTime();
+		for (int i=0; i<calls; i++) {
+			if (size >= 0) {
+				m.invoke(target, size);
+			} else {
+				m.invoke(target);
+			}
+		}
+		return System.nanoTime() - t;
+	}
+
+	private static void report(String name, String method, long t, int calls) {
+		System.out.println(name + " " + method + " calls=" + calls + " time=" + (t / 1000000) + "ms " +
+				"ns/call=" + String.format("%.2f", (double)t / calls));
+	}
+}
@@ -0,0 +1,73 @@
+package selogger.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import selogger.logging.Logging;
+import selogger.weaver.RuntimeWeaver;
+
+/**
+ * A micro benchmark to measure the throughput of a logger. 
+ * This program creates a logger using the same options as the agent, 
+ * and then calls selogger.logging.Logging from multiple threads.
+ * It is not executed as a test case. 
+ * Usage: LoggerBenchmark [agent options] [threads] [locations] [events per thread]
+ * The threads argument may be a comma-separated list such as "1,2,4,8,16,32,64"
+ * to measure the scalability using the same logger.
+ */
+public class LoggerBenchmark {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String options = args.length > 0 ? args[0] : "format=nearomni";
+		String[] threadCounts = (args.length > 1 ? args[1] : "4").split(",");
+		int locations = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+		long events = args.length > 3 ? Long.parseLong(args[3]) : 10000000;
+
+		File dir = Files.createTempDirectory("selogger-benchmark").toFile();
+		RuntimeWeaver w = new RuntimeWeaver(options + ",output=" + dir.getAbsolutePath());
+		
+		for (String count: threadCounts) {
+			int threads = Integer.parseInt(count.trim());
+			// Warm up the logger to exclude JIT compilation 
+			run(threads, locations, events / 10);
+			long t = run(threads, locations, events);
+			double throughput = (double)events * threads / t * 1000000000L;
+			System.out.println(options + " threads=" + threads + " locations=" + locations + 
+					" time=" + (t / 1000000) + "ms throughput=" + (long)throughput + " events/s");
+		}
+		w.close();
+	}
+
+	/**
+	 * Execute recordEvent calls in parallel.
+	 * @return elapsed time in nanoseconds.
+	 */
+	public static long run(int threads, final int locations, final long events) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch end = new CountDownLatch(threads);
+		for (int i=0; i<threads; i++) {
+			final int offset = i;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (long e=0; e<events; e++) {
+						Logging.recordEvent((int)e, (int)((e + offset) % locations));
+					}
+					end.countDown();
+				}
+			});
+			thread.start();
+		}
+		long t = System.nanoTime();
+		start.countDown();
+		end.await();
+		return System.nanoTime() - t;
+	}
+}
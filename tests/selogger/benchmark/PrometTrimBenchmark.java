@@ -0,0 +1,81 @@
+package selogger.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+
+import selogger.logging.io.ProposedmethodLogger;
+import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
+
+/**
+ * A micro benchmark to measure the cost of trimming in promet mode.
+ * This program records one event for each of many cold locations,
+ * and then repeatedly records events for a small number of hot locations
+ * so that the logger trims the hot buffers while the cold buffers remain.
+ * If phases is more than 1, the set of hot locations changes in each phase,
+ * so that buffers of the previous phase shrink while new buffers grow.
+ * It is not executed as a test case.
+ * If async is true, the logger trims buffers in a background thread.
+ * Usage: PrometTrimBenchmark [cold locations] [hot locations] [hot events] [trim size] [phases] [async]
+ */
+public class PrometTrimBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int cold = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int hot = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		long events = args.length > 2 ? Long.parseLong(args[2]) : 2000000;
+		int trimSize = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+		int phases = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+		boolean async = args.length > 5 && Boolean.parseBoolean(args[5]);
+		int capacity = cold + hot * 1024;
+
+		File dir = Files.createTempDirectory("selogger-benchmark").toFile();
+		ProposedmethodLogger log = new ProposedmethodLogger(new File(dir, "recentdata.json"), capacity, trimSize, 0, async, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<cold; i++) {
+			log.recordEvent(hot * phases + i, i);
+		}
+
+		long gc = getGarbageCollectionTime();
+		long allocated = getAllocatedBytes();
+		long t = System.nanoTime();
+		long eventsPerPhase = events / phases;
+		for (long e=0; e<events; e++) {
+			int phase = (int)(e / eventsPerPhase) % phases;
+			log.recordEvent((int)(e % hot) + hot * phase, (int)e);
+		}
+		t = System.nanoTime() - t;
+		allocated = getAllocatedBytes() - allocated;
+		gc = getGarbageCollectionTime() - gc;
+		double throughput = (double)events / t * 1000000000L;
+		long fallbackTrims = log.getStatistics().getFallbackTrims();
+		System.err.println("cold=" + cold + " hot=" + hot + " trimSize=" + trimSize + " phases=" + phases + " async=" + async +
+				" time=" + (t / 1000000) + "ms throughput=" + (long)throughput + " events/s" +
+				" allocated=" + (allocated / 1024 / 1024) + "MB gc=" + gc + "ms" +
+				" fallbackTrims=" + fallbackTrims);
+	}
+
+	/**
+	 * @return the number of bytes allocated by the current thread, or -1 if unsupported.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the accumulated garbage collection time in milliseconds.
+	 */
+	private static long getGarbageCollectionTime() {
+		long total = 0;
+		for (GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, bean.getCollectionTime());
+		}
+		return total;
+	}
+}
@@ -0,0 +1,74 @@
+package selogger.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+
+import selogger.logging.Logging;
+import selogger.logging.io.LatestEventLogger;
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.SeqnumGenerator.Ordering;
+import selogger.testutil.WeaveClassLoader;
+import selogger.weaver.WeaveConfig;
+
+/**
+ * A micro benchmark to measure the overhead of logging instructions in woven code.
+ * This program weaves selogger.testdata.SimpleTarget and repeatedly calls
+ * createArray (a loop including LOCAL, LABEL, LINE and ARRAY events)
+ * and useLocal (a short method without a loop) with the nearomni logger.
+ * It is not executed as a test case.
+ * Usage: WovenBenchmark [weave option] [calls] [array size] [seqnum ordering]
+ */
+public class WovenBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String weaveOption = args.length > 0 ? args[0] : WeaveConfig.KEY_RECORD_ALL;
+		int calls = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		Ordering ordering = args.length > 3 ? Ordering.valueOf(args[3]) : Ordering.Global;
+
+		WeaveClassLoader loader = new WeaveClassLoader(new WeaveConfig(weaveOption));
+		Class<?> c = loader.loadAndWeaveClass("selogger.testdata.SimpleTarget");
+		loader.loadClassFromResource("selogger.testdata.SimpleTarget$StringComparator", "selogger/testdata/SimpleTarget$StringComparator.class");
+
+		File dir = Files.createTempDirectory("selogger-benchmark").toFile();
+		LatestEventLogger log = new LatestEventLogger(new File(dir, "trace.json"), 32, ObjectRecordingStrategy.Strong, true, null);
+		log.setSeqnumOrdering(ordering);
+		Logging.setLogger(log);
+
+		Object target = c.newInstance();
+		Method createArray = c.getMethod("createArray", int.class);
+		Method useLocal = c.getMethod("useLocal");
+		for (int i=0; i<2; i++) {
+			// The first iteration is a warm up to exclude JIT compilation
+			report("createArray", measure(target, createArray, calls, size), calls);
+			report("useLocal", measure(null, useLocal, calls * 100, -1), calls * 100);
+		}
+		log.close();
+	}
+
+	/**
+	 * Call a method repeatedly.
+	 * @return elapsed time and the number of events.
+	 */
+	private static long[] measure(Object target, Method m, int calls, int size) throws IOException, ReflectiveOperationException {
+		long seqnum = LatestEventLogger.getSeqnum();
+		long t = System.nanoTime();
+		for (int i=0; i<calls; i++) {
+			if (size >= 0) {
+				m.invoke(target, size);
+			} else {
+				m.invoke(target);
+			}
+		}
+		return new long[] { System.nanoTime() - t, LatestEventLogger.getSeqnum() - seqnum };
+	}
+
+	private static void report(String name, long[] result, int calls) {
+		long t = result[0];
+		long events = result[1];
+		System.out.println(name + " calls=" + calls + " events=" + events + " time=" + (t / 1000000) + "ms " +
+				"ns/event=" + String.format("%.2f", (double)t / Math.max(events, 1)) + " throughput=" + (long)((double)events / t * 1000000000L) + " events/s");
+	}
+}
@@ -0,0 +1,53 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class EventFrequencyLoggerTest {
+
+	/**
+	 * Test the counts of multiple threads and the reset of counters by save
+	 */
+	@Test
+	public void testSave() throws Exception {
+		File dir = Files.createTempDirectory("selogger-freq").toFile();
+		File trace = new File(dir, "eventfreq.json");
+		EventFrequencyLogger logger = new EventFrequencyLogger(trace, null);
+		logger.recordEvent(1, 0);
+		logger.recordEvent(1, "s");
+		Thread th = new Thread(() -> {
+			logger.recordEvent(1, 0L);
+			logger.recordEvent(3, 1.0);
+		});
+		th.start();
+		th.join();
+
+		logger.save(false);
+		Assert.assertEquals(Arrays.asList("1,3", "3,1"), read(trace, 1));
+		logger.save(true);
+		Assert.assertEquals(Arrays.asList("1,3", "3,1"), read(trace, 2));
+		logger.recordEvent(3, 'c');
+		logger.recordEvent(5, true);
+		logger.save(true);
+		Assert.assertEquals(Arrays.asList("3,1", "5,1"), read(trace, 3));
+		logger.save(false);
+		Assert.assertTrue(read(trace, 4).isEmpty());
+
+		logger.close();
+		logger.recordEvent(5, true);
+		logger.save(false);
+		Assert.assertTrue(read(trace, 5).isEmpty());
+	}
+
+	private static List<String> read(File trace, int saveCount) throws IOException {
+		return Files.readAllLines(new File(trace.getAbsolutePath() + "." + saveCount + ".txt").toPath());
+	}
+
+}
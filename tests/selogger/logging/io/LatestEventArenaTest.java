@@ -0,0 +1,153 @@
+package selogger.logging.io;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.JsonBuffer;
+
+
+public class LatestEventArenaTest {
+
+	@Test
+	public void testSameOutputAsBuffer() {
+		LatestEventArena arena = new LatestEventArena(4, ObjectRecordingStrategy.Strong, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(int.class, 4, ObjectRecordingStrategy.Strong);
+		for (int i=0; i<3; i++) {
+			arena.addInt(0, i, i, 1);
+			buf.addInt(i, i, 1);
+		}
+		Assert.assertEquals(buf.toString(), arena.toString(0));
+
+		// The oldest events are overwritten
+		for (int i=3; i<10; i++) {
+			arena.addInt(0, i, i, 2);
+			buf.addInt(i, i, 2);
+		}
+		Assert.assertEquals(buf.toString(), arena.toString(0));
+		Assert.assertEquals(10, arena.count(0));
+
+		JsonBuffer expected = new JsonBuffer();
+		expected.writeStartObject();
+		buf.writeJson(expected, false);
+		expected.writeEndObject();
+		JsonBuffer actual = new JsonBuffer();
+		actual.writeStartObject();
+		arena.writeJson(actual, 0, false);
+		actual.writeEndObject();
+		Assert.assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void testPrimitiveTypes() {
+		LatestEventArena arena = new LatestEventArena(1, ObjectRecordingStrategy.Strong, null);
+		arena.addChar(0, (char)'a', 10, 0);
+		arena.addShort(1, (short)2, 11, 0);
+		arena.addFloat(2, Float.NaN, 12, 0);
+		arena.addByte(3, (byte)4, 13, 0);
+		arena.addDouble(4, 5D, 14, 0);
+		arena.addBoolean(5, true, 15, 0);
+		arena.addLong(6, 7L, 16, 3);
+		arena.addObject(7, "x", 17, 0);
+		Assert.assertEquals("1,1,97,10,0", arena.toString(0));
+		Assert.assertEquals("1,1,2,11,0", arena.toString(1));
+		Assert.assertEquals("1,1,NaN,12,0", arena.toString(2));
+		Assert.assertEquals("1,1,4,13,0", arena.toString(3));
+		Assert.assertEquals("1,1,5.0,14,0", arena.toString(4));
+		Assert.assertEquals("1,1,true,15,0", arena.toString(5));
+		Assert.assertEquals("1,1,7,16,3", arena.toString(6));
+		Assert.assertTrue(arena.toString(7).contains("java.lang.String"));
+		Assert.assertEquals(LatestEventBuffer.getEmptyColumns(1), arena.toString(8));
+		Assert.assertFalse(arena.isRecorded(8));
+	}
+
+	@Test
+	public void testSharedChunks() {
+		LatestEventArena arena = new LatestEventArena(4, ObjectRecordingStrategy.Strong, null);
+		for (int i=0; i<10000; i++) {
+			arena.addInt(i, i, i, 0);
+		}
+		// Data IDs of the same type share a chunk
+		Assert.assertEquals(1, arena.getChunkCount());
+		for (int i=0; i<10000; i++) {
+			Assert.assertEquals("1,1," + i + "," + i + ",0,,,,,,,,,", arena.toString(i));
+		}
+	}
+
+	@Test
+	public void testVoidEvent() {
+		LatestEventArena arena = new LatestEventArena(2, ObjectRecordingStrategy.Strong, null);
+		arena.setVoidEvent(0);
+		arena.addInt(0, 1, 1, 0);
+		arena.addVoid(0, 2, 0);
+		arena.addObject(0, "x", 3, 0);
+		Assert.assertEquals("3,2,,2,0,,3,0", arena.toString(0));
+
+		// A new arena inherits the void events
+		LatestEventArena next = arena.createEmpty();
+		next.addLong(0, 1, 4, 0);
+		Assert.assertEquals("1,1,,4,0,,,", next.toString(0));
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testTypeMismatch() {
+		LatestEventArena arena = new LatestEventArena(2, ObjectRecordingStrategy.Strong, null);
+		arena.addInt(0, 1, 1, 0);
+		arena.addLong(0, 2, 2, 0);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final int SIZE = 8;
+		final int THREADS = 4;
+		final int EVENTS = 10000;
+		LatestEventArena arena = new LatestEventArena(SIZE, ObjectRecordingStrategy.Strong, null);
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			final int thread = t;
+			Thread th = new Thread(() -> {
+				for (int i=0; i<EVENTS; i++) {
+					long seqnum = (long)i * THREADS + thread;
+					arena.addLong(0, seqnum, seqnum, thread);
+					// Read the events while other threads are writing
+					if (i % 1000 == 0) arena.toString(0);
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th: threads) th.join();
+
+		Assert.assertEquals(THREADS * EVENTS, arena.count(0));
+		String[] columns = arena.toString(0).split(",");
+		Assert.assertEquals(Integer.toString(SIZE), columns[1]);
+		HashSet<String> values = new HashSet<>();
+		long last = -1;
+		for (int i=0; i<SIZE; i++) {
+			String value = columns[2 + i * 3];
+			long seqnum = Long.parseLong(columns[3 + i * 3]);
+			// Each value is stored with its own sequence number and thread
+			Assert.assertEquals(value, Long.toString(seqnum));
+			Assert.assertEquals(Long.toString(seqnum % THREADS), columns[4 + i * 3]);
+			Assert.assertTrue(last < seqnum);
+			last = seqnum;
+			values.add(value);
+		}
+		Assert.assertEquals(SIZE, values.size());
+	}
+
+	@Test
+	public void testObjectHash() {
+		LatestEventArena arena = new LatestEventArena(2, ObjectRecordingStrategy.Hash, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(Object.class, 2, ObjectRecordingStrategy.Hash);
+		Object[] objects = { "a", new Object(), null };
+		for (int i=0; i<objects.length; i++) {
+			arena.addObject(0, objects[i], i, 0);
+			buf.addObject(objects[i], i, 0);
+		}
+		Assert.assertEquals(buf.toString(), arena.toString(0));
+	}
+}
@@ -2,6 +2,10 @@ package selogger.logging.io;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -12,6 +16,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
 import selogger.logging.util.JsonBuffer;
 import selogger.logging.util.ObjectId;
+import selogger.logging.util.WeakObjectRef;
 
 
 public class LatestEventBufferTest {
@@ -19,7 +24,7 @@ public class LatestEventBufferTest {
 	@Test
 	public void testSizeExtension() {
 		int SIZE = 2048;
-		LatestEventBuffer buf = new LatestEventBuffer(int.class, SIZE, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(int.class, SIZE, null);
 		for (int i=1; i<=65536; i++) {
 			buf.addInt(i, i, i);
 			Assert.assertEquals(Math.min(i, SIZE), buf.size());
@@ -29,7 +34,7 @@ public class LatestEventBufferTest {
 			Assert.assertEquals(i < SIZE ? 1 : i-SIZE+1, buf.getThreadId(0));
 		}
 
-		buf = new LatestEventBuffer(long.class,SIZE, null);
+		buf = LatestEventBuffer.create(long.class,SIZE, null);
 		for (int i=1; i<=65536; i++) {
 			buf.addLong(i, i, i);
 			Assert.assertEquals(Math.min(i, SIZE), buf.size());
@@ -40,7 +45,7 @@ public class LatestEventBufferTest {
 	
 	@Test
 	public void testToString() {
-		LatestEventBuffer buf = new LatestEventBuffer(int.class, 4, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(int.class, 4, null);
 		buf.addInt(1, 0, 0);
 		buf.addInt(2, 1, 0);
 		buf.addInt(3, 2, 0);
@@ -53,7 +58,7 @@ public class LatestEventBufferTest {
 	
 	@Test
 	public void testWriteJson() {
-		LatestEventBuffer buf = new LatestEventBuffer(double.class, 4, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(double.class, 4, null);
 		buf.addDouble(0, 0, 0);
 		buf.addDouble(1.0, 0, 0);
 		buf.addDouble(2.0, 0, 0);
@@ -75,7 +80,7 @@ public class LatestEventBufferTest {
 
 	@Test
 	public void testWriteJsonObjectId() {
-		LatestEventBuffer buf = new LatestEventBuffer(ObjectId.class, 4, ObjectRecordingStrategy.Id);
+		LatestEventBuffer buf = LatestEventBuffer.create(ObjectId.class, 4, ObjectRecordingStrategy.Id);
 		buf.addObjectId(new ObjectId(1, "abc", "def"), 0, 0);
 		JsonBuffer json = new JsonBuffer();
 		buf.writeJson(json, false);
@@ -95,7 +100,7 @@ public class LatestEventBufferTest {
 
 	@Test
 	public void testWriteJsonObject() {
-		LatestEventBuffer buf = new LatestEventBuffer(Object.class, 4, ObjectRecordingStrategy.Strong);
+		LatestEventBuffer buf = LatestEventBuffer.create(Object.class, 4, ObjectRecordingStrategy.Strong);
 		buf.addObject("abc", 0, 0);
 		JsonBuffer json = new JsonBuffer();
 		buf.writeJson(json, false);
@@ -114,4 +119,253 @@ public class LatestEventBufferTest {
 	}
 
 
+	@Test
+	public void testWeakObject() throws IOException {
+		LatestEventBuffer buf = LatestEventBuffer.create(Object.class, 4, ObjectRecordingStrategy.Weak);
+		Object o = new Object();
+		String id = Integer.toHexString(System.identityHashCode(o));
+		buf.addObject(o, 0, 0);
+		buf.addObject(o, 1, 0);
+		// Events of the same object share a reference
+		WeakObjectRef ref = WeakObjectRef.of(o);
+		Assert.assertSame(o, ref.get());
+		Assert.assertTrue(buf.toString().contains("java.lang.Object@" + id + ",0,0"));
+
+		// The class name and the hash code remain after the object is collected
+		ref.clear();
+		Assert.assertTrue(buf.toString().startsWith("2,2,<GC>:java.lang.Object@" + id + ",0,0,<GC>:java.lang.Object@" + id + ",1,0"));
+		JsonBuffer json = new JsonBuffer();
+		json.writeStartObject();
+		buf.writeJson(json, false);
+		json.writeEndObject();
+		JsonNode value = new ObjectMapper().readTree(json.toString()).get("value").get(0);
+		Assert.assertEquals("<GC>", value.get("id").asText());
+		Assert.assertEquals(id, value.get("hash").asText());
+		Assert.assertEquals("java.lang.Object", value.get("type").asText());
+	}
+
+	@Test
+	public void testObjectHash() throws IOException {
+		LatestEventBuffer buf = LatestEventBuffer.create(Object.class, 4, ObjectRecordingStrategy.Hash);
+		Object o = new Object();
+		String id = Integer.toHexString(System.identityHashCode(o));
+		buf.addObject(o, 0, 0);
+		buf.addObject(null, 1, 0);
+		Assert.assertEquals("2,2,java.lang.Object@" + id + ",0,0,null,1,0,,,,,,", buf.toString());
+
+		JsonBuffer json = new JsonBuffer();
+		json.writeStartObject();
+		buf.writeJson(json, false);
+		json.writeEndObject();
+		JsonNode values = new ObjectMapper().readTree(json.toString()).get("value");
+		Assert.assertEquals(id, values.get(0).get("id").asText());
+		Assert.assertEquals("java.lang.Object", values.get(0).get("type").asText());
+		Assert.assertTrue(values.get(1).isNull());
+	}
+
+	@Test
+	public void testVoidBuffer() {
+		LatestEventBuffer buf = LatestEventBuffer.create(void.class, 2, null);
+		buf.addInt(0, 5, 1);
+		buf.addBoolean(true, 6, 1);
+		buf.addInt(0, 7, 2);
+		Assert.assertEquals(3, buf.count());
+		Assert.assertEquals(2, buf.size());
+		Assert.assertEquals(6, buf.getSeqNum(0));
+		Assert.assertEquals(2, buf.getThreadId(1));
+		// A void event is stored without a value
+		Assert.assertEquals("3,2,,6,1,,7,2", buf.toString());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTypeMismatch() {
+		LatestEventBuffer buf = LatestEventBuffer.create(int.class, 2, null);
+		buf.addLong(0, 0, 0);
+	}
+
+	/**
+	 * Record events from multiple threads to a buffer.
+	 * Each thread records its own counter as both a value and a sequence number.
+	 */
+	private static void recordConcurrently(LatestEventBuffer buf, int threads, int events, Runnable reader) throws InterruptedException {
+		ArrayList<Thread> workers = new ArrayList<>();
+		for (int t=0; t<threads; t++) {
+			final int threadId = t;
+			Thread th = new Thread(() -> {
+				for (int i=0; i<events; i++) {
+					long v = ((long)threadId << 32) | i;
+					buf.addLong(v, v, threadId);
+				}
+			});
+			workers.add(th);
+		}
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread r = new Thread(() -> {
+			while (running.get()) reader.run();
+		});
+		r.start();
+		for (Thread th: workers) th.start();
+		for (Thread th: workers) th.join();
+		running.set(false);
+		r.join();
+	}
+
+	/**
+	 * @param json is the output of writeJson
+	 * @return true if every value matches its sequence number and thread
+	 */
+	private static boolean isConsistent(JsonNode node) {
+		JsonNode values = node.get("value");
+		JsonNode seqnums = node.get("seqnum");
+		JsonNode threads = node.get("thread");
+		if (values.size() != node.get("record").asInt()) return false;
+		for (int i=0; i<values.size(); i++) {
+			long v = values.get(i).asLong();
+			if (v != seqnums.get(i).asLong()) return false;
+			if ((v >>> 32) != threads.get(i).asInt()) return false;
+		}
+		return true;
+	}
+
+	private static JsonNode toJson(LatestEventBuffer buf) {
+		JsonBuffer json = new JsonBuffer();
+		json.writeStartObject();
+		buf.writeJson(json, false);
+		json.writeEndObject();
+		try {
+			return new ObjectMapper().readTree(json.toString());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		int SIZE = 256;
+		int THREADS = 8;
+		int EVENTS = 20000;
+		LatestEventBuffer buf = LatestEventBuffer.create(long.class, SIZE, null);
+		AtomicBoolean consistent = new AtomicBoolean(true);
+		// A reader takes snapshots while the buffer is extended and overwritten
+		recordConcurrently(buf, THREADS, EVENTS, () -> {
+			if (!isConsistent(toJson(buf))) consistent.set(false);
+		});
+		Assert.assertTrue(consistent.get());
+		Assert.assertEquals(THREADS * EVENTS, buf.count());
+		Assert.assertEquals(SIZE, buf.size());
+
+		JsonNode node = toJson(buf);
+		Assert.assertTrue(isConsistent(node));
+		Assert.assertEquals(SIZE, node.get("record").asInt());
+		// Each slot keeps a different event
+		HashSet<Long> events = new HashSet<>();
+		for (JsonNode v: node.get("value")) {
+			events.add(v.asLong());
+		}
+		Assert.assertEquals(SIZE, events.size());
+	}
+
+	@Test
+	public void testConcurrentToString() throws InterruptedException {
+		int SIZE = 64;
+		LatestEventBuffer buf = LatestEventBuffer.create(long.class, SIZE, null);
+		AtomicBoolean consistent = new AtomicBoolean(true);
+		recordConcurrently(buf, 4, 10000, () -> {
+			String[] elements = buf.toString().split(",", -1);
+			int len = Integer.parseInt(elements[1]);
+			for (int i=0; i<len; i++) {
+				if (!elements[2 + i*3].equals(elements[3 + i*3])) consistent.set(false);
+			}
+		});
+		Assert.assertTrue(consistent.get());
+		Assert.assertEquals(40000, buf.count());
+	}
+
+
+	@Test
+	public void testStripes() {
+		LatestEventBuffer buf = LatestEventBuffer.create(int.class, 4, ObjectRecordingStrategy.Strong);
+		buf.addInt(0, 0, 0);
+		// An uncontended buffer is not split
+		Assert.assertSame(buf, buf.getStripe(1, 4));
+		Assert.assertFalse(buf.isStriped());
+
+		LatestEventBuffer[] stripes = buf.createStripes(4);
+		Assert.assertTrue(buf.isStriped());
+		Assert.assertSame(stripes[1], buf.getStripe(1, 4));
+		Assert.assertSame(stripes[1], buf.getStripe(5, 4));
+		buf.getStripe(1, 4).addInt(1, 1, 1);
+		buf.getStripe(2, 4).addInt(2, 3, 2);
+		buf.getStripe(1, 4).addInt(3, 2, 1);
+		Assert.assertEquals(4, buf.count());
+		// The events are merged by sequence numbers
+		Assert.assertEquals("4,4,0,0,0,1,1,1,3,2,1,2,3,2", buf.toString());
+
+		// Only the latest events are written
+		for (int i=4; i<10; i++) {
+			buf.getStripe(i, 4).addInt(i, i, i);
+		}
+		Assert.assertEquals("10,4,6,6,6,7,7,7,8,8,8,9,9,9", buf.toString());
+
+		JsonBuffer json = new JsonBuffer();
+		json.writeStartObject();
+		buf.writeJson(json, false);
+		json.writeEndObject();
+		Assert.assertEquals("{\"freq\":10,\"record\":4,\"value\":[6,7,8,9],\"seqnum\":[6,7,8,9],\"thread\":[6,7,8,9]}", json.toString());
+	}
+
+	@Test
+	public void testObjectHashStripes() throws IOException {
+		LatestEventBuffer buf = LatestEventBuffer.create(Object.class, 4, ObjectRecordingStrategy.Hash);
+		LatestEventBuffer[] stripes = buf.createStripes(4);
+		Object o = new Object();
+		String id = Integer.toHexString(System.identityHashCode(o));
+		stripes[1].addObject(o, 0, 1);
+		stripes[2].addObject(null, 2, 2);
+		stripes[1].addObject(o, 1, 1);
+		Assert.assertEquals(3, buf.count());
+		Assert.assertEquals("3,3,java.lang.Object@" + id + ",0,1,java.lang.Object@" + id + ",1,1,null,2,2,,,", buf.toString());
+
+		JsonBuffer json = new JsonBuffer();
+		json.writeStartObject();
+		buf.writeJson(json, false);
+		json.writeEndObject();
+		JsonNode values = new ObjectMapper().readTree(json.toString()).get("value");
+		Assert.assertEquals(3, values.size());
+		Assert.assertEquals(id, values.get(0).get("id").asText());
+		Assert.assertEquals("java.lang.Object", values.get(1).get("type").asText());
+		Assert.assertTrue(values.get(2).isNull());
+	}
+
+	@Test
+	public void testContendedBuffer() throws InterruptedException {
+		final int THREADS = 4;
+		final int EVENTS = 100000;
+		LatestEventBuffer buf = LatestEventBuffer.create(long.class, 8, ObjectRecordingStrategy.Strong);
+		AtomicLong seqnum = new AtomicLong();
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			final int thread = t;
+			Thread th = new Thread(() -> {
+				for (int i=0; i<EVENTS; i++) {
+					long n = seqnum.getAndIncrement();
+					buf.getStripe(thread, THREADS).addLong(n, n, thread);
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th: threads) th.join();
+
+		// No events are lost whether the buffer is split or not
+		Assert.assertEquals(THREADS * EVENTS, buf.count());
+		String[] columns = buf.toString().split(",");
+		long last = -1;
+		for (int i=0; i<8; i++) {
+			long n = Long.parseLong(columns[3 + i * 3]);
+			Assert.assertEquals(Long.toString(n), columns[2 + i * 3]);
+			Assert.assertTrue(last < n);
+			last = n;
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package selogger.logging.io;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.PrintWriter;
@@ -9,14 +10,19 @@ import java.io.StringWriter;
 import java.util.Arrays;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import selogger.EventType;
+import selogger.logging.io.LatestEventLogger.EventStorage;
 import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.JsonBuffer;
 import selogger.logging.util.ObjectId;
+import selogger.logging.util.ThreadContext;
 import selogger.logging.util.ThreadId;
 import selogger.weaver.DataInfo;
 import selogger.weaver.MethodInfo;
@@ -25,6 +31,12 @@ import selogger.weaver.method.Descriptor;
 
 public class LatestEventLoggerTest {
 
+	/**
+	 * A temporary folder for execution traces
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/**
 	 * This test case assumes that the method is executed by the main thread 
 	 */
@@ -95,7 +107,16 @@ public class LatestEventLoggerTest {
 	 * @return a logger object for test cases
 	 */
 	private LatestEventLogger createLog() {
-		LatestEventLogger log = new LatestEventLogger(null, 4, ObjectRecordingStrategy.Weak, true, null);
+		return createLog(null, EventStorage.Buffer);
+	}
+
+	/**
+	 * @param traceFile specifies a trace file
+	 * @param storage specifies where the logger stores events
+	 * @return a logger object for test cases
+	 */
+	private LatestEventLogger createLog(File traceFile, EventStorage storage) {
+		LatestEventLogger log = new LatestEventLogger(traceFile, 4, ObjectRecordingStrategy.Weak, true, storage, 0, null);
 		DataInfo d1 = new DataInfo(0, 0, 0, 0, 0, EventType.METHOD_ENTRY, Descriptor.Void, null);
 		DataInfo d2 = new DataInfo(0, 0, 1, 0, 0, EventType.METHOD_NORMAL_EXIT, Descriptor.Integer, null);
 		MethodInfo m = new MethodInfo(0, 0, "myClass", "myMethod", "()I", 0, "myClass.java", "0123456789abcdef");
@@ -237,4 +258,124 @@ public class LatestEventLoggerTest {
 		seq = buf.getSeqNum(0);
 		Assert.assertEquals("1,1,NaN," + seq + "," + ThreadId.get(), buf.toString());
 	}
+
+	@Test
+	public void testVoidEvent() {
+		LatestEventLogger log = createLog();
+		log.recordEvent(0, 0);
+		log.recordEvent(1, 1);
+		// dataId=0 is METHOD_ENTRY without a value
+		Assert.assertTrue(log.prepareBuffer(int.class, 0) instanceof LatestEventBuffer.VoidBuffer);
+		Assert.assertTrue(log.prepareBuffer(int.class, 1) instanceof LatestEventBuffer.IntBuffer);
+	}
+
+	@Test
+	public void testArena() {
+		LatestEventLogger log = createLog(null, EventStorage.Arena);
+		long seqnum = LatestEventLogger.getSeqnum();
+		log.recordEvent(0, 0);
+		for (int i=1; i<=6; i++) {
+			log.recordEvent(1, i);
+		}
+		// The trace is written in the same format as buffers
+		StringWriter w = new StringWriter();
+		PrintWriter writer = new PrintWriter(w);
+		log.saveText(writer);
+		writer.close();
+		String[] lines = w.toString().split("\\R");
+		Assert.assertEquals(3, lines.length);
+		int thread = ThreadId.get();
+		Assert.assertTrue(lines[1].endsWith(",1,1,," + seqnum + "," + thread + ",,,,,,,,,"));
+		Assert.assertTrue(lines[2].endsWith(",6,4,3," + (seqnum+3) + "," + thread + 
+				",4," + (seqnum+4) + "," + thread + 
+				",5," + (seqnum+5) + "," + thread + 
+				",6," + (seqnum+6) + "," + thread));
+	}
+
+	@Test
+	public void testMappedArena() throws IOException {
+		File traceFile = new File(folder.getRoot(), "trace.json");
+		LatestEventLogger log = createLog(traceFile, EventStorage.MappedArena);
+		log.recordEvent(0, 0);
+		log.recordEvent(1, 1);
+		log.recordEvent(1, 2);
+
+		// The events are available in the mapped file before the logger is closed
+		File mapped = new File(traceFile.getAbsolutePath() + ".mmap");
+		StringWriter w = new StringWriter();
+		try (PrintWriter writer = new PrintWriter(w)) {
+			MappedEventArena.recover(mapped, writer);
+		}
+		String[] lines = w.toString().split("\\R");
+		Assert.assertEquals(3, lines.length);
+		Assert.assertTrue(lines[1].startsWith("0,void,1,1,,"));
+		Assert.assertTrue(lines[2].startsWith("1,int,2,2,1,"));
+
+		// A partial save starts a new mapped file
+		log.save(true);
+		log.recordEvent(1, 3);
+		log.close();
+		Assert.assertTrue(new File(traceFile.getAbsolutePath() + ".1.json").exists());
+		Assert.assertTrue(new File(mapped.getAbsolutePath() + ".1").exists());
+		JsonNode node = new ObjectMapper().readTree(traceFile);
+		JsonNode event = node.get("events").get(0);
+		Assert.assertEquals(1, event.get("freq").asInt());
+		Assert.assertEquals(3, event.get("value").get(0).asInt());
+	}
+
+	@Test
+	public void testRecordDuringSave() throws Exception {
+		// Assign a thread ID to the main thread first, as other test cases assume
+		ThreadContext.get();
+		File traceFile = new File(folder.getRoot(), "trace.json");
+		boolean[] recorded = new boolean[1];
+		LatestEventLogger log = new LatestEventLogger(traceFile, 4, ObjectRecordingStrategy.Weak, true, EventStorage.Buffer, 0, null) {
+			@Override
+			protected void writeAttributes(JsonBuffer buf, DataInfo d) {
+				if (d.getDataId() == 0) {
+					// Another thread creates a buffer while the trace is written
+					Thread th = new Thread(() -> recordEvent(1, 2));
+					th.start();
+					try {
+						th.join(10000);
+					} catch (InterruptedException e) {
+					}
+					recorded[0] = !th.isAlive();
+				}
+				super.writeAttributes(buf, d);
+			}
+		};
+		DataInfo d1 = new DataInfo(0, 0, 0, 0, 0, EventType.METHOD_ENTRY, Descriptor.Void, null);
+		DataInfo d2 = new DataInfo(0, 0, 1, 0, 0, EventType.METHOD_NORMAL_EXIT, Descriptor.Integer, null);
+		MethodInfo m = new MethodInfo(0, 0, "myClass", "myMethod", "()I", 0, "myClass.java", "0123456789abcdef");
+		d1.setMethodInfo(m);
+		d2.setMethodInfo(m);
+		log.onCreated(Arrays.asList(d1, d2));
+		log.recordEvent(0, 1);
+		log.save(true);
+		Assert.assertTrue(recorded[0]);
+
+		// The event recorded during the save is written by the next save
+		log.close();
+		JsonNode events = new ObjectMapper().readTree(traceFile).get("events");
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("METHOD_NORMAL_EXIT", events.get(0).get("event").asText());
+		Assert.assertEquals(2, events.get(0).get("value").get(0).asInt());
+	}
+
+	@Test
+	public void testDisabledThread() {
+		LatestEventLogger log = new LatestEventLogger(null, 4, ObjectRecordingStrategy.Weak, true, null);
+		ThreadContext.get().setEnabled(false);
+		try {
+			log.recordEvent(0, 1);
+		} finally {
+			ThreadContext.get().setEnabled(true);
+		}
+		log.recordEvent(0, 2);
+		String[] elements = log.prepareBuffer(int.class, 0).toString().split(",");
+		Assert.assertEquals("1", elements[0]);
+		Assert.assertEquals("2", elements[2]);
+		Assert.assertEquals(Integer.toString(ThreadContext.get().getThreadId()), elements[4]);
+	}
 }
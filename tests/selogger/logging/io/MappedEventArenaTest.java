@@ -0,0 +1,196 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.JsonBuffer;
+import selogger.logging.util.ObjectId;
+
+
+public class MappedEventArenaTest {
+
+	/**
+	 * A temporary folder for mapped files
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @return the lines recovered from a mapped file
+	 */
+	private String[] recover(File f) throws IOException {
+		StringWriter w = new StringWriter();
+		try (PrintWriter writer = new PrintWriter(w)) {
+			MappedEventArena.recover(f, writer);
+		}
+		return w.toString().split("\\R");
+	}
+
+	@Test
+	public void testSameOutputAsBuffer() throws IOException {
+		MappedEventArena arena = new MappedEventArena(folder.newFile(), 4, ObjectRecordingStrategy.Strong, null);
+		LatestEventBuffer buf = LatestEventBuffer.create(long.class, 4, ObjectRecordingStrategy.Strong);
+		for (int i=0; i<10; i++) {
+			arena.addLong(0, i * 100L, i, i % 2);
+			buf.addLong(i * 100L, i, i % 2);
+		}
+		Assert.assertEquals(buf.toString(), arena.toString(0));
+
+		JsonBuffer expected = new JsonBuffer();
+		expected.writeStartObject();
+		buf.writeJson(expected, false);
+		expected.writeEndObject();
+		JsonBuffer actual = new JsonBuffer();
+		actual.writeStartObject();
+		arena.writeJson(actual, 0, false);
+		actual.writeEndObject();
+		Assert.assertEquals(expected.toString(), actual.toString());
+		arena.close();
+	}
+
+	@Test
+	public void testRecover() throws IOException {
+		File f = folder.newFile();
+		MappedEventArena arena = new MappedEventArena(f, 2, ObjectRecordingStrategy.Id, null);
+		arena.setVoidEvent(3);
+		arena.addInt(1, 5, 10, 0);
+		arena.addInt(1, 6, 11, 1);
+		arena.addInt(1, 7, 12, 2);
+		arena.addDouble(2, 1.5, 13, 0);
+		arena.addObject(3, "ignored", 14, 0);
+		arena.addObjectId(4, new ObjectId(8, "java.lang.String", "a"), 15, 0);
+		arena.addObjectId(4, null, 16, 0);
+		arena.addBoolean(5, true, 17, 0);
+		arena.addFloat(6, Float.NaN, 18, 0);
+
+		// The file is readable without close, e.g. after the JVM is killed
+		String[] lines = recover(f);
+		Assert.assertEquals("dataid,vtype," + LatestEventBuffer.getColumnNames(2), lines[0]);
+		Assert.assertEquals(7, lines.length);
+		Assert.assertEquals("1,int,3,2,6,11,1,7,12,2", lines[1]);
+		Assert.assertEquals("2,double,1,1,1.5,13,0,,,", lines[2]);
+		Assert.assertEquals("3,void,1,1,,14,0,,,", lines[3]);
+		Assert.assertEquals("4,ObjectId,2,2,8,15,0,null,16,0", lines[4]);
+		Assert.assertEquals("5,boolean,1,1,true,17,0,,,", lines[5]);
+		Assert.assertEquals("6,float,1,1,NaN,18,0,,,", lines[6]);
+		arena.close();
+	}
+
+	@Test
+	public void testManySegments() throws IOException {
+		File f = folder.newFile();
+		MappedEventArena arena = new MappedEventArena(f, 1024, ObjectRecordingStrategy.Strong, null);
+		for (int i=0; i<200; i++) {
+			arena.addInt(i * 7, i, i, 0);
+		}
+		for (int i=0; i<200; i++) {
+			Assert.assertTrue(arena.toString(i * 7).startsWith("1,1," + i + "," + i + ",0,"));
+		}
+		arena.close();
+		String[] lines = recover(f);
+		Assert.assertEquals(201, lines.length);
+		Assert.assertTrue(lines[200].startsWith("1393,int,1,1,199,199,0,"));
+	}
+
+	@Test
+	public void testCreateEmpty() throws IOException {
+		File f = folder.newFile();
+		MappedEventArena arena = new MappedEventArena(f, 2, ObjectRecordingStrategy.Strong, null);
+		arena.setVoidEvent(0);
+		arena.addInt(0, 1, 1, 0);
+		IEventArena next = arena.createEmpty();
+		Assert.assertTrue(next instanceof MappedEventArena);
+		Assert.assertEquals(new File(f.getAbsolutePath() + ".1"), ((MappedEventArena)next).getFile());
+		Assert.assertFalse(next.isRecorded(0));
+		next.addLong(0, 2, 2, 0);
+		Assert.assertEquals("1,1,,2,0,,,", next.toString(0));
+		arena.close();
+		next.close();
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testTypeMismatch() throws IOException {
+		MappedEventArena arena = new MappedEventArena(folder.newFile(), 2, ObjectRecordingStrategy.Strong, null);
+		try {
+			arena.addInt(0, 1, 1, 0);
+			arena.addLong(0, 2, 2, 0);
+		} finally {
+			arena.close();
+		}
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		final int SIZE = 8;
+		final int THREADS = 4;
+		final int EVENTS = 10000;
+		File f = folder.newFile();
+		MappedEventArena arena = new MappedEventArena(f, SIZE, ObjectRecordingStrategy.Strong, null);
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			final int thread = t;
+			Thread th = new Thread(() -> {
+				for (int i=0; i<EVENTS; i++) {
+					long seqnum = (long)i * THREADS + thread;
+					arena.addLong(0, seqnum, seqnum, thread);
+					if (i % 1000 == 0) arena.toString(0);
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th: threads) th.join();
+
+		String[] columns = arena.toString(0).split(",");
+		Assert.assertEquals(Integer.toString(THREADS * EVENTS), columns[0]);
+		Assert.assertEquals(Integer.toString(SIZE), columns[1]);
+		for (int i=0; i<SIZE; i++) {
+			// Each value is stored with its own sequence number and thread
+			long seqnum = Long.parseLong(columns[3 + i * 3]);
+			Assert.assertEquals(Long.toString(seqnum), columns[2 + i * 3]);
+			Assert.assertEquals(Long.toString(seqnum % THREADS), columns[4 + i * 3]);
+		}
+		arena.close();
+	}
+
+	@Test
+	public void testCountNeverDecreases() throws Exception {
+		final int THREADS = 4;
+		final int EVENTS = 20000;
+		File f = folder.newFile();
+		MappedEventArena arena = new MappedEventArena(f, 4, ObjectRecordingStrategy.Strong, null);
+		arena.addInt(0, 0, 0, 0);
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			Thread th = new Thread(() -> {
+				for (int i=0; i<EVENTS; i++) {
+					arena.addInt(0, i, i, 0);
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		// The count in the file is read while the threads are recording events
+		long last = 0;
+		for (int i=0; i<100; i++) {
+			long count = Long.parseLong(recover(f)[1].split(",")[2]);
+			Assert.assertTrue(count >= last);
+			last = count;
+		}
+		for (Thread th: threads) th.join();
+		Assert.assertTrue(Long.parseLong(recover(f)[1].split(",")[2]) <= THREADS * EVENTS + 1);
+
+		// close writes the final count
+		arena.close();
+		Assert.assertEquals(THREADS * EVENTS + 1, Long.parseLong(recover(f)[1].split(",")[2]));
+	}
+}
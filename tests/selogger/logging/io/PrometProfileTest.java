@@ -0,0 +1,112 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import selogger.EventType;
+import selogger.weaver.DataInfo;
+import selogger.weaver.MethodInfo;
+import selogger.weaver.method.Descriptor;
+
+
+public class PrometProfileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @return three event locations in a method
+	 */
+	static List<DataInfo> createDataInfo() {
+		MethodInfo m = new MethodInfo(0, 0, "myClass", "myMethod", "()I", 0, "myClass.java", "0123456789abcdef");
+		DataInfo d0 = new DataInfo(0, 0, 0, 1, 0, EventType.METHOD_ENTRY, Descriptor.Void, null);
+		DataInfo d1 = new DataInfo(0, 0, 1, 2, 5, EventType.LOCAL_STORE, Descriptor.Integer, null);
+		DataInfo d2 = new DataInfo(0, 0, 2, 3, 9, EventType.METHOD_NORMAL_EXIT, Descriptor.Integer, null);
+		for (DataInfo d: Arrays.asList(d0, d1, d2)) {
+			d.setMethodInfo(m);
+		}
+		return Arrays.asList(d0, d1, d2);
+	}
+
+	@Test
+	public void testLoadFrequencyTrace() throws IOException {
+		List<DataInfo> dataids = createDataInfo();
+		File trace = folder.newFile("eventfreq.json");
+		EventFrequencyLogger freq = new EventFrequencyLogger(trace, null);
+		freq.onCreated(dataids);
+		freq.recordEvent(0, 0);
+		for (int i=0; i<90; i++) {
+			freq.recordEvent(1, i);
+		}
+		for (int i=0; i<9; i++) {
+			freq.recordEvent(2, i);
+		}
+		freq.close();
+
+		PrometProfile profile = PrometProfile.load(trace);
+		Assert.assertEquals(3, profile.size());
+		Assert.assertEquals(1, profile.getFrequency(dataids.get(0)));
+		Assert.assertEquals(90, profile.getFrequency(dataids.get(1)));
+		Assert.assertEquals(9, profile.getFrequency(dataids.get(2)));
+	}
+
+	@Test
+	public void testLoadText() throws IOException {
+		List<DataInfo> dataids = createDataInfo();
+		File trace = folder.newFile("eventfreq.txt");
+		try (PrintWriter w = new PrintWriter(new FileWriter(trace))) {
+			w.println("cname,mname,mdesc,mhash,line,inst,attr,event,vtype,freq");
+			w.println("myClass,myMethod,()I,0123456789abcdef,2,5,\"Var=1,Name=x\",LOCAL_STORE,I,42");
+		}
+		PrometProfile profile = PrometProfile.load(trace);
+		Assert.assertEquals(1, profile.size());
+		Assert.assertEquals(42, profile.getFrequency(dataids.get(1)));
+		Assert.assertEquals(0, profile.getFrequency(dataids.get(0)));
+	}
+
+	@Test
+	public void testComputeQuotas() {
+		PrometProfile profile = new PrometProfile();
+		profile.addFrequency("a", 1000);
+		profile.addFrequency("b", 100);
+		profile.addFrequency("c", 99);
+		profile.addFrequency("d", 1);
+
+		// "a" is limited by the maximum quota, and the remaining capacity is shared by the others
+		Map<String, Integer> quotas = profile.computeQuotas(100, 40);
+		Assert.assertEquals(40, quotas.get("a").intValue());
+		Assert.assertEquals(30, quotas.get("b").intValue());
+		Assert.assertEquals(29, quotas.get("c").intValue());
+		// A location that occurred at least once keeps one event
+		Assert.assertEquals(1, quotas.get("d").intValue());
+		int total = 0;
+		for (int q: quotas.values()) total += q;
+		Assert.assertTrue(total <= 100);
+	}
+
+	@Test
+	public void testComputeQuotasWithinCapacity() {
+		PrometProfile profile = new PrometProfile();
+		profile.addFrequency("a", 1000);
+		profile.addFrequency("b", 100);
+		profile.addFrequency("c", 10);
+		profile.addFrequency("d", 1);
+
+		// The capacity is too small to give every location one event
+		Map<String, Integer> quotas = profile.computeQuotas(2, 40);
+		Assert.assertEquals(2, quotas.size());
+		Assert.assertEquals(1, quotas.get("a").intValue());
+		Assert.assertEquals(1, quotas.get("b").intValue());
+		Assert.assertTrue(profile.computeQuotas(0, 40).isEmpty());
+	}
+}
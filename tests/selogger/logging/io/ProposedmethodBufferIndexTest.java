@@ -0,0 +1,60 @@
+package selogger.logging.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
+
+
+public class ProposedmethodBufferIndexTest {
+
+	private ProposedmethodBuffer createBuffer() {
+		return ProposedmethodBuffer.create(int.class, 16, PrometObjectRecordingStrategy.Strong);
+	}
+
+	@Test
+	public void testLargestSize() {
+		ProposedmethodBufferIndex index = new ProposedmethodBufferIndex();
+		Assert.assertEquals(0, index.getLargestSize());
+
+		ProposedmethodBuffer b1 = createBuffer();
+		ProposedmethodBuffer b2 = createBuffer();
+		ProposedmethodBuffer b3 = createBuffer();
+		index.update(b1, 3);
+		index.update(b2, 200);
+		index.update(b3, 200);
+		Assert.assertEquals(3, index.size());
+		Assert.assertEquals(200, index.getLargestSize());
+		Assert.assertEquals(2, index.getBuffers(200).size());
+
+		index.update(b2, 5);
+		Assert.assertEquals(200, index.getLargestSize());
+		Assert.assertEquals(1, index.getBuffers(200).size());
+		Assert.assertSame(b3, index.getBuffers(200).get(0));
+
+		index.update(b3, 1);
+		Assert.assertEquals(5, index.getLargestSize());
+		Assert.assertSame(b2, index.getBuffers(5).get(0));
+		Assert.assertEquals(3, index.size());
+	}
+
+	@Test
+	public void testRemove() {
+		ProposedmethodBufferIndex index = new ProposedmethodBufferIndex();
+		ProposedmethodBuffer b1 = createBuffer();
+		ProposedmethodBuffer b2 = createBuffer();
+		index.update(b1, 4);
+		index.update(b2, 4);
+
+		// An empty buffer is removed from the index
+		index.update(b1, 0);
+		Assert.assertEquals(1, index.size());
+		Assert.assertSame(b2, index.getBuffers(4).get(0));
+
+		index.remove(b2);
+		index.remove(b2);
+		Assert.assertEquals(0, index.size());
+		Assert.assertEquals(0, index.getLargestSize());
+		Assert.assertTrue(index.getBuffers(4).isEmpty());
+	}
+}
@@ -0,0 +1,184 @@
+package selogger.logging.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
+
+
+public class ProposedmethodBufferTest {
+
+	@Test
+	public void testSizeExtension() {
+		int SIZE = 100;
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, SIZE, PrometObjectRecordingStrategy.Strong);
+		for (int i=1; i<=1000; i++) {
+			buf.addInt(i, i, i, SIZE);
+			Assert.assertEquals(Math.min(i, SIZE), buf.size());
+			Assert.assertEquals(i, buf.count());
+			Assert.assertEquals(i < SIZE ? 1 : i-SIZE+1, buf.getInt(0));
+			Assert.assertEquals(i, buf.getInt(buf.size()-1));
+			Assert.assertEquals(i < SIZE ? 1 : i-SIZE+1, buf.getSeqNum(0));
+			Assert.assertEquals(i < SIZE ? 1 : i-SIZE+1, buf.getThreadId(0));
+		}
+	}
+
+	@Test
+	public void testTrimWrappedBuffer() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, 8, PrometObjectRecordingStrategy.Strong);
+		for (int i=1; i<=13; i++) {
+			buf.addInt(i, i, 0, 8);
+		}
+		// The buffer keeps 6..13, and the oldest event is not at the beginning of the array
+		Assert.assertEquals(3, buf.trimOldEvents(3));
+		Assert.assertEquals(5, buf.size());
+		Assert.assertEquals(13, buf.count());
+		for (int i=0; i<5; i++) {
+			Assert.assertEquals(9 + i, buf.getInt(i));
+			Assert.assertEquals(9 + i, buf.getSeqNum(i));
+		}
+
+		// The buffer size is also reduced by trimming
+		buf.addInt(14, 14, 0, 8);
+		Assert.assertEquals(5, buf.size());
+		Assert.assertEquals(10, buf.getInt(0));
+		Assert.assertEquals(14, buf.getInt(4));
+	}
+
+	@Test
+	public void testEnsureSize() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(long.class, 8, PrometObjectRecordingStrategy.Strong);
+		for (int i=1; i<=10; i++) {
+			buf.addLong(i, i, 0, 8);
+		}
+		Assert.assertEquals(0, buf.ensureSize(8));
+		Assert.assertEquals(4, buf.ensureSize(4));
+		Assert.assertEquals(4, buf.size());
+		Assert.assertEquals(7, buf.getLong(0));
+		Assert.assertEquals(10, buf.getLong(3));
+
+		// Adding an event to a full buffer removes the oldest one
+		Assert.assertEquals(0, buf.addLong(11, 11, 0, 4));
+		Assert.assertEquals(8, buf.getLong(0));
+		Assert.assertEquals(11, buf.getLong(3));
+
+		// A smaller limit removes old events before adding a new one
+		Assert.assertEquals(-2, buf.addLong(12, 12, 0, 2));
+		Assert.assertEquals(2, buf.size());
+		Assert.assertEquals(11, buf.getLong(0));
+		Assert.assertEquals(12, buf.getLong(1));
+	}
+
+	@Test
+	public void testShrink() {
+		int SIZE = 1024;
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(Object.class, SIZE, PrometObjectRecordingStrategy.Strong);
+		for (int i=0; i<SIZE + 100; i++) {
+			buf.addObject(Integer.valueOf(i), i, 0, SIZE);
+		}
+		// Reallocation keeps the latest events in order
+		buf.ensureSize(10);
+		Assert.assertEquals(10, buf.size());
+		for (int i=0; i<10; i++) {
+			Assert.assertEquals(SIZE + 90 + i, buf.getSeqNum(i));
+		}
+		for (int i=0; i<100; i++) {
+			buf.addObject(Integer.valueOf(i), SIZE + 100 + i, 0, 10);
+		}
+		Assert.assertEquals(10, buf.size());
+		Assert.assertEquals(SIZE + 190, buf.getSeqNum(0));
+		Assert.assertEquals(SIZE + 199, buf.getSeqNum(9));
+	}
+
+	@Test
+	public void testRegrow() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, 8, PrometObjectRecordingStrategy.Strong);
+		for (int i=0; i<10; i++) {
+			buf.addInt(i, i, 0, 4);
+		}
+		Assert.assertEquals(4, buf.size());
+
+		// The buffer grows back by the amount the limit is raised
+		for (int i=10; i<20; i++) {
+			buf.addInt(i, i, 0, 6);
+		}
+		Assert.assertEquals(6, buf.size());
+		Assert.assertEquals(14, buf.getInt(0));
+
+		// The buffer never grows beyond its initial size
+		for (int i=20; i<40; i++) {
+			buf.addInt(i, i, 0, 100);
+		}
+		Assert.assertEquals(8, buf.size());
+		Assert.assertEquals(32, buf.getInt(0));
+	}
+
+	@Test
+	public void testRegrowAfterTrim() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, 8, PrometObjectRecordingStrategy.Strong);
+		for (int i=0; i<8; i++) {
+			buf.addInt(i, i, 0, 8);
+		}
+		// A trimmed buffer keeps its reduced size while the limit is unchanged
+		buf.trimOldEvents(4);
+		for (int i=8; i<16; i++) {
+			Assert.assertEquals(0, buf.addInt(i, i, 0, 8));
+		}
+		Assert.assertEquals(4, buf.size());
+	}
+
+	@Test
+	public void testVoidBuffer() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(void.class, 2, PrometObjectRecordingStrategy.Strong);
+		Assert.assertEquals(1, buf.addInt(0, 5, 1, 2));
+		Assert.assertEquals(1, buf.addObject("a", 6, 1, 2));
+		Assert.assertEquals(0, buf.addInt(0, 7, 2, 2));
+		Assert.assertEquals(3, buf.count());
+		Assert.assertEquals(2, buf.size());
+		Assert.assertEquals(6, buf.getSeqNum(0));
+		Assert.assertEquals(2, buf.getThreadId(1));
+		// A void event is stored without a value
+		Assert.assertEquals("3,2,,6,1,,7,2", buf.toString());
+		Assert.assertTrue(buf.getEventBytes() < ProposedmethodBuffer.create(int.class, 2, PrometObjectRecordingStrategy.Strong).getEventBytes());
+	}
+
+	@Test
+	public void testFootprint() {
+		AtomicLong usage = new AtomicLong();
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, 1024, PrometObjectRecordingStrategy.Strong, usage);
+		long initial = buf.getFootprint();
+		Assert.assertEquals(ProposedmethodBuffer.OVERHEAD_BYTES + 32 * buf.getEventBytes(), initial);
+		Assert.assertEquals(initial, usage.get());
+
+		// Events stored in the allocated arrays do not change the footprint
+		for (int i=0; i<32; i++) {
+			buf.addInt(i, i, 0, 1024);
+		}
+		Assert.assertEquals(initial, usage.get());
+
+		// Growing the arrays is charged at once
+		buf.addInt(32, 32, 0, 1024);
+		Assert.assertEquals(ProposedmethodBuffer.OVERHEAD_BYTES + 64 * buf.getEventBytes(), buf.getFootprint());
+		Assert.assertEquals(buf.getFootprint(), usage.get());
+
+		// Removing events releases memory only when the arrays shrink
+		buf.ensureSize(30);
+		Assert.assertEquals(buf.getFootprint(), usage.get());
+		Assert.assertEquals(ProposedmethodBuffer.OVERHEAD_BYTES + 32 * buf.getEventBytes(), buf.getFootprint());
+
+		// A retired buffer no longer changes the usage
+		buf.retire();
+		for (int i=0; i<100; i++) {
+			buf.addInt(i, i, 0, 1024);
+		}
+		Assert.assertEquals(initial, usage.get());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testTypeMismatch() {
+		ProposedmethodBuffer buf = ProposedmethodBuffer.create(int.class, 2, PrometObjectRecordingStrategy.Strong);
+		buf.addLong(0, 0, 0, 2);
+	}
+}
@@ -0,0 +1,329 @@
+package selogger.logging.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import selogger.logging.io.ProposedmethodLogger.PrometObjectRecordingStrategy;
+import selogger.weaver.DataInfo;
+
+
+public class ProposedmethodLoggerTest {
+
+	/**
+	 * A temporary folder for execution traces
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @return the total number of events kept in the buffers of a logger
+	 */
+	private int countStoredEvents(ProposedmethodLogger log, int locations) {
+		int total = 0;
+		for (int i=0; i<locations; i++) {
+			ProposedmethodBuffer b = log.prepareBuffer(int.class, i);
+			total += b.size();
+		}
+		return total;
+	}
+
+	@Test
+	public void testRecordWithinCapacity() {
+		ProposedmethodLogger log = new ProposedmethodLogger(null, 8, 2, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		log.recordEvent(0, 1);
+		log.recordEvent(0, 2);
+		log.recordEvent(1, 3);
+
+		ProposedmethodBuffer b = log.prepareBuffer(int.class, 0);
+		Assert.assertEquals(2, b.size());
+		Assert.assertEquals(1, b.getInt(0));
+		Assert.assertEquals(2, b.getInt(1));
+		Assert.assertEquals(3, countStoredEvents(log, 2));
+	}
+
+	@Test
+	public void testCapacity() {
+		ProposedmethodLogger log = new ProposedmethodLogger(null, 16, 2, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<1000; i++) {
+			log.recordEvent(i % 4, i);
+		}
+		// The total number of events never exceeds the capacity
+		Assert.assertTrue(countStoredEvents(log, 4) <= 16);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final int LOCATIONS = 64;
+		final int CAPACITY = 1024;
+		final ProposedmethodLogger log = new ProposedmethodLogger(null, CAPACITY, 4, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		// Record an event by the main thread first, as other test cases assume that the main thread has thread ID 0
+		log.recordEvent(0, 0);
+		Thread[] threads = new Thread[8];
+		for (int t=0; t<threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i=0; i<100000; i++) {
+						log.recordEvent((i + offset) % LOCATIONS, i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		Assert.assertTrue(countStoredEvents(log, LOCATIONS) <= CAPACITY);
+	}
+
+	@Test
+	public void testStatistics() {
+		ProposedmethodLogger log = new ProposedmethodLogger(null, 16, 2, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<1000; i++) {
+			log.recordEvent(i % 4, i);
+		}
+		PrometTrimStatistics stat = log.getStatistics();
+		Assert.assertEquals(1000, stat.getRecordedEvents());
+		Assert.assertTrue(stat.getTrimRuns() > 0);
+		Assert.assertTrue(stat.getTrimmedBuffers() > 0);
+		Assert.assertTrue(stat.getBudgetChanges() > 0);
+		Assert.assertTrue(stat.getMaxBufferSize() < 16);
+		// Every recorded event is either stored in a buffer, evicted, or overwritten in a full ring buffer
+		Assert.assertTrue(countStoredEvents(log, 4) + stat.getEvictedEvents() <= 1000);
+		Assert.assertTrue(stat.getEvictedEvents() > 0);
+	}
+
+	@Test
+	public void testStatisticsInJsonFooter() throws IOException {
+		File trace = new File(folder.getRoot(), "recentdata.json");
+		ProposedmethodLogger log = new ProposedmethodLogger(trace, 16, 2, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<100; i++) {
+			log.recordEvent(i % 4, i);
+		}
+		log.close();
+
+		JsonNode node = new ObjectMapper().readTree(trace);
+		Assert.assertEquals("Promet", node.get("format").asText());
+		Assert.assertTrue(node.get("events").isArray());
+		JsonNode trim = node.get("trim");
+		PrometTrimStatistics stat = log.getStatistics();
+		Assert.assertEquals(stat.getMaxBufferSize(), trim.get("maxBufferSize").asInt());
+		Assert.assertEquals(100, trim.get("recordedEvents").asLong());
+		Assert.assertEquals(stat.getEvictedEvents(), trim.get("evictedEvents").asLong());
+		Assert.assertEquals(stat.getTrimRuns(), trim.get("trimRuns").asLong());
+		Assert.assertEquals(stat.getTrimmedBuffers(), trim.get("trimmedBuffers").asLong());
+		Assert.assertEquals(stat.getBudgetChanges(), trim.get("budgetChanges").asLong());
+	}
+
+	@Test
+	public void testByteBudget() {
+		final int LOCATIONS = 8;
+		final long BUDGET = 8 * 1024;
+		ProposedmethodLogger log = new ProposedmethodLogger(null, 1024, 4, BUDGET, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<100000; i++) {
+			log.recordEvent(i % LOCATIONS, i);
+		}
+		long footprint = 0;
+		for (int i=0; i<LOCATIONS; i++) {
+			footprint += log.prepareBuffer(int.class, i).getFootprint();
+		}
+		Assert.assertEquals(footprint, log.getUsage());
+		Assert.assertTrue(log.getUsage() <= BUDGET);
+		Assert.assertTrue(log.getStatistics().getTrimRuns() > 0);
+	}
+
+	@Test
+	public void testByteBudgetDependsOnValueType() {
+		final long BUDGET = 16 * 1024;
+		ProposedmethodLogger bytes = new ProposedmethodLogger(null, 4096, 4, BUDGET, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		ProposedmethodLogger objects = new ProposedmethodLogger(null, 4096, 4, BUDGET, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<100000; i++) {
+			bytes.recordEvent(0, (byte)i);
+			objects.recordEvent(0, Integer.valueOf(i));
+		}
+		int byteEvents = bytes.prepareBuffer(byte.class, 0).size();
+		int objectEvents = objects.prepareBuffer(Object.class, 0).size();
+		// A primitive event costs less than an object reference, so more events fit in the same budget
+		Assert.assertTrue(byteEvents > objectEvents);
+		Assert.assertTrue(bytes.getUsage() <= BUDGET);
+		Assert.assertTrue(objects.getUsage() <= BUDGET);
+	}
+
+	@Test
+	public void testAsyncTrim() throws InterruptedException {
+		final int CAPACITY = 1000;
+		ProposedmethodLogger log = new ProposedmethodLogger(null, CAPACITY, 4, 0, true, false, PrometObjectRecordingStrategy.Strong, true, null);
+		// Record events until the usage exceeds the high-water mark (90% of the capacity)
+		int i = 0;
+		while (log.getUsage() <= CAPACITY * 9 / 10) {
+			log.recordEvent(i % 10, i);
+			i++;
+		}
+		Assert.assertEquals(0, log.getStatistics().getFallbackTrims());
+
+		// The background thread trims the buffers down to the low-water mark (80% of the capacity)
+		long deadline = System.currentTimeMillis() + 10000;
+		while (log.getUsage() > CAPACITY * 8 / 10 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(log.getUsage() <= CAPACITY * 8 / 10);
+		Assert.assertTrue(log.getStatistics().getTrimRuns() > 0);
+		Assert.assertEquals(log.getUsage(), countStoredEvents(log, 10));
+		log.close();
+	}
+
+	@Test
+	public void testAsyncTrimKeepsCapacity() throws InterruptedException {
+		final int CAPACITY = 256;
+		final ProposedmethodLogger log = new ProposedmethodLogger(null, CAPACITY, 4, 0, true, false, PrometObjectRecordingStrategy.Strong, true, null);
+		Thread[] threads = new Thread[4];
+		for (int t=0; t<threads.length; t++) {
+			final int offset = t * 16;
+			threads[t] = new Thread(() -> {
+				for (int i=0; i<100000; i++) {
+					log.recordEvent(offset + (i % 16), i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		// Even if the background thread cannot keep up, the recording threads keep the usage within the capacity
+		Assert.assertTrue(log.getUsage() <= CAPACITY);
+		Assert.assertEquals(log.getUsage(), countStoredEvents(log, 64));
+		log.close();
+	}
+
+	@Test
+	public void testProfileQuotas() {
+		List<DataInfo> dataids = PrometProfileTest.createDataInfo();
+		PrometProfile profile = new PrometProfile();
+		profile.addFrequency(PrometProfile.getKey(dataids.get(1)), 900);
+		profile.addFrequency(PrometProfile.getKey(dataids.get(2)), 100);
+
+		ProposedmethodLogger log = new ProposedmethodLogger(null, 100, 4, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		log.setProfile(profile);
+		log.onCreated(dataids);
+		for (int i=0; i<10000; i++) {
+			log.recordEvent(1, i);
+			log.recordEvent(1, i);
+			log.recordEvent(2, i);
+		}
+		// Buffers are created with the quotas and no trimming occurs
+		Assert.assertEquals(0, log.getStatistics().getTrimRuns());
+		Assert.assertEquals(90, log.prepareBuffer(int.class, 1).size());
+		Assert.assertEquals(10, log.prepareBuffer(int.class, 2).size());
+		Assert.assertEquals(9999, log.prepareBuffer(int.class, 1).getInt(89));
+		// A location missing in the profile is recorded as usual
+		log.recordEvent(0, "x");
+		Assert.assertEquals(1, log.prepareBuffer(Object.class, 0).size());
+		Assert.assertTrue(log.getUsage() <= 100);
+	}
+
+	@Test
+	public void testRegrowAfterBurst() {
+		final int CAPACITY = 100;
+		ProposedmethodLogger log = new ProposedmethodLogger(null, CAPACITY, 20, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		// A burst lowers the limit
+		for (int i=0; i<CAPACITY; i++) {
+			log.recordEvent(0, i);
+		}
+		log.recordEvent(1, 0);
+		Assert.assertEquals(80, log.getStatistics().getMaxBufferSize());
+		Assert.assertEquals(81, log.getUsage());
+
+		// The limit is raised again after the usage stays below the watermark,
+		// and the trimmed buffer records more events than the limit after the burst
+		ProposedmethodBuffer b = log.prepareBuffer(int.class, 0);
+		int maxSize = 0;
+		for (int i=0; i<2000; i++) {
+			log.recordEvent(0, i);
+			maxSize = Math.max(maxSize, b.size());
+			Assert.assertTrue(log.getUsage() <= CAPACITY);
+		}
+		Assert.assertEquals(1, log.getStatistics().getRegrowths());
+		Assert.assertEquals(CAPACITY - 1, maxSize);
+	}
+
+	@Test
+	public void testRegrowBackoff() {
+		final int CAPACITY = 100;
+		ProposedmethodLogger log = new ProposedmethodLogger(null, CAPACITY, 20, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		for (int i=0; i<CAPACITY; i++) {
+			log.recordEvent(0, i);
+		}
+		log.recordEvent(1, 0);
+		for (int i=0; i<3; i++) {
+			log.recordEvent(2 + i, 0);
+		}
+		// Each raised limit is trimmed again because location 0 fills the space,
+		// so the interval between attempts doubles instead of oscillating on every interval
+		for (int i=0; i<200000; i++) {
+			log.recordEvent(0, i);
+			Assert.assertTrue(log.getUsage() <= CAPACITY);
+		}
+		long regrowths = log.getStatistics().getRegrowths();
+		Assert.assertTrue(regrowths > 0);
+		Assert.assertTrue(regrowths <= 10);
+		Assert.assertTrue(log.getStatistics().getTrimRuns() <= regrowths + 2);
+	}
+
+	@Test
+	public void testPartialSaveStartsNewInterval() throws IOException {
+		File trace = new File(folder.getRoot(), "recentdata.json");
+		ProposedmethodLogger log = new ProposedmethodLogger(trace, 16, 4, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		log.onCreated(PrometProfileTest.createDataInfo());
+		for (int i=0; i<100; i++) {
+			log.recordEvent(1, i);
+			log.recordEvent(2, i);
+		}
+		Assert.assertTrue(log.getStatistics().getMaxBufferSize() < 16);
+		ProposedmethodBuffer old = log.prepareBuffer(int.class, 1);
+
+		log.save(true);
+
+		// The saved file contains the events of the first interval
+		JsonNode node = new ObjectMapper().readTree(new File(folder.getRoot(), "recentdata.json.1.json"));
+		Assert.assertEquals(2, node.get("events").size());
+		Assert.assertEquals(99, node.get("events").get(0).get("value").get(old.size() - 1).asInt());
+
+		// The next interval starts with the initial budget
+		Assert.assertEquals(0, log.getUsage());
+		Assert.assertEquals(16, log.getStatistics().getMaxBufferSize());
+		Assert.assertEquals(1, log.getStatistics().getIntervals());
+		for (int i=0; i<16; i++) {
+			log.recordEvent(1, i);
+		}
+		Assert.assertEquals(16, log.prepareBuffer(int.class, 1).size());
+		Assert.assertEquals(16, log.getUsage());
+		Assert.assertNotSame(old, log.prepareBuffer(int.class, 1));
+	}
+
+	@Test
+	public void testSnapshotKeepsBuffers() throws IOException {
+		File trace = new File(folder.getRoot(), "recentdata.json");
+		ProposedmethodLogger log = new ProposedmethodLogger(trace, 16, 4, 0, false, false, PrometObjectRecordingStrategy.Strong, true, null);
+		log.onCreated(PrometProfileTest.createDataInfo());
+		for (int i=0; i<8; i++) {
+			log.recordEvent(1, i);
+		}
+		ProposedmethodBuffer b = log.prepareBuffer(int.class, 1);
+		log.save(false);
+		Assert.assertTrue(new File(folder.getRoot(), "recentdata.json.1.json").exists());
+		// A snapshot does not discard the recorded events
+		Assert.assertSame(b, log.prepareBuffer(int.class, 1));
+		Assert.assertEquals(8, log.getUsage());
+		Assert.assertEquals(0, log.getStatistics().getIntervals());
+	}
+}
@@ -0,0 +1,75 @@
+package selogger.logging.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class DataIdTableTest {
+
+	@Test
+	public void testGetAndSet() {
+		DataIdTable<String> table = new DataIdTable<>();
+		Assert.assertNull(table.get(0));
+		Assert.assertNull(table.get(100000));
+		Assert.assertEquals(0, table.length());
+
+		table.set(0, "a");
+		table.set(DataIdTable.PAGE_SIZE - 1, "b");
+		table.set(DataIdTable.PAGE_SIZE, "c");
+		Assert.assertEquals("a", table.get(0));
+		Assert.assertEquals("b", table.get(DataIdTable.PAGE_SIZE - 1));
+		Assert.assertEquals("c", table.get(DataIdTable.PAGE_SIZE));
+		Assert.assertNull(table.get(1));
+		Assert.assertEquals(DataIdTable.PAGE_SIZE * 2, table.length());
+	}
+
+	@Test
+	public void testSparseIds() {
+		DataIdTable<String> table = new DataIdTable<>();
+		int id = DataIdTable.PAGE_SIZE * 1000 + 5;
+		table.set(id, "x");
+		Assert.assertEquals("x", table.get(id));
+		Assert.assertNull(table.get(5));
+		Assert.assertTrue(id < table.length());
+
+		// Only the objects actually stored are visited
+		ArrayList<String> values = new ArrayList<>();
+		table.set(3, "y");
+		table.forEach(values::add);
+		Assert.assertEquals(2, values.size());
+		Assert.assertEquals("y", values.get(0));
+		Assert.assertEquals("x", values.get(1));
+	}
+
+	@Test
+	public void testComputeIfAbsent() throws InterruptedException {
+		DataIdTable<AtomicLong> table = new DataIdTable<>();
+		AtomicInteger created = new AtomicInteger();
+		int THREADS = 4;
+		int IDS = DataIdTable.PAGE_SIZE * 4;
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			Thread th = new Thread(() -> {
+				for (int i=0; i<IDS; i++) {
+					table.computeIfAbsent(i, id -> {
+						created.incrementAndGet();
+						return new AtomicLong();
+					}).incrementAndGet();
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th: threads) th.join();
+
+		// Every thread shares the same counter for each data ID
+		Assert.assertEquals(IDS, created.get());
+		for (int i=0; i<IDS; i++) {
+			Assert.assertEquals(THREADS, table.get(i).get());
+		}
+	}
+}
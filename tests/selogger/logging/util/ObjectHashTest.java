@@ -0,0 +1,23 @@
+package selogger.logging.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ObjectHashTest {
+
+	@Test
+	public void testObjectHash() {
+		Object o = new Object();
+		String s = "abc";
+		long h1 = ObjectHash.of(o);
+		long h2 = ObjectHash.of(s);
+		Assert.assertEquals(h1, ObjectHash.of(o));
+		Assert.assertEquals("java.lang.Object", ObjectHash.getClassName(h1));
+		Assert.assertEquals("java.lang.String", ObjectHash.getClassName(h2));
+		Assert.assertEquals(Integer.toHexString(System.identityHashCode(o)), ObjectHash.getId(h1));
+		Assert.assertEquals(Integer.toHexString(System.identityHashCode(s)), ObjectHash.getId(h2));
+		Assert.assertEquals(ObjectHash.NULL, ObjectHash.of(null));
+	}
+
+}
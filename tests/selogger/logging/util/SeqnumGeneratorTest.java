@@ -0,0 +1,63 @@
+package selogger.logging.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import selogger.logging.util.SeqnumGenerator.Ordering;
+
+
+public class SeqnumGeneratorTest {
+
+	@Test
+	public void testGlobal() {
+		AtomicLong counter = new AtomicLong(5);
+		SeqnumGenerator seqnums = new SeqnumGenerator(counter, Ordering.Global);
+		Assert.assertEquals(5, seqnums.next());
+		Assert.assertEquals(6, seqnums.next());
+		Assert.assertEquals(7, counter.get());
+	}
+
+	@Test
+	public void testNone() {
+		AtomicLong counter = new AtomicLong(5);
+		SeqnumGenerator seqnums = new SeqnumGenerator(counter, Ordering.None);
+		Assert.assertEquals(SeqnumGenerator.NONE, seqnums.next());
+		Assert.assertEquals(5, counter.get());
+	}
+
+	@Test
+	public void testBlock() throws Exception {
+		final int THREADS = 4;
+		final int EVENTS = SeqnumGenerator.BLOCK_SIZE * 3 + 10;
+		AtomicLong counter = new AtomicLong(0);
+		SeqnumGenerator seqnums = new SeqnumGenerator(counter, Ordering.Block);
+		long[][] results = new long[THREADS][EVENTS];
+		ArrayList<Thread> threads = new ArrayList<>();
+		for (int t=0; t<THREADS; t++) {
+			final long[] result = results[t];
+			Thread th = new Thread(() -> {
+				for (int i=0; i<EVENTS; i++) {
+					result[i] = seqnums.next();
+				}
+			});
+			threads.add(th);
+			th.start();
+		}
+		for (Thread th: threads) th.join();
+
+		// Sequence numbers are unique and increase in each thread
+		boolean[] used = new boolean[(int)counter.get()];
+		for (long[] result: results) {
+			for (int i=0; i<EVENTS; i++) {
+				if (i > 0) Assert.assertTrue(result[i - 1] < result[i]);
+				Assert.assertFalse(used[(int)result[i]]);
+				used[(int)result[i]] = true;
+			}
+		}
+		Assert.assertEquals(THREADS * SeqnumGenerator.BLOCK_SIZE * 4, counter.get());
+	}
+
+}
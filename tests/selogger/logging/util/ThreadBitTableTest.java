@@ -0,0 +1,103 @@
+package selogger.logging.util;
+
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ThreadBitTableTest {
+
+	@Test
+	public void testSet() {
+		ThreadBitTable table = new ThreadBitTable();
+		ThreadContext c = ThreadContext.get();
+		Assert.assertFalse(table.get(5));
+		table.set(c, 5);
+		table.set(c, 5);
+		table.set(c, 64);
+		table.set(c, ThreadBitTable.PAGE_SIZE * 2 + 1);
+		Assert.assertTrue(table.get(5));
+		Assert.assertFalse(table.get(4));
+		Assert.assertFalse(table.get(6));
+		Assert.assertTrue(table.get(64));
+		Assert.assertFalse(table.get(0));
+		Assert.assertTrue(table.get(ThreadBitTable.PAGE_SIZE * 2 + 1));
+		Assert.assertFalse(table.get(ThreadBitTable.PAGE_SIZE + 1));
+		Assert.assertFalse(table.get(ThreadBitTable.PAGE_SIZE * 10));
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		// Assign a thread ID to the main thread first, as other test cases assume
+		ThreadContext.get();
+		ThreadBitTable table = new ThreadBitTable();
+		Thread[] threads = new Thread[4];
+		for (int i=0; i<threads.length; i++) {
+			final int offset = i;
+			threads[i] = new Thread(() -> {
+				ThreadContext c = ThreadContext.get();
+				for (int j=offset; j<10000; j+=threads.length) {
+					table.set(c, j);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread th: threads) {
+			th.join();
+		}
+		// The bits of terminated threads are kept
+		for (int j=0; j<10000; j++) {
+			Assert.assertTrue(table.get(j));
+		}
+		Assert.assertFalse(table.get(10000));
+	}
+
+	@Test
+	public void testTerminatedThreads() throws Exception {
+		ThreadContext.get();
+		ThreadBitTable table = new ThreadBitTable();
+		table.set(ThreadContext.get(), 1);
+		// Threads of a pool are replaced one after another
+		for (int i=0; i<100; i++) {
+			final int dataId = ThreadBitTable.PAGE_SIZE + i;
+			Thread th = new Thread(() -> {
+				table.set(ThreadContext.get(), dataId);
+			});
+			th.start();
+			th.join();
+		}
+		Assert.assertTrue(table.getThreadCount() <= 32);
+		Assert.assertTrue(table.get(1));
+		for (int i=0; i<100; i++) {
+			Assert.assertTrue(table.get(ThreadBitTable.PAGE_SIZE + i));
+		}
+		Assert.assertFalse(table.get(ThreadBitTable.PAGE_SIZE + 100));
+		Assert.assertFalse(table.get(0));
+		// Only the main thread remains after taking a snapshot
+		BitSet bits = table.getBits();
+		Assert.assertEquals(101, bits.cardinality());
+		Assert.assertTrue(bits.get(1));
+		Assert.assertTrue(bits.get(ThreadBitTable.PAGE_SIZE + 99));
+		Assert.assertEquals(1, table.getThreadCount());
+	}
+
+	@Test
+	public void testTables() {
+		// Tables share a slot in ThreadContext instead of allocating their own
+		int before = ThreadContext.newLocalIndex();
+		ThreadBitTable a = new ThreadBitTable();
+		ThreadBitTable b = new ThreadBitTable();
+		Assert.assertEquals(before + 1, ThreadContext.newLocalIndex());
+		// A thread may alternate between tables
+		ThreadContext c = ThreadContext.get();
+		a.set(c, 7);
+		b.set(c, 8);
+		a.set(c, 7);
+		Assert.assertTrue(a.get(7));
+		Assert.assertFalse(a.get(8));
+		Assert.assertTrue(b.get(8));
+		Assert.assertFalse(b.get(7));
+	}
+
+}
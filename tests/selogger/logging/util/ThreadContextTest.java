@@ -0,0 +1,39 @@
+package selogger.logging.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ThreadContextTest {
+
+	@Test
+	public void testThreadId() throws Exception {
+		ThreadContext c = ThreadContext.get();
+		Assert.assertSame(c, ThreadContext.get());
+		Assert.assertEquals(ThreadId.get(), c.getThreadId());
+		Assert.assertTrue(c.isEnabled());
+
+		AtomicReference<ThreadContext> other = new AtomicReference<>();
+		Thread th = new Thread(() -> other.set(ThreadContext.get()));
+		th.start();
+		th.join();
+		Assert.assertNotSame(c, other.get());
+		Assert.assertNotEquals(c.getThreadId(), other.get().getThreadId());
+	}
+
+	@Test
+	public void testLocal() {
+		int first = ThreadContext.newLocalIndex();
+		int second = ThreadContext.newLocalIndex();
+		ThreadContext c = ThreadContext.get();
+		Assert.assertNull(c.getLocal(first));
+		Assert.assertNull(c.getLocal(second));
+		c.setLocal(second, "b");
+		c.setLocal(first, "a");
+		Assert.assertEquals("a", c.getLocal(first));
+		Assert.assertEquals("b", c.getLocal(second));
+	}
+
+}
@@ -0,0 +1,97 @@
+package selogger.logging.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ThreadCounterTableTest {
+
+	@Test
+	public void testIncrement() throws Exception {
+		ThreadCounterTable table = new ThreadCounterTable();
+		Assert.assertEquals(0, table.length());
+		Assert.assertEquals(0, table.get(5));
+		ThreadContext c = ThreadContext.get();
+		table.increment(c, 5);
+		table.increment(c, 5);
+		table.increment(c, ThreadCounterTable.PAGE_SIZE * 2 + 1);
+		Assert.assertEquals(2, table.get(5));
+		Assert.assertEquals(1, table.get(ThreadCounterTable.PAGE_SIZE * 2 + 1));
+		Assert.assertEquals(0, table.get(ThreadCounterTable.PAGE_SIZE + 1));
+		Assert.assertEquals(ThreadCounterTable.PAGE_SIZE * 3, table.length());
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		// Assign a thread ID to the main thread first, as other test cases assume
+		ThreadContext.get();
+		ThreadCounterTable table = new ThreadCounterTable();
+		Thread[] threads = new Thread[4];
+		for (int i=0; i<threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				ThreadContext c = ThreadContext.get();
+				for (int j=0; j<10000; j++) {
+					table.increment(c, 1);
+					table.increment(c, j % 3000);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread th: threads) {
+			th.join();
+		}
+		// The counters of terminated threads are kept
+		Assert.assertEquals(threads.length * (10000 + 4), table.get(1));
+		Assert.assertEquals(threads.length * 4, table.get(0));
+		Assert.assertEquals(threads.length * 3, table.get(2999));
+	}
+
+	@Test
+	public void testTerminatedThreads() throws Exception {
+		ThreadContext.get();
+		ThreadCounterTable table = new ThreadCounterTable();
+		table.increment(ThreadContext.get(), 1);
+		// Threads of a pool are replaced one after another
+		for (int i=0; i<100; i++) {
+			final int dataId = ThreadCounterTable.PAGE_SIZE * (i % 3);
+			Thread th = new Thread(() -> {
+				ThreadContext c = ThreadContext.get();
+				table.increment(c, 1);
+				table.increment(c, dataId);
+			});
+			th.start();
+			th.join();
+		}
+		Assert.assertTrue(table.getThreadCount() <= 32);
+		Assert.assertEquals(101, table.get(1));
+		Assert.assertEquals(34, table.get(0));
+		Assert.assertEquals(33, table.get(ThreadCounterTable.PAGE_SIZE));
+		Assert.assertEquals(ThreadCounterTable.PAGE_SIZE * 3, table.length());
+		// Only the main thread remains after taking a snapshot
+		long[] counts = table.getCounts();
+		Assert.assertEquals(ThreadCounterTable.PAGE_SIZE * 3, counts.length);
+		Assert.assertEquals(101, counts[1]);
+		Assert.assertEquals(34, counts[0]);
+		Assert.assertEquals(33, counts[ThreadCounterTable.PAGE_SIZE * 2]);
+		Assert.assertEquals(1, table.getThreadCount());
+		table.increment(ThreadContext.get(), 1);
+		Assert.assertEquals(102, table.get(1));
+	}
+
+	@Test
+	public void testTables() {
+		// Tables share a slot in ThreadContext instead of allocating their own
+		int before = ThreadContext.newLocalIndex();
+		ThreadCounterTable a = new ThreadCounterTable();
+		ThreadCounterTable b = new ThreadCounterTable();
+		Assert.assertEquals(before + 1, ThreadContext.newLocalIndex());
+		// A thread may alternate between tables
+		ThreadContext c = ThreadContext.get();
+		a.increment(c, 7);
+		b.increment(c, 7);
+		a.increment(c, 7);
+		Assert.assertEquals(2, a.get(7));
+		Assert.assertEquals(1, b.get(7));
+	}
+
+}
@@ -0,0 +1,25 @@
+package selogger.logging.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class WeakObjectRefTest {
+
+	@Test
+	public void testReuse() {
+		String s = new String("abc");
+		WeakObjectRef ref = WeakObjectRef.of(s);
+		Assert.assertSame(ref, WeakObjectRef.of(s));
+		Assert.assertSame(s, ref.get());
+		Assert.assertEquals("java.lang.String", ref.getClassName());
+		Assert.assertEquals(Integer.toHexString(System.identityHashCode(s)), ref.getId());
+
+		// A cleared reference is replaced
+		ref.clear();
+		WeakObjectRef another = WeakObjectRef.of(s);
+		Assert.assertNotSame(ref, another);
+		Assert.assertSame(s, another.get());
+	}
+
+}
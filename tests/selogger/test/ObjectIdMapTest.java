@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import org.junit.Assert;
 import org.junit.Test;
 
+import selogger.logging.util.ObjectId;
 import selogger.logging.util.ObjectIdMap;
 
 /**
@@ -98,6 +99,31 @@ public class ObjectIdMapTest {
 		Assert.assertEquals(3, map.getId(3));
 		Assert.assertEquals(0, map.getId(null));
 	}
-	
-	
+
+	@Test
+	public void testObjectId() {
+		ObjectIdMap map = new ObjectIdMap(10);
+		Object o = new Object();
+		ObjectId id = map.getObjectId(o);
+		Assert.assertEquals(1, id.getId());
+		Assert.assertEquals("java.lang.Object", id.getClassName());
+		Assert.assertNull(id.getContent());
+		// The same descriptor is reused for the object
+		Assert.assertSame(id, map.getObjectId(o));
+		Assert.assertEquals(1, map.getId(o));
+
+		Exception e = new Exception("message");
+		ObjectId exceptionId = map.getObjectId(e);
+		Assert.assertEquals(2, exceptionId.getId());
+		Assert.assertEquals("message", exceptionId.getContent());
+		Assert.assertSame(exceptionId, map.getObjectId(e));
+
+		String s = "abc";
+		ObjectId stringId = map.getObjectId(s);
+		Assert.assertEquals(3, stringId.getId());
+		Assert.assertEquals("abc", stringId.getContent());
+		Assert.assertEquals(3, map.getObjectId(s).getId());
+		Assert.assertNull(map.getObjectId(null));
+	}
+
 }
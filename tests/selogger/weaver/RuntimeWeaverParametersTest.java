@@ -7,6 +7,9 @@ import java.util.Date;
 
 import org.junit.Test;
 
+import selogger.logging.io.LatestEventLogger.EventStorage;
+import selogger.logging.io.LatestEventLogger.ObjectRecordingStrategy;
+import selogger.logging.util.SeqnumGenerator.Ordering;
 import selogger.weaver.RuntimeWeaver.Mode;
 
 
@@ -36,4 +39,89 @@ public class RuntimeWeaverParametersTest {
 		assertEquals(today, params.getOutputDirname());
 	}
 
+	@Test
+	public void testBudget() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=promet");
+		assertEquals(0, params.getBudget());
+
+		params = new RuntimeWeaverParameters("format=promet,budget=4096");
+		assertEquals(4096, params.getBudget());
+
+		params = new RuntimeWeaverParameters("format=promet,budget=64k");
+		assertEquals(64 * 1024, params.getBudget());
+
+		params = new RuntimeWeaverParameters("format=promet,budget=512M");
+		assertEquals(512L * 1024 * 1024, params.getBudget());
+
+		params = new RuntimeWeaverParameters("format=promet,budget=4g");
+		assertEquals(4L * 1024 * 1024 * 1024, params.getBudget());
+	}
+
+	@Test
+	public void testAsyncTrim() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=promet");
+		assertFalse(params.isAsyncTrimEnabled());
+
+		params = new RuntimeWeaverParameters("format=promet,asynctrim=true");
+		assertTrue(params.isAsyncTrimEnabled());
+	}
+
+	@Test
+	public void testProfile() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=promet");
+		assertNull(params.getProfile());
+
+		params = new RuntimeWeaverParameters("format=promet,profile=eventfreq.json");
+		assertEquals("eventfreq.json", params.getProfile().getName());
+	}
+
+	@Test
+	public void testArena() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=nearomni");
+		assertEquals(EventStorage.Buffer, params.getEventStorage());
+
+		params = new RuntimeWeaverParameters("format=nearomni,arena=true");
+		assertEquals(EventStorage.Arena, params.getEventStorage());
+
+		params = new RuntimeWeaverParameters("format=nearomni,arena=mmap");
+		assertEquals(EventStorage.MappedArena, params.getEventStorage());
+	}
+
+	@Test
+	public void testStripes() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=nearomni");
+		assertEquals(0, params.getStripeCount());
+
+		params = new RuntimeWeaverParameters("format=nearomni,stripes=8");
+		assertEquals(8, params.getStripeCount());
+	}
+
+	@Test
+	public void testSeqnumOrdering() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=nearomni");
+		assertEquals(Ordering.Global, params.getSeqnumOrdering());
+
+		params = new RuntimeWeaverParameters("format=nearomni,seqnum=block");
+		assertEquals(Ordering.Block, params.getSeqnumOrdering());
+
+		params = new RuntimeWeaverParameters("format=nearomni,seqnum=none");
+		assertEquals(Ordering.None, params.getSeqnumOrdering());
+	}
+
+	@Test
+	public void testInlineCounter() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=freq");
+		assertFalse(params.isInlineCounterEnabled());
+
+		params = new RuntimeWeaverParameters("format=freq,inline=true");
+		assertEquals(RuntimeWeaver.Mode.Frequency, params.getMode());
+		assertTrue(params.isInlineCounterEnabled());
+	}
+
+	@Test
+	public void testKeepObjectHash() {
+		RuntimeWeaverParameters params = new RuntimeWeaverParameters("format=nearomni,keepobj=hash");
+		assertEquals(ObjectRecordingStrategy.Hash, params.getObjectRecordingStrategy());
+	}
+
 }
@@ -0,0 +1,92 @@
+package selogger.weaver;
+
+import java.io.File;
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import selogger.EventType;
+import selogger.logging.Logging;
+import selogger.logging.io.CoverageLogger;
+import selogger.logging.io.CoverageLogger.Summary;
+import selogger.testutil.WeaveClassLoader;
+
+/**
+ * This test class checks the line and branch coverage recorded by CoverageLogger.
+ */
+public class WeaverCoverageTest {
+
+	/**
+	 * A temporary folder for execution traces
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void testTypeCheck(boolean inline) throws Exception {
+		WeaveConfig config = new WeaveConfig(WeaveConfig.KEY_RECORD_ALL);
+		config.setInlineCounters(inline);
+		WeaveClassLoader loader = new WeaveClassLoader(config);
+		Class<?> wovenClass = loader.loadAndWeaveClass("selogger.testdata.SimpleTarget");
+
+		File trace = folder.newFile();
+		CoverageLogger logger = new CoverageLogger(trace, true, inline, null);
+		logger.onCreated(loader.getWeaveLog().getDataEntries());
+		Logging.setLogger(logger);
+
+		Summary before = logger.getSummary();
+		Assert.assertTrue(before.getLines() > 0);
+		Assert.assertTrue(before.getBranches() > 0);
+
+		Object o = wovenClass.getConstructor().newInstance();
+		Method typeCheck = wovenClass.getMethod("typeCheck", Object.class);
+		Summary constructor = logger.getSummary();
+
+		// The jump to the else block is not taken
+		typeCheck.invoke(o, "s");
+		Summary first = logger.getSummary();
+		Assert.assertEquals(constructor.getCoveredLines() + 2, first.getCoveredLines());
+		Assert.assertEquals(constructor.getCoveredBranches() + 1, first.getCoveredBranches());
+
+		// The jump is taken
+		typeCheck.invoke(o, 1);
+		Summary second = logger.getSummary();
+		Assert.assertEquals(first.getCoveredLines() + 1, second.getCoveredLines());
+		Assert.assertEquals(first.getCoveredBranches() + 1, second.getCoveredBranches());
+		Assert.assertEquals(before.getLines(), second.getLines());
+		Assert.assertEquals(before.getBranches(), second.getBranches());
+
+		logger.close();
+		JsonNode root = new ObjectMapper().readTree(trace);
+		Assert.assertEquals("coverage", root.get("format").asText());
+		JsonNode coverage = root.get(CoverageLogger.FIELD_COVERAGE);
+		Assert.assertEquals(second.getCoveredLines(), coverage.get("coveredLines").asInt());
+		Assert.assertEquals(second.getBranches(), coverage.get("branches").asInt());
+		Assert.assertEquals(second.getCoveredBranches(), coverage.get("coveredBranches").asInt());
+		int covered = 0;
+		for (JsonNode event: root.get("events")) {
+			Assert.assertNotEquals(EventType.JUMP.name(), event.get("event").asText());
+			if (event.get("covered").asBoolean()) {
+				covered++;
+				Assert.assertNotEquals("useLocal", event.get("mname").asText());
+			}
+		}
+		Assert.assertTrue(covered > 0);
+	}
+
+	@Test
+	public void testCoverage() throws Exception {
+		testTypeCheck(false);
+	}
+
+	@Test
+	public void testInlineCoverage() throws Exception {
+		testTypeCheck(true);
+	}
+
+}
@@ -0,0 +1,81 @@
+package selogger.weaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import selogger.logging.Logging;
+import selogger.logging.io.EventFrequencyLogger;
+import selogger.logging.util.InlineCounters;
+import selogger.testutil.WeaveClassLoader;
+
+/**
+ * This test class compares the event frequency counted by inline counters
+ * with the frequency counted through the Logging class.
+ */
+public class WeaverInlineCounterTest {
+
+	/**
+	 * A temporary folder for execution traces
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Execute the "testAll" method of a woven class.
+	 * @return the lines of a frequency table written by the logger.
+	 */
+	private List<String> getEventFrequency(boolean inline) throws Exception {
+		WeaveConfig config = new WeaveConfig(WeaveConfig.KEY_RECORD_ALL);
+		config.setInlineCounters(inline);
+		WeaveClassLoader loader = new WeaveClassLoader(config);
+		Class<?> wovenClass = loader.loadAndWeaveClass("selogger.testdata.SimpleTarget");
+		loader.loadAndWeaveClass("selogger.testdata.SimpleTarget$StringComparator");
+
+		File trace = folder.newFile();
+		EventFrequencyLogger logger = new EventFrequencyLogger(trace, inline, null);
+		logger.onCreated(loader.getWeaveLog().getDataEntries());
+		Logging.setLogger(logger);
+
+		long inlineCount = getInlineCount(loader);
+		Object o = wovenClass.getConstructor().newInstance();
+		Method method = wovenClass.getMethod("testAll", new Class<?>[0]);
+		method.invoke(o);
+		Assert.assertEquals(inline, getInlineCount(loader) > inlineCount);
+
+		logger.save(false);
+		logger.close();
+		return read(trace, 1);
+	}
+
+	/**
+	 * @return the sum of inline counters for the data IDs of a woven class.
+	 */
+	private static long getInlineCount(WeaveClassLoader loader) {
+		long count = 0;
+		for (DataInfo d: loader.getWeaveLog().getDataEntries()) {
+			count += InlineCounters.get(d.getDataId());
+		}
+		return count;
+	}
+
+	private static List<String> read(File trace, int saveCount) throws IOException {
+		return Files.readAllLines(new File(trace.getAbsolutePath() + "." + saveCount + ".txt").toPath());
+	}
+
+	@Test
+	public void testSameFrequency() throws Exception {
+		List<String> expected = getEventFrequency(false);
+		List<String> actual = getEventFrequency(true);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, actual);
+	}
+
+}